@@ -0,0 +1,80 @@
+package simulator;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An AssembledProgram is the output of the Assembler: the words of one
+ * .ORIG section, ready to be loaded with Computer.loadProgram, and the
+ * address of every label.
+ *
+ * @version 1.0
+ */
+public final class AssembledProgram {
+
+	private final int myOrigin;
+	private final short[] myWords;
+	private final Map<String, Integer> mySymbols;
+
+	/**
+	 * @param theOrigin the address of the first word
+	 * @param theWords the words; not copied, so they must not be changed afterwards
+	 * @param theSymbols the address of every label
+	 */
+	AssembledProgram(final int theOrigin, final short[] theWords, final Map<String, Integer> theSymbols) {
+		myOrigin = theOrigin;
+		myWords = theWords;
+		mySymbols = Collections.unmodifiableMap(theSymbols);
+	}
+
+	/**
+	 * @return the address of the first word, from .ORIG
+	 */
+	public int getOrigin() {
+		return myOrigin;
+	}
+
+	/**
+	 * @return the number of words
+	 */
+	public int getLength() {
+		return myWords.length;
+	}
+
+	/**
+	 * @return a copy of the words, each 0 to 65535
+	 */
+	public int[] getWords() {
+		int[] words = new int[myWords.length];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = myWords[i] & 0xFFFF;
+		}
+		return words;
+	}
+
+	/**
+	 * @param theLabel a label defined in the program
+	 * @return the address of the label
+	 */
+	public int getAddress(final String theLabel) {
+		Integer address = mySymbols.get(theLabel);
+		if (address == null) {
+			throw new IllegalArgumentException("Undefined label: " + theLabel);
+		}
+		return address;
+	}
+
+	/**
+	 * @return the address of every label, which cannot be modified
+	 */
+	public Map<String, Integer> getSymbols() {
+		return mySymbols;
+	}
+
+	/**
+	 * @return the words themselves, for loading without a copy
+	 */
+	short[] words() {
+		return myWords;
+	}
+}
@@ -0,0 +1,667 @@
+package simulator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The Assembler turns LC-3 assembly source straight into the words of an
+ * AssembledProgram, with no binary text in between.
+ *
+ * The source is one .ORIG section ending with .END. A line holds an
+ * optional label, then an instruction or a directive (.FILL, .BLKW,
+ * .STRINGZ), with operands separated by commas or spaces; anything after
+ * a ; is a comment. Opcodes, directives and registers may be in any case;
+ * labels are case sensitive. Numbers are written #10, 10, x3000 or x-30.
+ * Every opcode is accepted, along with RET and the trap aliases GETC, OUT,
+ * PUTS, IN, PUTSP and HALT.
+ *
+ * Both passes work on chunks of about CHUNK_SIZE characters in parallel.
+ * The first pass parses each chunk and measures it, so a short sequential
+ * step can give each chunk its start address and first line number and
+ * build the symbol table. The second pass encodes every chunk into its
+ * own part of the word array.
+ *
+ * @version 1.0
+ */
+public final class Assembler {
+
+	/** The number of characters parsed as one chunk; a source this short is not split. */
+	final static int CHUNK_SIZE = 1 << 16;
+
+	/** Returned by parseNumber for an operand that is not a number. */
+	private final static int NOT_A_NUMBER = Integer.MIN_VALUE;
+
+	private final static String ORIG = ".ORIG";
+	private final static String END = ".END";
+	private final static String FILL = ".FILL";
+	private final static String BLKW = ".BLKW";
+	private final static String STRINGZ = ".STRINGZ";
+
+	/** The instruction word of each opcode and alias, before its operands are added. */
+	private final static Map<String, Integer> OPCODES = new HashMap<>();
+
+	static {
+		OPCODES.put("ADD", 0x1000);
+		OPCODES.put("AND", 0x5000);
+		OPCODES.put("NOT", 0x903F);
+		OPCODES.put("LD", 0x2000);
+		OPCODES.put("LDI", 0xA000);
+		OPCODES.put("LDR", 0x6000);
+		OPCODES.put("LEA", 0xE000);
+		OPCODES.put("ST", 0x3000);
+		OPCODES.put("STI", 0xB000);
+		OPCODES.put("STR", 0x7000);
+		OPCODES.put("JMP", 0xC000);
+		OPCODES.put("RET", 0xC1C0);
+		OPCODES.put("JSR", 0x4800);
+		OPCODES.put("JSRR", 0x4000);
+		OPCODES.put("RTI", 0x8000);
+		OPCODES.put("TRAP", 0xF000);
+		OPCODES.put("GETC", 0xF020);
+		OPCODES.put("OUT", 0xF021);
+		OPCODES.put("PUTS", 0xF022);
+		OPCODES.put("IN", 0xF023);
+		OPCODES.put("PUTSP", 0xF024);
+		OPCODES.put("HALT", 0xF025);
+		// BR with every combination of n, z and p, in that order
+		String[] conditions = {"", "P", "Z", "ZP", "N", "NP", "NZ", "NZP"};
+		for (int nzp = 0; nzp < conditions.length; nzp++) {
+			OPCODES.put("BR" + conditions[nzp], (nzp == 0 ? 7 : nzp) << 9);
+		}
+	}
+
+	private Assembler() {
+	}
+
+	/**
+	 * Assembles a source file.
+	 * @param theFile the .asm file
+	 * @return the assembled program
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the source has an error, with its line number
+	 */
+	public static AssembledProgram assemble(final Path theFile) throws IOException {
+		return assemble(Files.readString(theFile));
+	}
+
+	/**
+	 * Assembles source text.
+	 * @param theSource the assembly source
+	 * @return the assembled program
+	 * @throws IllegalArgumentException if the source has an error, with its line number
+	 */
+	public static AssembledProgram assemble(final String theSource) {
+		Chunk[] chunks = split(theSource);
+
+		// Pass 1, in parallel: parse and measure each chunk
+		forEach(chunks, chunk -> chunk.parse(theSource));
+
+		// Lay the chunks out one after another and find .ORIG and .END
+		int origin = -1;
+		int line = 0;
+		int length = 0;
+		int used = chunks.length;
+		for (int i = 0; i < chunks.length; i++) {
+			Chunk chunk = chunks[i];
+			chunk.myFirstLine = line;
+			chunk.myStart = length;
+			if (chunk.myError != null) {
+				throw error(line + chunk.myErrorLine, chunk.myError);
+			}
+			for (Statement statement : chunk.myStatements) {
+				boolean first = origin < 0;
+				if (first != (statement.myOperation == ORIG)) {
+					throw error(line + statement.myLine,
+							first ? "expected .ORIG" : "only one .ORIG is allowed");
+				}
+				if (first) {
+					origin = statement.myValue;
+				}
+			}
+			line += chunk.myLines;
+			length += chunk.myLength;
+			if (chunk.myEnded) {
+				used = i + 1;
+				break;
+			}
+		}
+		if (origin < 0) {
+			throw error(Math.max(line, 1), "expected .ORIG");
+		}
+		if (used == chunks.length && !chunks[used - 1].myEnded) {
+			throw error(Math.max(line, 1), "expected .END");
+		}
+		if (origin + length > Memory.SIZE) {
+			throw error(line, "the program does not fit in memory");
+		}
+
+		// Build the symbol table in source order, so a duplicate is reported where it is repeated
+		Map<String, Integer> symbols = new HashMap<>();
+		for (int i = 0; i < used; i++) {
+			Chunk chunk = chunks[i];
+			for (Label label : chunk.myLabels) {
+				if (symbols.putIfAbsent(label.myName, origin + chunk.myStart + label.myOffset) != null) {
+					throw error(chunk.myFirstLine + label.myLine, "duplicate label " + label.myName);
+				}
+			}
+		}
+
+		// Pass 2, in parallel: encode each chunk into its part of the words
+		short[] words = new short[length];
+		final int programOrigin = origin;
+		Chunk[] usedChunks = Arrays.copyOf(chunks, used);
+		forEach(usedChunks, chunk -> chunk.encode(programOrigin, symbols, words));
+		for (Chunk chunk : usedChunks) {
+			if (chunk.myError != null) {
+				throw error(chunk.myFirstLine + chunk.myErrorLine, chunk.myError);
+			}
+		}
+		return new AssembledProgram(origin, words, symbols);
+	}
+
+	/**
+	 * Splits the source into chunks of whole lines.
+	 * @param theSource the assembly source
+	 * @return the chunks, in source order
+	 */
+	private static Chunk[] split(final String theSource) {
+		List<Chunk> chunks = new ArrayList<>();
+		int start = 0;
+		while (start < theSource.length() || chunks.isEmpty()) {
+			int end = Math.min(theSource.length(), start + CHUNK_SIZE);
+			// a chunk ends just after a line break
+			while (end < theSource.length() && theSource.charAt(end - 1) != '\n') {
+				end++;
+			}
+			chunks.add(new Chunk(start, end));
+			start = end;
+		}
+		return chunks.toArray(new Chunk[0]);
+	}
+
+	/**
+	 * Runs an action on every chunk, in parallel if there is more than one.
+	 * An action records its own error in the chunk instead of throwing.
+	 * @param theChunks the chunks
+	 * @param theAction the action
+	 */
+	private static void forEach(final Chunk[] theChunks, final Consumer<Chunk> theAction) {
+		if (theChunks.length == 1) {
+			theAction.accept(theChunks[0]);
+		} else {
+			IntStream.range(0, theChunks.length).parallel().forEach(i -> theAction.accept(theChunks[i]));
+		}
+	}
+
+	/**
+	 * @param theLine the line number
+	 * @param theMessage what is wrong
+	 * @return the exception to throw
+	 */
+	private static IllegalArgumentException error(final int theLine, final String theMessage) {
+		return new IllegalArgumentException("Line " + theLine + ": " + theMessage);
+	}
+
+	/**
+	 * Parses a number operand.
+	 * @param theText the operand
+	 * @return its value, NOT_A_NUMBER if it is not written as a number, or
+	 *         Integer.MAX_VALUE if it is too large for any field
+	 */
+	static int parseNumber(final String theText) {
+		int index = 0;
+		int radix = 10;
+		if (theText.startsWith("#")) {
+			index = 1;
+		} else if (theText.startsWith("x") || theText.startsWith("X")) {
+			index = 1;
+			radix = 16;
+		}
+		boolean negative = index < theText.length() && theText.charAt(index) == '-';
+		if (negative) {
+			index++;
+		}
+		if (index == theText.length()) {
+			return NOT_A_NUMBER;
+		}
+		long value = 0;
+		for (; index < theText.length(); index++) {
+			int digit = Character.digit(theText.charAt(index), radix);
+			if (digit < 0) {
+				return NOT_A_NUMBER;
+			}
+			value = Math.min(value * radix + digit, Integer.MAX_VALUE);
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	 * A label and where it is, relative to its chunk.
+	 */
+	private final static class Label {
+		final String myName;
+		final int myLine;
+		final int myOffset;
+
+		Label(final String theName, final int theLine, final int theOffset) {
+			myName = theName;
+			myLine = theLine;
+			myOffset = theOffset;
+		}
+	}
+
+	/**
+	 * One instruction or directive and where it is, relative to its chunk.
+	 */
+	private final static class Statement {
+		/** The upper case opcode or directive; directives are the constants above. */
+		final String myOperation;
+		final String[] myOperands;
+		final int myLine;
+		final int myOffset;
+		/** The value of .ORIG or .BLKW; the text of .STRINGZ is myOperands[0]. */
+		final int myValue;
+
+		Statement(final String theOperation, final String[] theOperands, final int theLine,
+				final int theOffset, final int theValue) {
+			myOperation = theOperation;
+			myOperands = theOperands;
+			myLine = theLine;
+			myOffset = theOffset;
+			myValue = theValue;
+		}
+	}
+
+	/**
+	 * A run of whole lines of the source and what the passes found in them.
+	 * Line numbers and offsets inside a chunk count from its start.
+	 */
+	private final static class Chunk {
+		final int myFrom;
+		final int myTo;
+		final List<Statement> myStatements = new ArrayList<>();
+		final List<Label> myLabels = new ArrayList<>();
+		int myLines;
+		int myLength;
+		boolean myEnded;
+		String myError;
+		int myErrorLine;
+		/** Set between the passes: the number of lines and words before this chunk. */
+		int myFirstLine;
+		int myStart;
+
+		Chunk(final int theFrom, final int theTo) {
+			myFrom = theFrom;
+			myTo = theTo;
+		}
+
+		/**
+		 * Pass 1: parses the lines of this chunk, up to .END.
+		 * @param theSource the assembly source
+		 */
+		void parse(final String theSource) {
+			List<String> tokens = new ArrayList<>();
+			int lineStart = myFrom;
+			while (lineStart < myTo && !myEnded) {
+				int lineEnd = theSource.indexOf('\n', lineStart);
+				lineEnd = lineEnd < 0 || lineEnd > myTo ? myTo : lineEnd;
+				myLines++;
+				try {
+					parseLine(theSource, lineStart, lineEnd, tokens);
+				} catch (IllegalArgumentException e) {
+					myError = e.getMessage();
+					myErrorLine = myLines;
+					return;
+				}
+				lineStart = lineEnd + 1;
+			}
+		}
+
+		/**
+		 * Parses one line into a label and a statement.
+		 */
+		private void parseLine(final String theSource, final int theStart, final int theEnd,
+				final List<String> theTokens) {
+			tokenize(theSource, theStart, theEnd, theTokens);
+			if (theTokens.isEmpty()) {
+				return;
+			}
+			int next = 0;
+			String operation = theTokens.get(0).toUpperCase(Locale.ROOT);
+			if (!isOperation(operation)) {
+				String label = theTokens.get(0);
+				if (label.endsWith(":")) {
+					label = label.substring(0, label.length() - 1);
+				}
+				checkLabel(label);
+				myLabels.add(new Label(label, myLines, myLength));
+				if (theTokens.size() == 1) {
+					return;
+				}
+				next = 1;
+				operation = theTokens.get(1).toUpperCase(Locale.ROOT);
+				if (!isOperation(operation)) {
+					throw new IllegalArgumentException("unknown instruction " + theTokens.get(1));
+				}
+			}
+			String[] operands = theTokens.subList(next + 1, theTokens.size()).toArray(new String[0]);
+			int size = 1;
+			int value = 0;
+			switch (operation) {
+				case ORIG:
+					count(operands, 1);
+					value = number(operands, 0, 0, 0xFFFF);
+					size = 0;
+					operation = ORIG;
+					break;
+				case END:
+					size = 0;
+					myEnded = true;
+					break;
+				case BLKW:
+					count(operands, 1);
+					value = number(operands, 0, 1, 0xFFFF);
+					size = value;
+					operation = BLKW;
+					break;
+				case STRINGZ:
+					if (operands.length != 1 || !operands[0].startsWith("\"")) {
+						throw new IllegalArgumentException(".STRINGZ needs a string");
+					}
+					operands[0] = operands[0].substring(1);
+					size = operands[0].length() + 1;
+					operation = STRINGZ;
+					break;
+				case FILL:
+					operation = FILL;
+					break;
+				default:
+					// an interned name, so encode can compare directives with ==
+					operation = operation.intern();
+					break;
+			}
+			if (!myEnded) {
+				myStatements.add(new Statement(operation, operands, myLines, myLength, value));
+				myLength += size;
+			}
+		}
+
+		/**
+		 * Pass 2: encodes the statements of this chunk into theWords.
+		 * @param theOrigin the address of the first word of the program
+		 * @param theSymbols the address of every label
+		 * @param theWords the words of the whole program
+		 */
+		void encode(final int theOrigin, final Map<String, Integer> theSymbols, final short[] theWords) {
+			for (Statement statement : myStatements) {
+				int index = myStart + statement.myOffset;
+				try {
+					if (statement.myOperation == STRINGZ) {
+						String text = statement.myOperands[0];
+						for (int i = 0; i < text.length(); i++) {
+							theWords[index + i] = (short) text.charAt(i);
+						}
+					} else if (statement.myOperation == FILL) {
+						theWords[index] = (short) value(statement.myOperands, 0, theSymbols, -0x8000, 0xFFFF);
+					} else if (statement.myOperation != ORIG && statement.myOperation != BLKW) {
+						theWords[index] = (short) instruction(statement, theOrigin + index, theSymbols);
+					}
+				} catch (IllegalArgumentException e) {
+					myError = e.getMessage();
+					myErrorLine = statement.myLine;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param theName an upper case token
+	 * @return true if it is an opcode, alias or directive
+	 */
+	private static boolean isOperation(final String theName) {
+		return OPCODES.containsKey(theName) || theName.equals(ORIG) || theName.equals(END)
+				|| theName.equals(FILL) || theName.equals(BLKW) || theName.equals(STRINGZ);
+	}
+
+	/**
+	 * @param theLabel a label
+	 */
+	private static void checkLabel(final String theLabel) {
+		boolean valid = !theLabel.isEmpty() && Character.isLetter(theLabel.charAt(0))
+				&& parseNumber(theLabel) == NOT_A_NUMBER && register(theLabel) < 0;
+		for (int i = 0; valid && i < theLabel.length(); i++) {
+			char c = theLabel.charAt(i);
+			valid = Character.isLetterOrDigit(c) || c == '_';
+		}
+		if (!valid) {
+			throw new IllegalArgumentException("invalid label " + theLabel);
+		}
+	}
+
+	/**
+	 * Splits a line into tokens: words separated by spaces or commas, and
+	 * string literals, which are kept with their opening quote and their
+	 * escapes already replaced. A ; outside a string ends the line.
+	 */
+	private static void tokenize(final String theSource, final int theStart, final int theEnd,
+			final List<String> theTokens) {
+		theTokens.clear();
+		int i = theStart;
+		while (i < theEnd) {
+			char c = theSource.charAt(i);
+			if (c == ';') {
+				return;
+			} else if (c == '"') {
+				StringBuilder text = new StringBuilder("\"");
+				i++;
+				while (true) {
+					if (i >= theEnd) {
+						throw new IllegalArgumentException("unterminated string");
+					}
+					c = theSource.charAt(i++);
+					if (c == '"') {
+						break;
+					} else if (c == '\\' && i < theEnd) {
+						c = theSource.charAt(i++);
+						c = c == 'n' ? '\n' : c == 't' ? '\t' : c == 'r' ? '\r' : c == '0' ? '\0' : c;
+					}
+					text.append(c);
+				}
+				theTokens.add(text.toString());
+			} else if (c == ' ' || c == '\t' || c == '\r' || c == ',') {
+				i++;
+			} else {
+				int start = i;
+				while (i < theEnd && " \t\r,;\"".indexOf(theSource.charAt(i)) < 0) {
+					i++;
+				}
+				theTokens.add(theSource.substring(start, i));
+			}
+		}
+	}
+
+	/**
+	 * Encodes an instruction.
+	 * @param theStatement the instruction
+	 * @param theAddress its address
+	 * @param theSymbols the address of every label
+	 * @return the instruction word
+	 */
+	private static int instruction(final Statement theStatement, final int theAddress,
+			final Map<String, Integer> theSymbols) {
+		String[] operands = theStatement.myOperands;
+		int word = OPCODES.get(theStatement.myOperation);
+		int next = theAddress + 1;
+		switch (theStatement.myOperation) {
+			case "ADD":
+			case "AND":
+				count(operands, 3);
+				word |= register(operands, 0) << 9 | register(operands, 1) << 6;
+				if (register(operands[2]) >= 0) {
+					return word | register(operands, 2);
+				}
+				return word | 0x20 | (number(operands, 2, -16, 15) & 0x1F);
+			case "NOT":
+				count(operands, 2);
+				return word | register(operands, 0) << 9 | register(operands, 1) << 6;
+			case "LD":
+			case "LDI":
+			case "LEA":
+			case "ST":
+			case "STI":
+				count(operands, 2);
+				return word | register(operands, 0) << 9 | offset(operands, 1, next, 9, theSymbols);
+			case "LDR":
+			case "STR":
+				count(operands, 3);
+				return word | register(operands, 0) << 9 | register(operands, 1) << 6
+						| (number(operands, 2, -32, 31) & 0x3F);
+			case "JMP":
+			case "JSRR":
+				count(operands, 1);
+				return word | register(operands, 0) << 6;
+			case "JSR":
+				count(operands, 1);
+				return word | offset(operands, 0, next, 11, theSymbols);
+			case "TRAP":
+				count(operands, 1);
+				return word | number(operands, 0, 0, 0xFF);
+			default:
+				if (theStatement.myOperation.startsWith("BR")) {
+					count(operands, 1);
+					return word | offset(operands, 0, next, 9, theSymbols);
+				}
+				// RET, RTI and the trap aliases take no operands
+				count(operands, 0);
+				return word;
+		}
+	}
+
+	/**
+	 * @param theOperands the operands
+	 * @param theCount the number of operands expected
+	 */
+	private static void count(final String[] theOperands, final int theCount) {
+		if (theOperands.length != theCount) {
+			throw new IllegalArgumentException("expected " + theCount + " operands but found "
+					+ theOperands.length);
+		}
+	}
+
+	/**
+	 * @param theText an operand
+	 * @return its register number, or -1 if it is not a register
+	 */
+	private static int register(final String theText) {
+		if (theText.length() == 2 && (theText.charAt(0) == 'R' || theText.charAt(0) == 'r')
+				&& theText.charAt(1) >= '0' && theText.charAt(1) <= '7') {
+			return theText.charAt(1) - '0';
+		}
+		return -1;
+	}
+
+	/**
+	 * @param theOperands the operands
+	 * @param theIndex the operand that must be a register
+	 * @return its register number
+	 */
+	private static int register(final String[] theOperands, final int theIndex) {
+		int register = register(theOperands[theIndex]);
+		if (register < 0) {
+			throw new IllegalArgumentException("expected a register but found " + theOperands[theIndex]);
+		}
+		return register;
+	}
+
+	/**
+	 * @param theOperands the operands
+	 * @param theIndex the operand that must be a number
+	 * @param theMin the least value allowed
+	 * @param theMax the greatest value allowed
+	 * @return its value
+	 */
+	private static int number(final String[] theOperands, final int theIndex, final int theMin,
+			final int theMax) {
+		if (theIndex >= theOperands.length) {
+			throw new IllegalArgumentException("expected a number");
+		}
+		int value = parseNumber(theOperands[theIndex]);
+		if (value == NOT_A_NUMBER) {
+			throw new IllegalArgumentException("expected a number but found " + theOperands[theIndex]);
+		}
+		return range(value, theMin, theMax);
+	}
+
+	/**
+	 * @param theOperands the operands
+	 * @param theIndex the operand that must be a number or a label
+	 * @param theSymbols the address of every label
+	 * @param theMin the least value allowed
+	 * @param theMax the greatest value allowed
+	 * @return its value, or the address of the label
+	 */
+	private static int value(final String[] theOperands, final int theIndex,
+			final Map<String, Integer> theSymbols, final int theMin, final int theMax) {
+		count(theOperands, theIndex + 1);
+		int value = parseNumber(theOperands[theIndex]);
+		return value == NOT_A_NUMBER ? address(theOperands[theIndex], theSymbols) : range(value, theMin, theMax);
+	}
+
+	/**
+	 * Encodes a PC-relative operand: a label, or a number that is the offset itself.
+	 * @param theOperands the operands
+	 * @param theIndex the operand
+	 * @param theNext the address of the next instruction
+	 * @param theBits the width of the offset field
+	 * @param theSymbols the address of every label
+	 * @return the offset, masked to theBits
+	 */
+	private static int offset(final String[] theOperands, final int theIndex, final int theNext,
+			final int theBits, final Map<String, Integer> theSymbols) {
+		int limit = 1 << (theBits - 1);
+		int offset = parseNumber(theOperands[theIndex]);
+		if (offset == NOT_A_NUMBER) {
+			offset = address(theOperands[theIndex], theSymbols) - theNext;
+			if (offset < -limit || offset >= limit) {
+				throw new IllegalArgumentException(theOperands[theIndex] + " is too far away");
+			}
+		}
+		return range(offset, -limit, limit - 1) & ((1 << theBits) - 1);
+	}
+
+	/**
+	 * @param theLabel a label
+	 * @param theSymbols the address of every label
+	 * @return the address of the label
+	 */
+	private static int address(final String theLabel, final Map<String, Integer> theSymbols) {
+		Integer address = theSymbols.get(theLabel);
+		if (address == null) {
+			throw new IllegalArgumentException("undefined label " + theLabel);
+		}
+		return address;
+	}
+
+	/**
+	 * @param theValue a number
+	 * @param theMin the least value allowed
+	 * @param theMax the greatest value allowed
+	 * @return theValue
+	 */
+	private static int range(final int theValue, final int theMin, final int theMax) {
+		if (theValue < theMin || theValue > theMax) {
+			throw new IllegalArgumentException(theValue + " is out of range " + theMin + " to " + theMax);
+		}
+		return theValue;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Unit tests for the Assembler class.
+ */
+
+package simulator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @version 1.0
+ */
+class AssemblerTest {
+
+	// The countdown from Simulator, as written in its comment
+	private final static String COUNTDOWN =
+			"        .ORIG x3000\n"
+			+ "\n"
+			+ "        LD R0 START\n"
+			+ "        LD R1 END\n"
+			+ "        ADD R2 R0 R1\n"
+			+ "TOP     BRZ DONE\n"
+			+ "        OUT\n"
+			+ "        ADD R0 R0 -1\n"
+			+ "        ADD R2 R2 -1\n"
+			+ "        BRNZP TOP\n"
+			+ "DONE    HALT\n"
+			+ "\n"
+			+ "START   .FILL x39\n"
+			+ "END     .FILL x-30\n"
+			+ "\n"
+			+ "        .END\n";
+
+	/**
+	 * Test method for {@link simulator.Assembler#assemble(String)}. <br>
+	 * The countdown assembles to the machine code in Simulator and runs.
+	 */
+	@Test
+	void testAssembleCountdown() {
+		String[] expected = {
+			"0010000000001000",
+			"0010001000001000",
+			"0001010000000001",
+			"0000010000000100",
+			"1111000000100001",
+			"0001000000111111",
+			"0001010010111111",
+			"0000111111111011",
+			"1111000000100101",
+			"0000000000111001",
+			"1111111111010000"
+		};
+
+		AssembledProgram program = Assembler.assemble(COUNTDOWN);
+
+		assertEquals(0x3000, program.getOrigin());
+		int[] words = program.getWords();
+		assertEquals(expected.length, words.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(Integer.parseInt(expected[i], 2), words[i], "word " + i);
+		}
+		assertEquals(0x3003, program.getAddress("TOP"));
+		assertEquals(0x300A, program.getAddress("END"));
+
+		CaptureOutput output = new CaptureOutput();
+		Computer computer = new Computer(output);
+		computer.loadProgram(program);
+		computer.execute();
+		assertEquals("987654321", output.toString());
+	}
+
+	/**
+	 * Test method for {@link simulator.Assembler#assemble(String)}. <br>
+	 * Every opcode, alias and directive encodes as in the LC-3 ISA.
+	 */
+	@Test
+	void testAssembleEveryOpcode() {
+		String source = ".orig x3000\n"
+				+ "HERE: add r1, r2, r3 ; a comment\n"
+				+ "  ADD R1, R2, #-16\n"
+				+ "  AND R7, R0, x0F\n"
+				+ "  NOT R4, R5\n"
+				+ "  LD R0, DATA\n"
+				+ "  LDI R1, DATA\n"
+				+ "  LDR R2, R3, #-32\n"
+				+ "  LEA R3, HERE\n"
+				+ "  ST R4, DATA\n"
+				+ "  STI R5, DATA\n"
+				+ "  STR R6, R7, #31\n"
+				+ "  JMP R2\n"
+				+ "  RET\n"
+				+ "  JSR HERE\n"
+				+ "  JSRR R4\n"
+				+ "  RTI\n"
+				+ "  BR HERE\n"
+				+ "  BRnp #0\n"
+				+ "  TRAP x26\n"
+				+ "  GETC\n"
+				+ "  OUT\n"
+				+ "  PUTS\n"
+				+ "  IN\n"
+				+ "  PUTSP\n"
+				+ "  HALT\n"
+				+ "DATA .FILL DATA\n"
+				+ "  .BLKW 2\n"
+				+ "  .STRINGZ \"a\\\"\\n\"\n"
+				+ ".end\n";
+		int[] expected = {
+			0x1283, 0x12B0, 0x5E2F, 0x997F, 0x2014, 0xA213, 0x64E0, 0xE7F8,
+			0x3810, 0xBA0F, 0x7DDF, 0xC080, 0xC1C0, 0x4FF2, 0x4100, 0x8000,
+			0x0FEF, 0x0A00, 0xF026, 0xF020, 0xF021, 0xF022, 0xF023, 0xF024,
+			0xF025, 0x3019, 0x0000, 0x0000, 'a', '"', '\n', 0x0000
+		};
+
+		assertArrayEquals(expected, Assembler.assemble(source).getWords());
+	}
+
+	/**
+	 * Test method for {@link simulator.Assembler#assemble(String)}. <br>
+	 * Errors name the line they are on.
+	 */
+	@Test
+	void testAssembleErrors() {
+		assertError("Line 2: undefined label NOWHERE", ".ORIG x3000\nBR NOWHERE\n.END\n");
+		assertError("Line 3: duplicate label A", ".ORIG x3000\nA ADD R0, R0, #1\nA HALT\n.END\n");
+		assertError("Line 2: 16 is out of range -16 to 15", ".ORIG x3000\nADD R0, R0, #16\n.END\n");
+		assertError("Line 2: expected a register but found R8", ".ORIG x3000\nNOT R8, R0\n.END\n");
+		assertError("Line 1: expected .ORIG", "HALT\n.END\n");
+		assertError("Line 2: expected .END", ".ORIG x3000\nHALT\n");
+		assertError("Line 2: expected 1 operands but found 0", ".ORIG x3000\nJMP\n.END\n");
+	}
+
+	/**
+	 * Test method for {@link simulator.Assembler#assemble(String)}. <br>
+	 * A source of many chunks assembles the same as one chunk, with labels
+	 * used across chunks in both directions, and errors give the line
+	 * number in the whole source.
+	 */
+	@Test
+	void testAssembleChunks() {
+		// a loop counting R1 down to 0 that jumps over a long run of
+		// never executed ADDs, through addresses kept at either end
+		StringBuilder source = new StringBuilder(".ORIG x3000\n");
+		source.append("       LD R1, COUNT\n");
+		source.append("LOOP   LD R2, TARGET\n");
+		source.append("       JMP R2\n");
+		source.append("COUNT  .FILL #5\n");
+		source.append("TARGET .FILL SKIP\n");
+		int lines = 6;
+		while (source.length() < 3 * Assembler.CHUNK_SIZE) {
+			source.append("       ADD R0, R0, #1 ; never executed\n");
+			lines++;
+		}
+		source.append("SKIP   ADD R1, R1, #-1\n");
+		source.append("       BRz DONE\n");
+		source.append("       LD R2, BACK\n");
+		source.append("       JMP R2\n");
+		source.append("DONE   HALT\n");
+		source.append("BACK   .FILL LOOP\n");
+		source.append("       .END\n");
+
+		AssembledProgram program = Assembler.assemble(source.toString());
+
+		assertEquals(0x3000 + lines - 1, program.getAddress("SKIP"));
+		Computer computer = new Computer(new CaptureOutput());
+		computer.loadProgram(program);
+		assertEquals(RunStatus.HALTED, computer.run(ExecutionEngine.DECODED, 1000));
+		assertEquals(0, computer.getRegisters()[0].get2sCompValue());
+		assertEquals(0, computer.getRegisters()[1].get2sCompValue());
+
+		source.append("       ADD R0, R0, #1\n"); // after .END, so ignored
+		source.insert(source.lastIndexOf("SKIP"), "       BRz FAR\n");
+		assertError("Line " + (lines + 1) + ": undefined label FAR", source.toString());
+	}
+
+	/**
+	 * @param theMessage the message expected
+	 * @param theSource source with an error
+	 */
+	private static void assertError(final String theMessage, final String theSource) {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> Assembler.assemble(theSource));
+		assertEquals(theMessage, e.getMessage());
+	}
+}
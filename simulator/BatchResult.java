@@ -0,0 +1,124 @@
+package simulator;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A BatchResult is the outcome of running one program in a batch: what it
+ * printed and the final state of its registers, or why it failed.
+ *
+ * @version 1.1
+ */
+public final class BatchResult {
+
+	private final Path myProgram;
+	private final String myOutput;
+	private final int[] myRegisters;
+	private final int myPC;
+	private final int myCC;
+	private final String myError;
+	private final long myInstructions;
+	private final long myNanos;
+
+	/**
+	 * @param theProgram the program file
+	 * @param theOutput everything the program printed
+	 * @param theRegisters the final registers as 2s complement values, or null on failure
+	 * @param thePC the final PC
+	 * @param theCC the final CC as nzp bits
+	 * @param theError why the program failed, or null if it halted
+	 * @param theInstructions the number of instructions executed
+	 * @param theNanos the time spent loading and running the program
+	 */
+	BatchResult(final Path theProgram, final String theOutput, final int[] theRegisters,
+			final int thePC, final int theCC, final String theError, final long theInstructions,
+			final long theNanos) {
+		myProgram = theProgram;
+		myOutput = theOutput;
+		myRegisters = theRegisters;
+		myPC = thePC;
+		myCC = theCC;
+		myError = theError;
+		myInstructions = theInstructions;
+		myNanos = theNanos;
+	}
+
+	/**
+	 * @return the program file
+	 */
+	public Path getProgram() {
+		return myProgram;
+	}
+
+	/**
+	 * @return everything the program printed before it halted or failed
+	 */
+	public String getOutput() {
+		return myOutput;
+	}
+
+	/**
+	 * @return the final registers as 2s complement values
+	 */
+	public int[] getRegisters() {
+		return myRegisters == null ? null : Arrays.copyOf(myRegisters, myRegisters.length);
+	}
+
+	/**
+	 * @return the final PC
+	 */
+	public int getPC() {
+		return myPC;
+	}
+
+	/**
+	 * @return the final CC as nzp bits
+	 */
+	public int getCC() {
+		return myCC;
+	}
+
+	/**
+	 * @return true if the program halted
+	 */
+	public boolean isHalted() {
+		return myError == null;
+	}
+
+	/**
+	 * @return why the program failed, or null if it halted
+	 */
+	public String getError() {
+		return myError;
+	}
+
+	/**
+	 * @return the number of instructions executed
+	 */
+	public long getInstructions() {
+		return myInstructions;
+	}
+
+	/**
+	 * @return the time spent loading and running the program, in nanoseconds
+	 */
+	public long getNanos() {
+		return myNanos;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(myProgram.toString());
+		if (myError != null) {
+			return text.append(" FAILED ").append(myError).toString();
+		}
+		text.append(" HALTED");
+		for (int i = 0; i < myRegisters.length; i++) {
+			text.append(String.format(" R%d=x%04X", i, myRegisters[i] & 0xFFFF));
+		}
+		text.append(String.format(" PC=x%04X CC=", myPC));
+		text.append(String.format("%3s", Integer.toBinaryString(myCC)).replace(' ', '0'));
+		text.append(' ').append(myInstructions).append(" instructions");
+		return text.toString();
+	}
+}
@@ -0,0 +1,219 @@
+package simulator;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The BatchRunner executes many independent machine code programs, each on
+ * its own Computer, spread over a work-stealing pool of worker threads.
+ * Each run captures its output and final registers in a BatchResult.
+ *
+ * A program file holds one 16 bit word per line, as in Simulator.main.
+ * Spaces are ignored, and anything after // is a comment. Files ending in
+ * .obj are loaded as LC-3 object files instead, and files ending in .asm
+ * are assembled first.
+ *
+ * Usage: java simulator.BatchRunner directory|manifest [engine] [threads] [budget]
+ * A manifest lists one program file per line, relative to the manifest;
+ * blank lines and lines starting with # are skipped.
+ *
+ * @version 1.4
+ */
+public class BatchRunner {
+
+	/** The most instructions a program may execute before it is stopped as failed. */
+	public final static long DEFAULT_BUDGET = 1_000_000_000L;
+
+	private final ExecutionEngine myEngine;
+	private final int myParallelism;
+	private final long myBudget;
+
+	/**
+	 * Creates a runner using the default engine on every available core.
+	 */
+	public BatchRunner() {
+		this(ExecutionEngine.DECODED, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param theEngine the engine every program is executed with
+	 * @param theParallelism the number of worker threads
+	 */
+	public BatchRunner(final ExecutionEngine theEngine, final int theParallelism) {
+		this(theEngine, theParallelism, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * @param theEngine the engine every program is executed with
+	 * @param theParallelism the number of worker threads
+	 * @param theBudget the most instructions each program may execute
+	 */
+	public BatchRunner(final ExecutionEngine theEngine, final int theParallelism, final long theBudget) {
+		if (theEngine == null || theParallelism < 1 || theBudget < 0) {
+			throw new IllegalArgumentException("Invalid engine, parallelism or budget");
+		}
+		myEngine = theEngine;
+		myParallelism = theParallelism;
+		myBudget = theBudget;
+	}
+
+	/**
+	 * Runs every program and waits for all of them to finish.
+	 * @param thePrograms the program files
+	 * @return the results, in the same order as thePrograms
+	 */
+	public List<BatchResult> run(final List<Path> thePrograms) {
+		List<Callable<BatchResult>> tasks = new ArrayList<>(thePrograms.size());
+		for (Path program : thePrograms) {
+			tasks.add(() -> runProgram(program, myEngine, myBudget));
+		}
+		ForkJoinPool pool = new ForkJoinPool(myParallelism);
+		try {
+			List<BatchResult> results = new ArrayList<>(tasks.size());
+			for (Future<BatchResult> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Batch interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Batch failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Loads and executes one program on a new Computer.
+	 * @param theProgram the program file
+	 * @param theEngine the engine to execute it with
+	 * @param theBudget the most instructions it may execute
+	 * @return the result; a program that cannot be read, faults or does not
+	 *         halt within theBudget gives a failed result
+	 */
+	static BatchResult runProgram(final Path theProgram, final ExecutionEngine theEngine,
+			final long theBudget) {
+		long start = System.nanoTime();
+		CaptureOutput output = new CaptureOutput();
+		// a batch program gets no input, so GETC and IN fail instead of waiting on System.in
+		Computer computer = new Computer(new StringInput(""), output);
+		String error = null;
+		try {
+			if (theProgram.getFileName().toString().endsWith(".obj")) {
+				computer.loadObjectFile(theProgram);
+			} else if (theProgram.getFileName().toString().endsWith(".asm")) {
+				computer.loadProgram(Assembler.assemble(theProgram));
+			} else {
+				try (Reader reader = new InputStreamReader(Files.newInputStream(theProgram),
+						StandardCharsets.UTF_8)) {
+					computer.loadMachineCode(0, reader);
+				}
+			}
+			RunStatus status = computer.run(theEngine, theBudget);
+			if (status == RunStatus.FAULTED) {
+				error = computer.getFault().toString();
+			} else if (status == RunStatus.BUDGET_EXHAUSTED) {
+				error = "no HALT within " + theBudget + " instructions";
+			}
+		} catch (IOException | RuntimeException e) {
+			error = e.toString();
+		}
+		int[] registers = null;
+		if (error == null) {
+			registers = new int[8];
+			for (int i = 0; i < registers.length; i++) {
+				registers[i] = computer.readRegister(i);
+			}
+		}
+		return new BatchResult(theProgram, output.toString(), registers, computer.getPCAddress(),
+				computer.getConditionBits(), error, computer.getInstructionCount(),
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Lists the programs to run.
+	 * @param theSource a directory of program files or a manifest file
+	 * @return the program files; a directory's files are in name order
+	 * @throws IOException if the directory or manifest cannot be read
+	 */
+	public static List<Path> listPrograms(final Path theSource) throws IOException {
+		if (Files.isDirectory(theSource)) {
+			try (Stream<Path> files = Files.list(theSource)) {
+				return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+			}
+		}
+		Path base = theSource.toAbsolutePath().getParent();
+		List<Path> programs = new ArrayList<>();
+		for (String line : Files.readAllLines(theSource)) {
+			String name = line.trim();
+			if (!name.isEmpty() && !name.startsWith("#")) {
+				programs.add(base.resolve(name));
+			}
+		}
+		return programs;
+	}
+
+	/**
+	 * Prints one line per result followed by the totals.
+	 * @param theResults the results of a batch
+	 * @param theNanos the wall time the whole batch took
+	 * @param theOut where to print
+	 */
+	public static void printReport(final List<BatchResult> theResults, final long theNanos,
+			final PrintStream theOut) {
+		int halted = 0;
+		long instructions = 0;
+		for (BatchResult result : theResults) {
+			instructions += result.getInstructions();
+			theOut.println(result);
+			if (!result.getOutput().isEmpty()) {
+				theOut.println("  output: " + result.getOutput().replace("\n", "\\n"));
+			}
+			if (result.isHalted()) {
+				halted++;
+			}
+		}
+		double seconds = theNanos / 1e9;
+		theOut.printf("%d programs, %d halted, %d failed in %.3f s (%.1f programs/s, %.1f MIPS)%n",
+				theResults.size(), halted, theResults.size() - halted, seconds,
+				theResults.size() / seconds, instructions / seconds / 1e6);
+	}
+
+	/**
+	 * Runs a batch from the command line.
+	 * @param theArgs a directory or manifest, then optionally an engine name,
+	 *                a number of threads and an instruction budget
+	 * @throws IOException if the programs cannot be listed
+	 */
+	public static void main(final String[] theArgs) throws IOException {
+		if (theArgs.length < 1 || theArgs.length > 4) {
+			System.err.println("Usage: java simulator.BatchRunner directory|manifest [engine] [threads] [budget]");
+			System.exit(2);
+		}
+		ExecutionEngine engine = theArgs.length > 1
+				? ExecutionEngine.forName(theArgs[1]) : ExecutionEngine.DECODED;
+		int threads = theArgs.length > 2
+				? Integer.parseInt(theArgs[2]) : Runtime.getRuntime().availableProcessors();
+		long budget = theArgs.length > 3 ? Long.parseLong(theArgs[3]) : DEFAULT_BUDGET;
+
+		List<Path> programs = listPrograms(Paths.get(theArgs[0]));
+		long start = System.nanoTime();
+		List<BatchResult> results = new BatchRunner(engine, threads, budget).run(programs);
+		printReport(results, System.nanoTime() - start, System.out);
+	}
+}
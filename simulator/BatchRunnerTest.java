@@ -0,0 +1,106 @@
+/*
+ * Unit tests for the BatchRunner class.
+ */
+
+package simulator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @version 1.1
+ */
+class BatchRunnerTest {
+
+	// Prints 'A' and halts
+	private final static String PRINT_A =
+			"0010 000 000000010 // LD + #2\n"
+			+ "1111 0000 00100001 // OUT\n"
+			+ "1111 0000 00100101 // HALT\n"
+			+ "0000 0000 0100 0001 // ASCII 'A'\n";
+
+	// Computes 2 + 3 into R0 and halts
+	private final static String ADD =
+			"// R0 <- R2 + #3\n"
+			+ "0001 000 010100011\n"
+			+ "\n"
+			+ "1111 000000100101 // HALT\n";
+
+	// Opcode 1101 is not supported
+	private final static String ILLEGAL = "1101 0000 0000 0000\n";
+
+	@TempDir
+	Path myDirectory;
+
+	/**
+	 * Test method for {@link simulator.BatchRunner#run(List)}.
+	 */
+	@Test
+	void testRunDirectory() throws IOException {
+		Files.writeString(myDirectory.resolve("a.txt"), PRINT_A);
+		Files.writeString(myDirectory.resolve("b.txt"), ADD);
+		Files.writeString(myDirectory.resolve("c.txt"), ILLEGAL);
+
+		List<Path> programs = BatchRunner.listPrograms(myDirectory);
+		List<BatchResult> results = new BatchRunner(ExecutionEngine.DECODED, 2).run(programs);
+
+		assertEquals(3, results.size());
+		assertTrue(results.get(0).isHalted());
+		assertEquals("A", results.get(0).getOutput());
+		assertEquals(65, results.get(0).getRegisters()[0]);
+
+		assertTrue(results.get(1).isHalted());
+		assertEquals(5, results.get(1).getRegisters()[0]);
+		assertEquals(0b001, results.get(1).getCC());
+
+		assertFalse(results.get(2).isHalted());
+		assertTrue(results.get(2).getError().contains("Illegal opCode"));
+	}
+
+	/**
+	 * Test method for {@link simulator.BatchRunner#listPrograms(Path)}. <br>
+	 * A manifest lists programs relative to itself and may repeat them.
+	 */
+	@Test
+	void testRunManifest() throws IOException {
+		Files.writeString(myDirectory.resolve("add.txt"), ADD);
+		Path manifest = myDirectory.resolve("manifest");
+		StringBuilder lines = new StringBuilder("# many copies of one program\n");
+		for (int i = 0; i < 100; i++) {
+			lines.append("add.txt\n");
+		}
+		Files.writeString(manifest, lines);
+
+		List<BatchResult> results = new BatchRunner().run(BatchRunner.listPrograms(manifest));
+
+		assertEquals(100, results.size());
+		for (BatchResult result : results) {
+			assertEquals(5, result.getRegisters()[0]);
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.BatchRunner#run(List)}. <br>
+	 * A program that never halts fails once it uses up its budget.
+	 */
+	@Test
+	void testRunBudget() throws IOException {
+		Files.writeString(myDirectory.resolve("loop.txt"), "0000 111 111111111 // BRnzp - #1\n");
+		Files.writeString(myDirectory.resolve("print.txt"), PRINT_A);
+
+		List<BatchResult> results = new BatchRunner(ExecutionEngine.DECODED, 2, 10_000)
+				.run(BatchRunner.listPrograms(myDirectory));
+
+		assertFalse(results.get(0).isHalted());
+		assertEquals(10_000, results.get(0).getInstructions());
+		assertTrue(results.get(1).isHalted());
+		assertEquals(3, results.get(1).getInstructions());
+	}
+}
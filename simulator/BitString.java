@@ -1,16 +1,16 @@
 package simulator;
 
-import java.util.Arrays;
-
 /**
  * A BitString class represents a series of 1s and 0s and can hold up to
  * a maximum of 16 bits and also keeps track of the number of bits stored.
  * It has operations to do various operations associated with 1s and 0s - 
  * substring, append, copy, setting and getting 2s complement value, etc.
+ * The bits are packed into a single int, so reading a field out of an
+ * instruction with field or signedField does not allocate.
  *  
  * @author mmuppa
  * @author acfowler
- * @version 1.2
+ * @version 1.3
  */
 public class BitString {
 
@@ -21,8 +21,9 @@ public class BitString {
 	private final static int MAX_UNSIGNED_VALUE = 65535; // 2^16 - 1
 	
 	
-	private char[] myBits;
+	private int myBits;
 	private int myLength;
+	private boolean myIsSet;
 
 
 	/**
@@ -34,41 +35,44 @@ public class BitString {
 		if (theBits == null || theBits.length > MAX_BITS) {
 			throw new IllegalArgumentException("Invalid input: null or exceeds bit string length");
 		}
-		myBits = Arrays.copyOf(theBits, theBits.length);
+		int bits = 0;
+		for (int i = 0; i < theBits.length; i++) {
+			bits = (bits << 1) | (theBits[i] == '1' ? 1 : 0);
+		}
+		myBits = bits;
 		myLength = theBits.length;
+		myIsSet = true;
+	}
+
+	/**
+	 * Sets the bits from the low theLength bits of theBits without
+	 * allocating a char array. 
+	 * @param theBits the bits, right aligned
+	 * @param theLength the number of bits to keep
+	 */
+	public void setBits(int theBits, int theLength) {
+		if (theLength < 0 || theLength > MAX_BITS) {
+			throw new IllegalArgumentException("Invalid input: exceeds bit string length");
+		}
+		myBits = theBits & mask(theLength);
+		myLength = theLength;
+		myIsSet = true;
 	}
 
 	/**
 	 * Flips all the bits of the BitString. 
 	 */
 	public void invert() {
-		if (myBits == null) {
-			throw new IllegalArgumentException("Bit String must be set first.");
-		}
-		for (int i = 0; i < myLength; i++) {
-			if (myBits[i] == '0') {
-				myBits[i] = '1';
-			} else {
-				myBits[i] = '0';
-			}
-		}
+		checkSet();
+		myBits = ~myBits & mask(myLength);
 	}
 
 	/**
 	 * Adds 1 to the BitString. 
 	 */
 	public void addOne() {
-		if (myBits == null) {
-			throw new IllegalArgumentException("Bit String must be set first.");
-		}
-		for (int i = myLength - 1; i >= 0; i--) {
-			if (myBits[i] == '0') {
-				myBits[i] = '1';
-				return;
-			} else {
-				myBits[i] = '0';
-			}
-		}
+		checkSet();
+		myBits = (myBits + 1) & mask(myLength);
 	}
 
 	/**
@@ -82,13 +86,9 @@ public class BitString {
 			throw new IllegalArgumentException("Cannot represent in "
 					+ MAX_BITS + " bits.");
 		}
-		
-		myBits = new char[MAX_BITS];
+		myBits = n;
 		myLength = MAX_BITS;
-		for (int i = myLength - 1; i >= 0; i--) {
-			myBits[i] = (n % 2 == 0) ? '0' : '1';
-			n /= 2;
-		}
+		myIsSet = true;
 	}
 
 	/**
@@ -100,15 +100,9 @@ public class BitString {
 			throw new IllegalArgumentException("Cannot represent in "
 					+ MAX_BITS + " bits.");
 		}
-		boolean isNegative = n < 0;
-		if (n < 0) {
-			n *= -1;
-		}
-		setUnsignedValue(n);
-		if (isNegative) {
-			invert();
-			addOne();
-		}
+		myBits = n & MAX_UNSIGNED_VALUE;
+		myLength = MAX_BITS;
+		myIsSet = true;
 	}
 
 	/**
@@ -121,7 +115,7 @@ public class BitString {
 			if (groupsOfFour && (i % 4 == 0) && i != 0) {
 				System.out.print(" ");
 			}
-			if (myBits[i] == '0') {
+			if (bit(i) == 0) {
 				System.out.print("0");
 			} else {
 				System.out.print("1");
@@ -134,12 +128,13 @@ public class BitString {
 	 * @return copy of BitString object
 	 */
 	public BitString copy() {
-		if (myBits == null) {
+		if (!myIsSet) {
 			throw new IllegalArgumentException("Nothing to copy.");
 		}
 		BitString copy = new BitString();
 		copy.myLength = myLength;
-		copy.myBits = Arrays.copyOf(myBits, myLength);
+		copy.myBits = myBits;
+		copy.myIsSet = true;
 		return copy;
 	}
 
@@ -148,15 +143,8 @@ public class BitString {
 	 * @return decimal unsigned value
 	 */
 	public int getUnsignedValue() {
-		if (myBits == null) {
-			throw new IllegalArgumentException("Bit String must be set first.");
-		}
-		int value = 0;
-		for (int i = 0; i < myLength; i++) {
-			value *= 2;
-			value += myBits[i] == '1' ? 1 : 0;
-		}
-		return value;
+		checkSet();
+		return myBits;
 	}
 
 	/**
@@ -164,18 +152,45 @@ public class BitString {
 	 * @return decimal value
 	 */
 	public int get2sCompValue() {
-		if (myBits == null) {
-			throw new IllegalArgumentException("Bit String must be set first.");
-		}
-		boolean negative = myBits[0] == '1';
-		if (negative) {
-			BitString copyString = copy();
-			copyString.invert();
-			copyString.addOne();
-			return -1 * copyString.getUnsignedValue();
-		} else {
-			return getUnsignedValue();
+		checkSet();
+		return signExtend(myBits, myLength);
+	}
+
+	/**
+	 * Returns the unsigned value of the bits starting at index start
+	 * (0 is the leftmost bit) with the given length. Unlike substring
+	 * this does not allocate anything.
+	 * @param start index of the leftmost bit of the field
+	 * @param length number of bits in the field
+	 * @return the unsigned value of the field
+	 */
+	public int field(int start, int length) {
+		checkSet();
+		if (start < 0 || length < 0 || start + length > myLength) {
+			throw new IndexOutOfBoundsException("Invalid field: " + start + ", " + length);
 		}
+		return (myBits >>> (myLength - start - length)) & mask(length);
+	}
+
+	/**
+	 * Returns the 2s complement value of the bits starting at index start
+	 * (0 is the leftmost bit) with the given length.
+	 * @param start index of the leftmost bit of the field
+	 * @param length number of bits in the field
+	 * @return the sign extended value of the field
+	 */
+	public int signedField(int start, int length) {
+		return signExtend(field(start, length), length);
+	}
+
+	/**
+	 * Sign extends the low theLength bits of theValue to an int.
+	 * @param theValue the bits to extend, right aligned
+	 * @param theLength the number of bits in theValue (1 to 32)
+	 * @return the 2s complement value of those bits
+	 */
+	public static int signExtend(int theValue, int theLength) {
+		return (theValue << (Integer.SIZE - theLength)) >> (Integer.SIZE - theLength);
 	}
 
 	/**
@@ -186,7 +201,7 @@ public class BitString {
 	 * @return a new BitString representing the parameter appended to this BitString  
 	 */
 	public BitString append(BitString other) {
-		if (myBits == null || other == null) {
+		if (!myIsSet || other == null || !other.myIsSet) {
 			throw new IllegalArgumentException("Bit String must be set first.");
 		}
 		if (myLength + other.myLength > MAX_BITS) {
@@ -195,20 +210,13 @@ public class BitString {
 		
 		BitString bitString = new BitString();
 		bitString.myLength = myLength + other.myLength;
-		bitString.myBits = new char[bitString.myLength];
-		int index = 0;
-		for (int i = 0; i < this.myLength; i++) {
-			bitString.myBits[index++] = this.myBits[i];
-		}
-		for (int i = 0; i < other.myLength; i++) {
-			bitString.myBits[index++] = other.myBits[i];
-		}
+		bitString.myBits = (myBits << other.myLength) | other.myBits;
+		bitString.myIsSet = true;
 		return bitString;
 	}
 
 	/**
 	 * Returns a substring of the given string. 
-	 * @param source
 	 * @param start
 	 * @param length
 	 * @return A new BitString is created from the source starting at the
@@ -216,21 +224,26 @@ public class BitString {
 	 */
 	public BitString substring(int start, int length) {
 		BitString subStr = new BitString();
-		subStr.myBits = new char[length];
-		int i;
-		for (i = 0; i < length; i++) {
-			subStr.myBits[i] = myBits[start + i];
-		}
+		subStr.myBits = field(start, length);
 		subStr.myLength = length;
+		subStr.myIsSet = true;
 		return subStr;
 	}
 
 	/**
-	 * Returns an array of the bits stored in the BitString
-	 * @return character array of bits
+	 * Returns an array of the bits stored in the BitString. The array is
+	 * built on each call, so changing it does not change the BitString.
+	 * @return character array of bits, or null if the bits are not set
 	 */
 	public char[] getBits() {
-		return myBits;
+		if (!myIsSet) {
+			return null;
+		}
+		char[] bits = new char[myLength];
+		for (int i = 0; i < myLength; i++) {
+			bits[i] = bit(i) == 0 ? '0' : '1';
+		}
+		return bits;
 	}
 
 	/**
@@ -241,4 +254,30 @@ public class BitString {
 		return myLength;
 	}
 
+	/**
+	 * Returns the bit at the given index, 0 being the leftmost bit.
+	 * @param theIndex the index of the bit
+	 * @return 0 or 1
+	 */
+	private int bit(int theIndex) {
+		return (myBits >>> (myLength - 1 - theIndex)) & 1;
+	}
+
+	/**
+	 * Throws if the bits have not been set yet.
+	 */
+	private void checkSet() {
+		if (!myIsSet) {
+			throw new IllegalArgumentException("Bit String must be set first.");
+		}
+	}
+
+	/**
+	 * @param theLength a number of bits
+	 * @return an int with the low theLength bits set
+	 */
+	private static int mask(int theLength) {
+		return (int) ((1L << theLength) - 1);
+	}
+
 }
\ No newline at end of file
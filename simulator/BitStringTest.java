@@ -0,0 +1,133 @@
+/*
+ * Unit tests for the BitString class.
+ */
+
+package simulator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @version 1.0
+ */
+class BitStringTest {
+
+	/**
+	 * Test method for {@link simulator.BitString#field(int, int)} and
+	 * {@link simulator.BitString#signedField(int, int)}. <br>
+	 * A field may end at the last bit or be empty, and one that starts or
+	 * ends outside the string throws.
+	 */
+	@Test
+	void testFieldBounds() {
+		BitString bits = new BitString();
+		bits.setBits("1010110011110001".toCharArray());
+
+		assertEquals(0xACF1, bits.field(0, 16));
+		assertEquals(0x1, bits.field(12, 4));
+		assertEquals(1, bits.field(15, 1));
+		assertEquals(-1, bits.signedField(15, 1));
+		assertEquals(0, bits.field(16, 0));
+		assertEquals(0, bits.field(0, 0));
+		assertEquals(0, bits.signedField(7, 0));
+
+		assertThrows(IndexOutOfBoundsException.class, () -> bits.field(15, 2));
+		assertThrows(IndexOutOfBoundsException.class, () -> bits.field(17, 0));
+		assertThrows(IndexOutOfBoundsException.class, () -> bits.field(0, 17));
+		assertThrows(IndexOutOfBoundsException.class, () -> bits.field(-1, 2));
+		assertThrows(IndexOutOfBoundsException.class, () -> bits.field(0, -1));
+		assertThrows(IndexOutOfBoundsException.class, () -> bits.signedField(12, 5));
+		assertThrows(IndexOutOfBoundsException.class, () -> bits.substring(12, 5));
+
+		BitString shorter = new BitString();
+		shorter.setBits("101".toCharArray());
+		assertEquals(5, shorter.field(0, 3));
+		assertEquals(0, shorter.field(3, 0));
+		assertThrows(IndexOutOfBoundsException.class, () -> shorter.field(1, 3));
+
+		assertThrows(IllegalArgumentException.class, () -> new BitString().field(0, 0));
+	}
+
+	/**
+	 * Test method for {@link simulator.BitString#signExtend(int, int)}. <br>
+	 * The widths of the LC-3 imm5, offset6, PCoffset9 and PCoffset11
+	 * fields extend from their top bit, and bits above the width are
+	 * ignored.
+	 */
+	@Test
+	void testSignExtend() {
+		int[] widths = {5, 6, 9, 11};
+		for (int width : widths) {
+			int largest = (1 << (width - 1)) - 1;
+			assertEquals(largest, BitString.signExtend(largest, width));
+			assertEquals(-largest - 1, BitString.signExtend(largest + 1, width));
+			assertEquals(-1, BitString.signExtend((1 << width) - 1, width));
+			assertEquals(0, BitString.signExtend(0, width));
+			assertEquals(3, BitString.signExtend(~0 << width | 3, width));
+			assertEquals(-2, BitString.signExtend(1 << width | ((1 << width) - 2), width));
+		}
+
+		BitString instruction = new BitString();
+		instruction.setBits("0001 001 010 1 10000".replace(" ", "").toCharArray()); // ADD R1 <- R2 + #-16
+		assertEquals(-16, instruction.signedField(11, 5));
+		instruction.setBits("0110 001 010 011111".replace(" ", "").toCharArray()); // LDR R1 <- R2 + #31
+		assertEquals(31, instruction.signedField(10, 6));
+		instruction.setBits("0000 111 100000000".replace(" ", "").toCharArray()); // BRnzp - #256
+		assertEquals(-256, instruction.signedField(7, 9));
+		instruction.setBits("0100 1 01111111111".replace(" ", "").toCharArray()); // JSR + #1023
+		assertEquals(1023, instruction.signedField(5, 11));
+	}
+
+	/**
+	 * Test method for {@link simulator.BitString#setBits(int, int)}. <br>
+	 * Only the low bits are kept, and a length outside 0 to 16 throws.
+	 */
+	@Test
+	void testSetBitsMasking() {
+		BitString bits = new BitString();
+
+		bits.setBits(0xFFFF, 3);
+		assertEquals(3, bits.getLength());
+		assertEquals(7, bits.getUnsignedValue());
+		assertEquals(-1, bits.get2sCompValue());
+		assertArrayEquals("111".toCharArray(), bits.getBits());
+
+		bits.setBits(0b1010, 2);
+		assertEquals(2, bits.getUnsignedValue());
+		assertArrayEquals("10".toCharArray(), bits.getBits());
+
+		bits.setBits(-1, 16);
+		assertEquals(0xFFFF, bits.getUnsignedValue());
+		assertEquals(-1, bits.get2sCompValue());
+
+		bits.setBits(0x12345, 16);
+		assertEquals(0x2345, bits.getUnsignedValue());
+
+		bits.setBits(5, 0);
+		assertEquals(0, bits.getLength());
+		assertEquals(0, bits.getUnsignedValue());
+		assertEquals(0, bits.getBits().length);
+
+		assertThrows(IllegalArgumentException.class, () -> bits.setBits(1, 17));
+		assertThrows(IllegalArgumentException.class, () -> bits.setBits(1, -1));
+	}
+
+	/**
+	 * Test method for {@link simulator.BitString#getBits()} and
+	 * {@link simulator.BitString#substring(int, int)}. <br>
+	 * getBits returns a copy, and an unset BitString has no bits to take.
+	 */
+	@Test
+	void testGetBitsCopy() {
+		BitString bits = new BitString();
+		assertNull(bits.getBits());
+		assertThrows(IllegalArgumentException.class, () -> bits.substring(0, 0));
+
+		bits.setBits("0110".toCharArray());
+		char[] copy = bits.getBits();
+		copy[0] = '1';
+		assertArrayEquals("0110".toCharArray(), bits.getBits());
+		assertEquals(6, bits.getUnsignedValue());
+	}
+}
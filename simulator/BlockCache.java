@@ -0,0 +1,151 @@
+package simulator;
+
+/**
+ * The BlockCache holds the compiled blocks of one Computer for the JIT
+ * engine. It counts how often each block leader (an address reached by a
+ * branch or after a block ends) is entered, compiles the block once it is
+ * hot, and throws compiled blocks away when memory they cover is written.
+ *
+ * The bookkeeping is kept in pages of PAGE_SIZE words that are only
+ * allocated once code in them runs, so a Computer running a small program
+ * only pays for the pages holding that program.
+ *
+ * @version 1.0
+ */
+final class BlockCache {
+
+	/** The number of entries to a leader before its block is compiled. */
+	final static int THRESHOLD = 200;
+
+	/** Marks a leader whose block cannot be compiled. */
+	private final static char NEVER = Character.MAX_VALUE;
+
+	private final static int PAGE_BITS = 8;
+	private final static int PAGE_SIZE = 1 << PAGE_BITS;
+	private final static int PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * The bookkeeping for PAGE_SIZE consecutive addresses.
+	 */
+	private final static class Page {
+		final CompiledBlock[] myBlocks = new CompiledBlock[PAGE_SIZE];
+		final byte[] myLengths = new byte[PAGE_SIZE];
+		final byte[] myCoverage = new byte[PAGE_SIZE];
+		final char[] myCounts = new char[PAGE_SIZE];
+	}
+
+	private final Memory myMemory;
+	private final Page[] myPages;
+
+	/**
+	 * @param theMemory the memory the blocks are compiled from
+	 */
+	BlockCache(Memory theMemory) {
+		myMemory = theMemory;
+		myPages = new Page[Memory.SIZE >>> PAGE_BITS];
+	}
+
+	/**
+	 * Records an entry to the leader at theAddress and returns its
+	 * compiled block, compiling it if it has just become hot.
+	 * @param theAddress the address of the leader
+	 * @return the compiled block, or null if the block is not compiled
+	 */
+	CompiledBlock enter(int theAddress) {
+		Page page = page(theAddress);
+		int offset = theAddress & PAGE_MASK;
+		CompiledBlock block = page.myBlocks[offset];
+		if (block == null && page.myCounts[offset] != NEVER
+				&& ++page.myCounts[offset] >= THRESHOLD) {
+			block = compile(theAddress);
+		}
+		return block;
+	}
+
+	/**
+	 * @param theAddress the address of the leader
+	 * @return the number of instructions in the block starting there
+	 */
+	int getLength(int theAddress) {
+		Page page = myPages[theAddress >>> PAGE_BITS];
+		return page == null ? 0 : page.myLengths[theAddress & PAGE_MASK];
+	}
+
+	/**
+	 * Throws away every compiled block covering theAddress; called
+	 * whenever the word at theAddress changes.
+	 * @param theAddress the address that was written
+	 */
+	void invalidate(int theAddress) {
+		Page page = myPages[theAddress >>> PAGE_BITS];
+		if (page == null) {
+			return;
+		}
+		int offset = theAddress & PAGE_MASK;
+		if (page.myCounts[offset] == NEVER) {
+			page.myCounts[offset] = 0;
+		}
+		if (page.myCoverage[offset] == 0) {
+			return;
+		}
+		int first = Math.max(0, theAddress - BlockCompiler.MAX_BLOCK + 1);
+		for (int start = theAddress; start >= first; start--) {
+			Page startPage = myPages[start >>> PAGE_BITS];
+			int length = startPage == null ? 0 : startPage.myLengths[start & PAGE_MASK];
+			if (length > 0 && start + length > theAddress) {
+				remove(start);
+			}
+		}
+	}
+
+	/**
+	 * Compiles the block starting at theAddress.
+	 * @param theAddress the address of the leader
+	 * @return the compiled block, or null if it cannot be compiled
+	 */
+	private CompiledBlock compile(int theAddress) {
+		Page page = page(theAddress);
+		int offset = theAddress & PAGE_MASK;
+		int length = BlockCompiler.measure(myMemory, theAddress);
+		if (length == 0) {
+			page.myCounts[offset] = NEVER;
+			return null;
+		}
+		CompiledBlock block = BlockCompiler.compile(myMemory, theAddress, length);
+		page.myBlocks[offset] = block;
+		page.myLengths[offset] = (byte) length;
+		for (int i = 0; i < length; i++) {
+			page(theAddress + i).myCoverage[(theAddress + i) & PAGE_MASK]++;
+		}
+		return block;
+	}
+
+	/**
+	 * Deoptimizes the block starting at theStart; it will be interpreted
+	 * until it becomes hot again.
+	 * @param theStart the address of the leader
+	 */
+	private void remove(int theStart) {
+		Page page = page(theStart);
+		int offset = theStart & PAGE_MASK;
+		for (int i = 0; i < page.myLengths[offset]; i++) {
+			page(theStart + i).myCoverage[(theStart + i) & PAGE_MASK]--;
+		}
+		page.myBlocks[offset] = null;
+		page.myLengths[offset] = 0;
+		page.myCounts[offset] = 0;
+	}
+
+	/**
+	 * @param theAddress an address
+	 * @return the page holding theAddress, allocating it if needed
+	 */
+	private Page page(int theAddress) {
+		Page page = myPages[theAddress >>> PAGE_BITS];
+		if (page == null) {
+			page = new Page();
+			myPages[theAddress >>> PAGE_BITS] = page;
+		}
+		return page;
+	}
+}
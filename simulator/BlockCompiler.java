@@ -0,0 +1,517 @@
+package simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The BlockCompiler translates a basic block of ADD, AND, NOT, LD, LDR,
+ * LDI, LEA, ST, STR, STI and BR instructions into a hidden JVM class
+ * implementing CompiledBlock.
+ *
+ * The registers the block uses are copied into locals on entry and the
+ * ones it writes are copied back on exit. The CC is only written back once,
+ * from the last value that set it, and the IR is left holding the block's
+ * last word. A block ends after a taken-or-not branch or a store, or
+ * before any other instruction (subroutine calls, jumps and traps are
+ * always interpreted), so the generated code is straight-line and needs
+ * no stack map frames.
+ *
+ * Compiled code refers to nothing but constants and the Computer it is
+ * given, so a block is shared by every Computer running the same words
+ * at the same address. That keeps thousands of machines running one
+ * program from each defining, and warming up, their own classes.
+ *
+ * @version 1.1
+ */
+final class BlockCompiler {
+
+	/** The most instructions put in one block. */
+	final static int MAX_BLOCK = 64;
+
+	/** The most blocks kept for sharing before the shared cache starts over. */
+	private final static int MAX_SHARED = 4096;
+
+	private final static MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	/** Compiled blocks keyed by their start address followed by their words. */
+	private final static Map<String, CompiledBlock> SHARED = new ConcurrentHashMap<>();
+
+	private final static String CLASS_NAME = "simulator/CompiledBlockImpl";
+	private final static String COMPUTER = "simulator/Computer";
+	private final static String COMPILER = "simulator/BlockCompiler";
+
+	// Locals of the generated run method
+	private final static int COMPUTER_LOCAL = 1;
+	private final static int FIRST_REGISTER_LOCAL = 2;
+	private final static int CC_LOCAL = 10;
+	private final static int NEXT_LOCAL = 11;
+	private final static int MAX_LOCALS = 12;
+	private final static int MAX_STACK = 6;
+
+	// JVM opcodes used by the generated code
+	private final static int ICONST_M1 = 0x02;
+	private final static int ICONST_0 = 0x03;
+	private final static int BIPUSH = 0x10;
+	private final static int SIPUSH = 0x11;
+	private final static int LDC_W = 0x13;
+	private final static int ILOAD = 0x15;
+	private final static int ALOAD_0 = 0x2a;
+	private final static int ALOAD_1 = 0x2b;
+	private final static int ISTORE = 0x36;
+	private final static int DUP = 0x59;
+	private final static int IADD = 0x60;
+	private final static int IAND = 0x7e;
+	private final static int IXOR = 0x82;
+	private final static int I2S = 0x93;
+	private final static int IRETURN = 0xac;
+	private final static int RETURN = 0xb1;
+	private final static int INVOKEVIRTUAL = 0xb6;
+	private final static int INVOKESPECIAL = 0xb7;
+	private final static int INVOKESTATIC = 0xb8;
+
+	private BlockCompiler() {
+	}
+
+	/**
+	 * @param theOpCode an opcode
+	 * @return true if instructions with this opcode never end a block
+	 */
+	static boolean isStraightLine(int theOpCode) {
+		switch (theOpCode) {
+			case 1:  // ADD
+			case 2:  // LD
+			case 5:  // AND
+			case 6:  // LDR
+			case 9:  // NOT
+			case 10: // LDI
+			case 14: // LEA
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Finds the length of the block starting at theStart.
+	 * @param theMemory the memory holding the block
+	 * @param theStart the address of the leader
+	 * @return the number of instructions in the block; 0 if the leader
+	 *         itself cannot be compiled
+	 */
+	static int measure(Memory theMemory, int theStart) {
+		int length = 0;
+		while (length < MAX_BLOCK && theStart + length < Memory.SIZE) {
+			int word = theMemory.read(theStart + length) & 0xFFFF;
+			int opCode = word >>> 12;
+			if (opCode == 3 || opCode == 7 || opCode == 11 || (opCode == 0 && (word & 0x0E00) != 0)) {
+				return length + 1; // a store or a real BR ends the block
+			} else if (opCode != 0 && !isStraightLine(opCode)) {
+				return length; // so does anything that must be interpreted
+			}
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Compiles the block starting at theStart.
+	 * @param theMemory the memory holding the block
+	 * @param theStart the address of the leader
+	 * @param theLength the length found by measure
+	 * @return the compiled block
+	 */
+	static CompiledBlock compile(Memory theMemory, int theStart, int theLength) {
+		char[] key = new char[theLength + 1];
+		key[0] = (char) theStart;
+		for (int i = 0; i < theLength; i++) {
+			key[i + 1] = (char) theMemory.read(theStart + i);
+		}
+		if (SHARED.size() >= MAX_SHARED) {
+			SHARED.clear();
+		}
+		return SHARED.computeIfAbsent(new String(key), k -> generate(theStart, key));
+	}
+
+	/**
+	 * Generates and defines the class for a block.
+	 * @param theStart the address of the leader
+	 * @param theKey the start address followed by the words of the block
+	 * @return the compiled block
+	 */
+	private static CompiledBlock generate(int theStart, char[] theKey) {
+		int length = theKey.length - 1;
+		ConstantPool pool = new ConstantPool();
+		Code code = new Code(pool);
+		int readRegister = pool.methodRef(COMPUTER, "readRegister", "(I)I");
+		int writeRegister = pool.methodRef(COMPUTER, "writeRegister", "(II)V");
+		int readWord = pool.methodRef(COMPUTER, "readWord", "(I)I");
+		int writeWord = pool.methodRef(COMPUTER, "writeWord", "(II)V");
+
+		boolean[] used = new boolean[8];
+		boolean[] written = new boolean[8];
+		for (int i = 0; i < length; i++) {
+			int word = theKey[i + 1];
+			int opCode = word >>> 12;
+			if (isStraightLine(opCode)) {
+				used[(word >>> 9) & 0x7] = true;
+				written[(word >>> 9) & 0x7] = true;
+			}
+			if (opCode == 1 || opCode == 5 || opCode == 9 || opCode == 6 || opCode == 7) {
+				used[(word >>> 6) & 0x7] = true;
+			}
+			if ((opCode == 1 || opCode == 5) && (word & 0x20) == 0) {
+				used[word & 0x7] = true;
+			}
+			if (opCode == 3 || opCode == 7 || opCode == 11) {
+				used[(word >>> 9) & 0x7] = true;
+			}
+		}
+
+		for (int r = 0; r < 8; r++) {
+			if (used[r]) {
+				code.op(ALOAD_1).push(r).invoke(INVOKEVIRTUAL, readRegister);
+				code.local(ISTORE, FIRST_REGISTER_LOCAL + r);
+			}
+		}
+
+		boolean ccSet = false;
+		boolean nextSet = false;
+		for (int i = 0; i < length; i++) {
+			int word = theKey[i + 1];
+			int next = (theStart + i + 1) & 0xFFFF;
+			int dest = FIRST_REGISTER_LOCAL + ((word >>> 9) & 0x7);
+			int source1 = FIRST_REGISTER_LOCAL + ((word >>> 6) & 0x7);
+			int source2 = FIRST_REGISTER_LOCAL + (word & 0x7);
+			int immediate = BitString.signExtend(word, 5);
+			int offset6 = BitString.signExtend(word, 6);
+			int address = (next + BitString.signExtend(word, 9)) & 0xFFFF;
+			switch (word >>> 12) {
+				case 1: // ADD
+					code.local(ILOAD, source1);
+					if ((word & 0x20) != 0) {
+						code.push(immediate);
+					} else {
+						code.local(ILOAD, source2);
+					}
+					code.op(IADD).op(I2S).op(DUP).local(ISTORE, dest).local(ISTORE, CC_LOCAL);
+					ccSet = true;
+					break;
+				case 5: // AND
+					code.local(ILOAD, source1);
+					if ((word & 0x20) != 0) {
+						code.push(immediate);
+					} else {
+						code.local(ILOAD, source2);
+					}
+					code.op(IAND).op(DUP).local(ISTORE, dest).local(ISTORE, CC_LOCAL);
+					ccSet = true;
+					break;
+				case 9: // NOT
+					code.local(ILOAD, source1).op(ICONST_M1).op(IXOR);
+					code.op(DUP).local(ISTORE, dest).local(ISTORE, CC_LOCAL);
+					ccSet = true;
+					break;
+				case 2: // LD
+					code.op(ALOAD_1).push(address).invoke(INVOKEVIRTUAL, readWord);
+					code.op(DUP).local(ISTORE, dest).local(ISTORE, CC_LOCAL);
+					ccSet = true;
+					break;
+				case 6: // LDR
+					code.op(ALOAD_1).local(ILOAD, source1).push(offset6).op(IADD).push(0xFFFF).op(IAND);
+					code.invoke(INVOKEVIRTUAL, readWord);
+					code.op(DUP).local(ISTORE, dest).local(ISTORE, CC_LOCAL);
+					ccSet = true;
+					break;
+				case 10: // LDI
+					code.op(ALOAD_1).op(ALOAD_1).push(address).invoke(INVOKEVIRTUAL, readWord);
+					code.push(0xFFFF).op(IAND).invoke(INVOKEVIRTUAL, readWord);
+					code.op(DUP).local(ISTORE, dest).local(ISTORE, CC_LOCAL);
+					ccSet = true;
+					break;
+				case 14: // LEA, which leaves the CC alone
+					code.push((short) address).local(ISTORE, dest);
+					break;
+				case 3: // ST
+					code.op(ALOAD_1).push(address).local(ILOAD, dest);
+					code.invoke(INVOKEVIRTUAL, writeWord);
+					break;
+				case 7: // STR
+					code.op(ALOAD_1).local(ILOAD, source1).push(offset6).op(IADD).push(0xFFFF).op(IAND);
+					code.local(ILOAD, dest).invoke(INVOKEVIRTUAL, writeWord);
+					break;
+				case 11: // STI
+					code.op(ALOAD_1).op(ALOAD_1).push(address).invoke(INVOKEVIRTUAL, readWord);
+					code.push(0xFFFF).op(IAND).local(ILOAD, dest).invoke(INVOKEVIRTUAL, writeWord);
+					break;
+				default: // BR
+					int condition = (word >>> 9) & 0x7;
+					// the CC is 000 until something sets it, and then BRnzp is not taken
+					if (condition == 0x7 && ccSet) {
+						code.push(address).local(ISTORE, NEXT_LOCAL);
+						nextSet = true;
+					} else if (condition != 0) {
+						code.push(condition);
+						if (ccSet) {
+							code.local(ILOAD, CC_LOCAL).push(address).push(next);
+							code.invoke(INVOKESTATIC, pool.methodRef(COMPILER, "branch", "(IIII)I"));
+						} else {
+							code.op(ALOAD_1);
+							code.invoke(INVOKEVIRTUAL, pool.methodRef(COMPUTER, "getConditionBits", "()I"));
+							code.push(address).push(next);
+							code.invoke(INVOKESTATIC, pool.methodRef(COMPILER, "branchOnBits", "(IIII)I"));
+						}
+						code.local(ISTORE, NEXT_LOCAL);
+						nextSet = true;
+					}
+					break;
+			}
+		}
+
+		for (int r = 0; r < 8; r++) {
+			if (written[r]) {
+				code.op(ALOAD_1).push(r).local(ILOAD, FIRST_REGISTER_LOCAL + r);
+				code.invoke(INVOKEVIRTUAL, writeRegister);
+			}
+		}
+		if (ccSet) {
+			code.op(ALOAD_1).local(ILOAD, CC_LOCAL);
+			code.invoke(INVOKEVIRTUAL, pool.methodRef(COMPUTER, "setConditionCode", "(I)V"));
+		}
+		// the IR ends up holding the last word as it was compiled, even if the block stored over it
+		code.op(ALOAD_1).push(theKey[length]);
+		code.invoke(INVOKEVIRTUAL, pool.methodRef(COMPUTER, "setIRWord", "(I)V"));
+		if (nextSet) {
+			code.local(ILOAD, NEXT_LOCAL);
+		} else {
+			code.push((theStart + length) & 0xFFFF);
+		}
+		code.op(IRETURN);
+
+		byte[] bytes = classFile(pool, code);
+		try {
+			Class<?> blockClass = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+			return (CompiledBlock) blockClass.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not compile the block at " + theStart, e);
+		}
+	}
+
+	/**
+	 * Called by compiled code to finish a BR after the CC was set in the block.
+	 * @param theCondition the nzp bits of the BR
+	 * @param theValue the value that last set the CC
+	 * @param theTarget the branch target
+	 * @param theNext the address after the BR
+	 * @return the address of the next instruction
+	 */
+	static int branch(int theCondition, int theValue, int theTarget, int theNext) {
+		int bits = theValue < 0 ? 0b100 : theValue == 0 ? 0b010 : 0b001;
+		return branchOnBits(theCondition, bits, theTarget, theNext);
+	}
+
+	/**
+	 * Called by compiled code to finish a BR on the CC the block started with.
+	 * @param theCondition the nzp bits of the BR
+	 * @param theBits the nzp bits of the CC
+	 * @param theTarget the branch target
+	 * @param theNext the address after the BR
+	 * @return the address of the next instruction
+	 */
+	static int branchOnBits(int theCondition, int theBits, int theTarget, int theNext) {
+		return (theCondition & theBits) != 0 ? theTarget : theNext;
+	}
+
+	/**
+	 * Assembles the class file of a block.
+	 * @param thePool the constant pool the code refers to
+	 * @param theCode the body of the run method
+	 * @return the class file bytes
+	 */
+	private static byte[] classFile(ConstantPool thePool, Code theCode) {
+		int thisClass = thePool.classRef(CLASS_NAME);
+		int superClass = thePool.classRef("java/lang/Object");
+		int blockInterface = thePool.classRef("simulator/CompiledBlock");
+		int objectInit = thePool.methodRef("java/lang/Object", "<init>", "()V");
+		int init = thePool.utf8("<init>");
+		int initType = thePool.utf8("()V");
+		int run = thePool.utf8("run");
+		int runType = thePool.utf8("(Lsimulator/Computer;)I");
+		int codeName = thePool.utf8("Code");
+
+		Code constructor = new Code(thePool);
+		constructor.op(ALOAD_0).invoke(INVOKESPECIAL, objectInit).op(RETURN);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(52); // Java 8 class file; straight-line code needs no stack maps
+			thePool.writeTo(out);
+			out.writeShort(0x0010 | 0x0020); // ACC_FINAL | ACC_SUPER
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(blockInterface);
+			out.writeShort(0); // fields
+			out.writeShort(2); // methods
+			writeMethod(out, init, initType, codeName, 1, 1, constructor);
+			writeMethod(out, run, runType, codeName, MAX_STACK, MAX_LOCALS, theCode);
+			out.writeShort(0); // attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes a public method with a Code attribute.
+	 */
+	private static void writeMethod(DataOutputStream theOut, int theName, int theType, int theCodeName,
+			int theMaxStack, int theMaxLocals, Code theCode) throws IOException {
+		byte[] code = theCode.toByteArray();
+		theOut.writeShort(0x0001); // ACC_PUBLIC
+		theOut.writeShort(theName);
+		theOut.writeShort(theType);
+		theOut.writeShort(1);
+		theOut.writeShort(theCodeName);
+		theOut.writeInt(12 + code.length);
+		theOut.writeShort(theMaxStack);
+		theOut.writeShort(theMaxLocals);
+		theOut.writeInt(code.length);
+		theOut.write(code);
+		theOut.writeShort(0); // exception table
+		theOut.writeShort(0); // attributes
+	}
+
+	/**
+	 * A class file constant pool that only adds each constant once.
+	 */
+	private final static class ConstantPool {
+
+		private final ByteArrayOutputStream myBytes = new ByteArrayOutputStream();
+		private final DataOutputStream myOut = new DataOutputStream(myBytes);
+		private final Map<String, Integer> myIndexes = new HashMap<>();
+		private int myCount = 1;
+
+		int utf8(String theValue) {
+			return add("U" + theValue, out -> {
+				out.writeByte(1);
+				out.writeUTF(theValue);
+			});
+		}
+
+		int integer(int theValue) {
+			return add("I" + theValue, out -> {
+				out.writeByte(3);
+				out.writeInt(theValue);
+			});
+		}
+
+		int classRef(String theName) {
+			int name = utf8(theName);
+			return add("C" + theName, out -> {
+				out.writeByte(7);
+				out.writeShort(name);
+			});
+		}
+
+		int methodRef(String theOwner, String theName, String theType) {
+			int owner = classRef(theOwner);
+			int name = utf8(theName);
+			int type = utf8(theType);
+			int nameAndType = add("N" + theName + theType, out -> {
+				out.writeByte(12);
+				out.writeShort(name);
+				out.writeShort(type);
+			});
+			return add("M" + theOwner + "." + theName + theType, out -> {
+				out.writeByte(10);
+				out.writeShort(owner);
+				out.writeShort(nameAndType);
+			});
+		}
+
+		void writeTo(DataOutputStream theOut) throws IOException {
+			theOut.writeShort(myCount);
+			myBytes.writeTo(theOut);
+		}
+
+		private int add(String theKey, Entry theEntry) {
+			Integer index = myIndexes.get(theKey);
+			if (index == null) {
+				try {
+					theEntry.writeTo(myOut);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				index = myCount++;
+				myIndexes.put(theKey, index);
+			}
+			return index;
+		}
+
+		@FunctionalInterface
+		private interface Entry {
+			void writeTo(DataOutputStream theOut) throws IOException;
+		}
+	}
+
+	/**
+	 * The bytecode of one method.
+	 */
+	private final static class Code {
+
+		private final ConstantPool myPool;
+		private final ByteArrayOutputStream myBytes = new ByteArrayOutputStream();
+
+		Code(ConstantPool thePool) {
+			myPool = thePool;
+		}
+
+		Code op(int theOpCode) {
+			myBytes.write(theOpCode);
+			return this;
+		}
+
+		Code local(int theOpCode, int theLocal) {
+			myBytes.write(theOpCode);
+			myBytes.write(theLocal);
+			return this;
+		}
+
+		Code invoke(int theOpCode, int theMethod) {
+			myBytes.write(theOpCode);
+			myBytes.write(theMethod >>> 8);
+			myBytes.write(theMethod);
+			return this;
+		}
+
+		Code push(int theValue) {
+			if (theValue >= -1 && theValue <= 5) {
+				myBytes.write(ICONST_0 + theValue);
+			} else if (theValue >= Byte.MIN_VALUE && theValue <= Byte.MAX_VALUE) {
+				myBytes.write(BIPUSH);
+				myBytes.write(theValue);
+			} else if (theValue >= Short.MIN_VALUE && theValue <= Short.MAX_VALUE) {
+				myBytes.write(SIPUSH);
+				myBytes.write(theValue >>> 8);
+				myBytes.write(theValue);
+			} else {
+				int index = myPool.integer(theValue);
+				myBytes.write(LDC_W);
+				myBytes.write(index >>> 8);
+				myBytes.write(index);
+			}
+			return this;
+		}
+
+		byte[] toByteArray() {
+			return myBytes.toByteArray();
+		}
+	}
+}
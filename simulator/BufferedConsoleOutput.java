@@ -0,0 +1,57 @@
+package simulator;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * The BufferedConsoleOutput collects output characters in a buffer and
+ * prints them to a stream in one call when the buffer fills or the
+ * Computer halts, instead of one synchronized print per character.
+ *
+ * @version 1.0
+ */
+public class BufferedConsoleOutput implements OutputDevice {
+
+	/** The buffer size used by the no-argument constructor. */
+	public final static int DEFAULT_CAPACITY = 8192;
+
+	private final PrintStream myStream;
+	private final char[] myBuffer;
+	private int mySize;
+
+	/**
+	 * Creates an output that prints to System.out.
+	 */
+	public BufferedConsoleOutput() {
+		this(System.out, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param theStream the stream to print to
+	 * @param theCapacity the number of characters to hold before printing
+	 */
+	public BufferedConsoleOutput(final PrintStream theStream, final int theCapacity) {
+		if (theStream == null || theCapacity < 1) {
+			throw new IllegalArgumentException("Invalid stream or capacity");
+		}
+		myStream = theStream;
+		myBuffer = new char[theCapacity];
+	}
+
+	@Override
+	public void write(final char theCharacter) {
+		if (mySize == myBuffer.length) {
+			flush();
+		}
+		myBuffer[mySize++] = theCharacter;
+	}
+
+	@Override
+	public void flush() {
+		if (mySize > 0) {
+			myStream.print(mySize == myBuffer.length ? myBuffer : Arrays.copyOf(myBuffer, mySize));
+			mySize = 0;
+		}
+		myStream.flush();
+	}
+}
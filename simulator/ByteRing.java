@@ -0,0 +1,118 @@
+package simulator;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ByteRing is a fixed size queue of bytes for exactly one producer
+ * thread and one consumer thread. Neither side ever takes a lock: the
+ * producer only moves the tail and the consumer only moves the head, and
+ * each publishes its move with an ordered write that the other side reads.
+ *
+ * @version 1.1
+ */
+final class ByteRing {
+
+	private final byte[] myBuffer;
+	private final int myMask;
+	/** The index of the next byte to take; only the consumer writes it. */
+	private final AtomicLong myHead = new AtomicLong();
+	/** The index of the next byte to put; only the producer writes it. */
+	private final AtomicLong myTail = new AtomicLong();
+
+	/**
+	 * @param theCapacity the number of bytes held, a power of 2
+	 */
+	ByteRing(final int theCapacity) {
+		if (theCapacity < 1 || Integer.bitCount(theCapacity) != 1) {
+			throw new IllegalArgumentException("Invalid capacity");
+		}
+		myBuffer = new byte[theCapacity];
+		myMask = theCapacity - 1;
+	}
+
+	/**
+	 * Producer: adds one byte.
+	 * @param theByte the byte; only the low 8 bits are kept
+	 * @return false if the ring is full
+	 */
+	boolean offer(final int theByte) {
+		long tail = myTail.get();
+		if (tail - myHead.get() == myBuffer.length) {
+			return false;
+		}
+		myBuffer[(int) tail & myMask] = (byte) theByte;
+		myTail.lazySet(tail + 1);
+		return true;
+	}
+
+	/**
+	 * Producer: adds as many of the remaining bytes of theSource as fit.
+	 * @param theSource the bytes to add
+	 * @return the number added
+	 */
+	int put(final ByteBuffer theSource) {
+		long tail = myTail.get();
+		int count = (int) Math.min(theSource.remaining(), myBuffer.length - (tail - myHead.get()));
+		for (int i = 0; i < count; i++) {
+			myBuffer[(int) (tail + i) & myMask] = theSource.get();
+		}
+		myTail.lazySet(tail + count);
+		return count;
+	}
+
+	/**
+	 * Consumer: takes one byte.
+	 * @return the byte, 0 to 255, or -1 if the ring is empty
+	 */
+	int poll() {
+		long head = myHead.get();
+		if (head == myTail.get()) {
+			return -1;
+		}
+		int value = myBuffer[(int) head & myMask] & 0xFF;
+		myHead.lazySet(head + 1);
+		return value;
+	}
+
+	/**
+	 * Consumer: looks at the next byte without taking it.
+	 * @return the byte, 0 to 255, or -1 if the ring is empty
+	 */
+	int peek() {
+		long head = myHead.get();
+		if (head == myTail.get()) {
+			return -1;
+		}
+		return myBuffer[(int) head & myMask] & 0xFF;
+	}
+
+	/**
+	 * Consumer: takes as many bytes as fit in theTarget.
+	 * @param theTarget where to put the bytes
+	 * @return the number taken
+	 */
+	int take(final ByteBuffer theTarget) {
+		long head = myHead.get();
+		int count = (int) Math.min(theTarget.remaining(), myTail.get() - head);
+		for (int i = 0; i < count; i++) {
+			theTarget.put(myBuffer[(int) (head + i) & myMask]);
+		}
+		myHead.lazySet(head + count);
+		return count;
+	}
+
+	/**
+	 * @return true if there are no bytes to take
+	 */
+	boolean isEmpty() {
+		return myHead.get() == myTail.get();
+	}
+
+	/**
+	 * @return true if there is no room to put a byte
+	 */
+	boolean isFull() {
+		return myTail.get() - myHead.get() == myBuffer.length;
+	}
+}
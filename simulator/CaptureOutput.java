@@ -0,0 +1,30 @@
+package simulator;
+
+/**
+ * The CaptureOutput keeps everything a Computer prints in memory, for
+ * tests and batch runs that need to check the output afterwards.
+ *
+ * @version 1.0
+ */
+public class CaptureOutput implements OutputDevice {
+
+	private final StringBuilder myOutput = new StringBuilder();
+
+	@Override
+	public void write(final char theCharacter) {
+		myOutput.append(theCharacter);
+	}
+
+	@Override
+	public void flush() {
+		// nothing is buffered
+	}
+
+	/**
+	 * @return everything written so far
+	 */
+	@Override
+	public String toString() {
+		return myOutput.toString();
+	}
+}
@@ -0,0 +1,293 @@
+package simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A ChannelConsole is the input and output device of one interactive
+ * session over a pair of non-blocking channels, such as a socket or the
+ * two ends of pipes, from ConsoleHub.open().
+ *
+ * The Computer and the hub's selector thread share two ByteRings: the hub
+ * fills the input ring from the channel and the Computer takes from it,
+ * and the Computer fills the output ring and the hub writes it to the
+ * channel. read() never waits; with no character yet it returns
+ * WOULD_BLOCK, the Computer suspends, and awaitInput() calls it back once
+ * the hub has put a character in the ring. One character is one byte.
+ *
+ * When the peer reads more slowly than the program writes, write() parks
+ * the Computer's thread until the hub has written some of the output
+ * ring out, rather than spinning on it. Once the hub is closed, or the
+ * output channel fails, a waiting program is woken, input ends and
+ * output is dropped. The same happens when the console's own I/O or
+ * wakeup throws on the hub's thread.
+ *
+ * @version 1.2
+ */
+public final class ChannelConsole implements InputDevice, OutputDevice {
+
+	private final ConsoleHub myHub;
+	private final SelectableChannel myIn;
+	private final SelectableChannel myOut;
+	private final ByteRing myInput;
+	private final ByteRing myOutput;
+
+	/** Set by the hub once the input channel has ended or failed. */
+	private volatile boolean myEnded;
+	/** Set by the hub once the output channel has failed; later output is dropped. */
+	private volatile boolean myClosed;
+	/** Set by the hub when the input ring was full, so it stopped reading. */
+	private final AtomicBoolean myReadPaused = new AtomicBoolean();
+	/** Set while the hub has output to write, so flush() asks it only once. */
+	private final AtomicBoolean myFlushPending = new AtomicBoolean();
+	/** Run by the hub the next time input arrives. */
+	private final AtomicReference<Runnable> myWakeup = new AtomicReference<>();
+	/** Waited on by write() while the output ring is full. */
+	private final Object myRoom = new Object();
+
+	// Used only on the hub's thread
+	private final ByteBuffer myReadBuffer;
+	private final ByteBuffer myWriteBuffer;
+	private SelectionKey myInKey;
+	private SelectionKey myOutKey;
+
+	/**
+	 * @param theHub the hub that does the I/O
+	 * @param theIn the non-blocking channel to read input from
+	 * @param theOut the non-blocking channel to write output to; may be theIn
+	 * @param theCapacity the size of each ring and buffer, a power of 2
+	 */
+	ChannelConsole(final ConsoleHub theHub, final SelectableChannel theIn,
+			final SelectableChannel theOut, final int theCapacity) {
+		myHub = theHub;
+		myIn = theIn;
+		myOut = theOut;
+		myInput = new ByteRing(theCapacity);
+		myOutput = new ByteRing(theCapacity);
+		myReadBuffer = ByteBuffer.allocate(theCapacity);
+		myWriteBuffer = ByteBuffer.allocate(theCapacity);
+		myWriteBuffer.flip();
+	}
+
+	@Override
+	public int read() {
+		int character = myInput.poll();
+		if (character < 0) {
+			// the hub sets myEnded after its last put, so look again once it is set
+			return myEnded ? myInput.poll() : WOULD_BLOCK;
+		}
+		if (myReadPaused.get() && myReadPaused.compareAndSet(true, false)) {
+			myHub.submit(this, this::fill);
+		}
+		return character;
+	}
+
+	@Override
+	public void awaitInput(final Runnable theWakeup) {
+		myWakeup.set(theWakeup);
+		// input may have arrived after read() looked and before the wakeup was set
+		if ((!myInput.isEmpty() || myEnded) && myWakeup.compareAndSet(theWakeup, null)) {
+			theWakeup.run();
+		}
+	}
+
+	/**
+	 * Adds a character to the output ring. When the ring is full this
+	 * parks until the hub has written some of it out, and drops the
+	 * character if the console is closed meanwhile.
+	 */
+	@Override
+	public void write(final char theCharacter) {
+		while (!myClosed && !myOutput.offer(theCharacter)) {
+			flush();
+			synchronized (myRoom) {
+				// the hub takes from the ring before it notifies under this lock, so no wakeup is missed
+				while (!myClosed && myOutput.isFull()) {
+					try {
+						myRoom.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Asks the hub to write out the output ring. It does not wait for the
+	 * write to finish.
+	 */
+	@Override
+	public void flush() {
+		if (!myClosed && !myOutput.isEmpty() && myFlushPending.compareAndSet(false, true)) {
+			myHub.submit(this, this::drain);
+		}
+	}
+
+	/**
+	 * Hub: registers the channels with the hub's selector and starts reading.
+	 * @param theSelector the hub's selector
+	 */
+	void register(final Selector theSelector) {
+		try {
+			myInKey = myIn.register(theSelector, SelectionKey.OP_READ, this);
+			myOutKey = myOut == myIn ? myInKey : myOut.register(theSelector, 0, this);
+		} catch (IOException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Hub: ends input, drops output and cancels the keys, waking a program
+	 * waiting for either, when the hub is closed, a channel cannot be
+	 * registered or the console has thrown.
+	 */
+	void close() {
+		myEnded = true;
+		myClosed = true;
+		if (myInKey != null) {
+			myInKey.cancel();
+		}
+		if (myOutKey != null) {
+			myOutKey.cancel();
+		}
+		room();
+		wake();
+	}
+
+	/**
+	 * Hub: called when a channel is ready for what this console asked of it.
+	 * @param theKey the selected key
+	 */
+	void ready(final SelectionKey theKey) {
+		if (theKey == myInKey && theKey.isValid() && theKey.isReadable()) {
+			fill();
+		}
+		if (theKey == myOutKey && theKey.isValid() && theKey.isWritable()) {
+			drain();
+		}
+	}
+
+	/**
+	 * Hub: moves input from the channel into the input ring until the
+	 * channel has no more for now or the ring is full.
+	 */
+	private void fill() {
+		try {
+			while (true) {
+				myReadBuffer.flip();
+				myInput.put(myReadBuffer);
+				myReadBuffer.compact();
+				if (myReadBuffer.position() > 0) {
+					// the ring is full; read() starts the hub again once it has taken some
+					interest(myInKey, SelectionKey.OP_READ, false);
+					myReadPaused.set(true);
+					if (myInput.isFull() || !myReadPaused.compareAndSet(true, false)) {
+						break;
+					}
+					continue;
+				}
+				if (myEnded) {
+					break;
+				}
+				int count = ((ReadableByteChannel) myIn).read(myReadBuffer);
+				if (count < 0) {
+					myEnded = true;
+					interest(myInKey, SelectionKey.OP_READ, false);
+					break;
+				}
+				if (count == 0) {
+					interest(myInKey, SelectionKey.OP_READ, true);
+					break;
+				}
+			}
+		} catch (IOException e) {
+			myEnded = true;
+			interest(myInKey, SelectionKey.OP_READ, false);
+		}
+		if (myEnded && myClosed) {
+			myHub.release(this);
+		}
+		wake();
+	}
+
+	/**
+	 * Hub: writes the output ring to the channel until the ring is empty
+	 * or the channel can take no more for now.
+	 */
+	private void drain() {
+		try {
+			while (true) {
+				if (!myWriteBuffer.hasRemaining()) {
+					myWriteBuffer.clear();
+					myOutput.take(myWriteBuffer);
+					myWriteBuffer.flip();
+					if (myWriteBuffer.hasRemaining()) {
+						room();
+					}
+				}
+				if (!myWriteBuffer.hasRemaining()) {
+					interest(myOutKey, SelectionKey.OP_WRITE, false);
+					myFlushPending.set(false);
+					// a character written after the ring was emptied may not have asked for a flush
+					if (myOutput.isEmpty() || !myFlushPending.compareAndSet(false, true)) {
+						return;
+					}
+					continue;
+				}
+				((WritableByteChannel) myOut).write(myWriteBuffer);
+				if (myWriteBuffer.hasRemaining()) {
+					interest(myOutKey, SelectionKey.OP_WRITE, true);
+					return;
+				}
+			}
+		} catch (IOException e) {
+			myClosed = true;
+			interest(myOutKey, SelectionKey.OP_WRITE, false);
+			if (myEnded) {
+				myHub.release(this);
+			}
+			room();
+		}
+	}
+
+	/**
+	 * Hub: wakes a write() waiting for room in the output ring.
+	 */
+	private void room() {
+		synchronized (myRoom) {
+			myRoom.notifyAll();
+		}
+	}
+
+	/**
+	 * Hub: runs the wakeup waiting for input, if any.
+	 */
+	private void wake() {
+		Runnable wakeup = myWakeup.getAndSet(null);
+		if (wakeup != null) {
+			wakeup.run();
+		}
+	}
+
+	/**
+	 * Hub: turns one interest of a key on or off.
+	 * @param theKey the key, or null if the channel is not registered
+	 * @param theOperation the SelectionKey operation
+	 * @param theOn true to turn it on
+	 */
+	private static void interest(final SelectionKey theKey, final int theOperation, final boolean theOn) {
+		if (theKey != null && theKey.isValid()) {
+			int operations = theKey.interestOps();
+			theKey.interestOps(theOn ? operations | theOperation : operations & ~theOperation);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package simulator;
+
+/**
+ * A CompiledBlock is a basic block of LC-3 instructions translated into
+ * JVM bytecode by the BlockCompiler. Running it has the same effect on the
+ * registers, CC and memory as interpreting its instructions one at a time.
+ *
+ * @version 1.0
+ */
+interface CompiledBlock {
+
+	/**
+	 * Executes the block.
+	 * @param theComputer the computer to execute on
+	 * @return the address of the next instruction to execute
+	 */
+	int run(Computer theComputer);
+}
@@ -1,6 +1,17 @@
 package simulator;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * The Computer class is composed of registers, memory, PC, IR, and CC.
@@ -9,30 +20,138 @@ import java.util.Arrays;
  * @author mmuppa
  * @author acfowler
  * @author raidenh
- * @version 4.1
+ * @version 5.6
  */
 public class Computer {
 
-	private final static int MAX_MEMORY = 50;
+	private final static int MAX_MEMORY = Memory.SIZE;
 	private final static int MAX_REGISTERS = 8;
+	private final static int DISPLAY_MEMORY = 50;
+	private final static String IN_PROMPT = "Input a character> ";
+	/** Where the supervisor stack starts, until the first interrupt moves R6. */
+	private final static int SUPERVISOR_STACK = 0x3000;
+	/** The interrupt vector table. */
+	private final static int INTERRUPT_TABLE = 0x0100;
+	/** How often the keyboard is looked at while its interrupt is enabled. */
+	private final static int KEYBOARD_POLL = 1024;
 
 	private BitString[] mRegisters;
-	private BitString[] mMemory;
+	private final Memory mMemory;
+	private final InstructionCache mDecoded;
+	private final InstructionCache mFused;
+	private BlockCache mBlocks;
+	private final InputDevice mInput;
+	private final OutputDevice mOutput;
+	private final DeviceBus mDevices;
+	private final EventQueue mEvents;
+	/** Created the first time it is asked for, since most Computers are never debugged. */
+	private Debugger mDebugger;
+	private int mOrigin;
 	private BitString mPC;
 	private BitString mIR;
 	private BitString mCC;
+	/** PSR[15] clear: running an interrupt service routine. Programs start in user mode. */
+	private boolean mSupervisor;
+	/** PSR[10:8]: only interrupts of a higher priority are taken. */
+	private int mPriority;
+	/** The R6 of the mode not running: Saved_SSP in user mode, Saved_USP in supervisor mode. */
+	private int mSavedStack;
+	private long mInstructions;
+	private RuntimeException mFault;
+	/** True while a GETC or IN trap is suspended, waiting for input. */
+	private boolean mWaiting;
+	/** True if a device is a TimedDevice, so I/O traps bring the instruction count up to date. */
+	private final boolean mTimed;
+	/** True while an I/O trap has stopped the engine so that the count is up to date. */
+	private boolean mSynced;
+	/** True once a store to a device register or an RTI has stopped the engine, so events are looked at again. */
+	private boolean mRecheck;
+	/** True if the last instruction of the engine's run was a trap that will run again. */
+	private boolean mRewound;
 
 	/**
 	 * Initialize all memory addresses to 0, registers to 0 through 7
 	 * PC, IR to 16 bit 0s and CC to 000.
+	 * Input traps read System.in and output traps print to System.out
+	 * through a BufferedConsoleOutput.
 	 */
 	public Computer() {
+		this(new BufferedConsoleOutput());
+	}
+
+	/**
+	 * Initialize all memory addresses to 0, registers to 0 through 7
+	 * PC, IR to 16 bit 0s and CC to 000. Input traps read System.in.
+	 * @param theOutput the device that output traps write to.
+	 */
+	public Computer(final OutputDevice theOutput) {
+		this(new ConsoleInput(), theOutput);
+	}
+
+	/**
+	 * Initialize all memory addresses to 0, registers to 0 through 7
+	 * PC, IR to 16 bit 0s and CC to 000.
+	 * @param theInput the device that input traps read from.
+	 * @param theOutput the device that output traps write to.
+	 */
+	public Computer(final InputDevice theInput, final OutputDevice theOutput) {
+		this(theInput, theOutput, new Memory());
+	}
+
+	/**
+	 * Forks a Computer from a snapshot. It starts with the snapshot's
+	 * registers, PC, IR, CC and memory, and shares the memory pages with
+	 * the snapshot until it writes to them.
+	 * @param theSnapshot the state to start from.
+	 * @param theOutput the device that output traps write to.
+	 */
+	public Computer(final ComputerSnapshot theSnapshot, final OutputDevice theOutput) {
+		this(theSnapshot, new ConsoleInput(), theOutput);
+	}
+
+	/**
+	 * Forks a Computer from a snapshot, as above, with its own input.
+	 * @param theSnapshot the state to start from.
+	 * @param theInput the device that input traps read from.
+	 * @param theOutput the device that output traps write to.
+	 */
+	public Computer(final ComputerSnapshot theSnapshot, final InputDevice theInput,
+			final OutputDevice theOutput) {
+		this(theInput, theOutput, new Memory(theSnapshot.getPages()));
+		for (int i = 0; i < MAX_REGISTERS; i++) {
+			mRegisters[i].setUnsignedValue(theSnapshot.getRegister(i));
+		}
+		mPC.setUnsignedValue(theSnapshot.getPC());
+		mIR.setUnsignedValue(theSnapshot.getIR());
+		mCC.setBits(theSnapshot.getCC(), 3);
+		mSupervisor = (theSnapshot.getPSR() & 0x8000) == 0;
+		mPriority = (theSnapshot.getPSR() >>> 8) & 0x7;
+		mSavedStack = theSnapshot.getSavedStack();
+		mOrigin = theSnapshot.getOrigin();
+	}
+
+	/**
+	 * Initialize registers to 0 through 7, PC, IR to 16 bit 0s and CC to 000.
+	 * @param theInput the device that input traps read from.
+	 * @param theOutput the device that output traps write to.
+	 * @param theMemory the memory to use.
+	 */
+	private Computer(final InputDevice theInput, final OutputDevice theOutput, final Memory theMemory) {
+		if (theInput == null || theOutput == null) {
+			throw new IllegalArgumentException("Invalid input or output device");
+		}
+		mInput = theInput;
+		mOutput = theOutput;
+		mDevices = new DeviceBus(DeviceBus.DEFAULT_CAPACITY);
+		mEvents = new EventQueue();
+		mSavedStack = SUPERVISOR_STACK;
+		mTimed = theInput instanceof TimedDevice || theOutput instanceof TimedDevice;
 		mPC = new BitString();
 		mPC.setUnsignedValue(0);
 		mIR = new BitString();
 		mIR.setUnsignedValue(0);
 		mCC = new BitString();
-		mCC.setBits(new char[] { '0', '0', '0' });
+		mCC.setBits(0b000, 3);
 		
 		mRegisters = new BitString[MAX_REGISTERS];
 		for (int i = 0; i < MAX_REGISTERS; i++) {
@@ -40,10 +159,14 @@ public class Computer {
 			mRegisters[i].setUnsignedValue(i);
 		}
 
-		mMemory = new BitString[MAX_MEMORY];
-		for (int i = 0; i < MAX_MEMORY; i++) {
-			mMemory[i] = new BitString();
-			mMemory[i].setUnsignedValue(0);
+		mMemory = theMemory;
+		mDecoded = new InstructionCache(mMemory);
+		mFused = new InstructionCache(mMemory, true);
+		if (theInput instanceof TimedDevice) {
+			((TimedDevice) theInput).attach(this);
+		}
+		if (theOutput instanceof TimedDevice && theOutput != theInput) {
+			((TimedDevice) theOutput).attach(this);
 		}
 	}
 	
@@ -51,17 +174,100 @@ public class Computer {
 	// Do NOT add public mutator methods (setters)!
 	
 	/**
-	 * @return the registers
+	 * @return a copy of the registers; register(int) reads one without copying
 	 */
 	public BitString[] getRegisters() {
 		return copyBitStringArray(mRegisters);
 	}
 
 	/**
-	 * @return the memory
+	 * The memory is stored as packed words, so this view builds a
+	 * BitString only for the word asked for, from the live memory, and
+	 * costs nothing up front. Each get() returns a new copy; writing to it
+	 * does not change the memory. memory(int) and memory(int, int) read
+	 * words without building any BitString.
+	 * @return a read-only list of all 65,536 words of memory
+	 */
+	public List<BitString> getMemory() {
+		return new AbstractList<BitString>() {
+			@Override
+			public BitString get(final int theAddress) {
+				BitString word = new BitString();
+				word.set2sCompValue(mMemory.read(Objects.checkIndex(theAddress, MAX_MEMORY)));
+				return word;
+			}
+
+			@Override
+			public int size() {
+				return MAX_MEMORY;
+			}
+		};
+	}
+
+	/**
+	 * Reads a register without copying it.
+	 * @param theRegister the register number, 0 to 7
+	 * @return the 2s complement value of the register
+	 */
+	public int register(final int theRegister) {
+		if (theRegister < 0 || theRegister >= MAX_REGISTERS) {
+			throw new IllegalArgumentException("Invalid register: " + theRegister);
+		}
+		return readRegister(theRegister);
+	}
+
+	/**
+	 * Reads a word of memory without copying the rest.
+	 * @param theAddress the address, 0 to 65535
+	 * @return the 2s complement value of the word
+	 */
+	public int memory(final int theAddress) {
+		if (theAddress < 0 || theAddress >= MAX_MEMORY) {
+			throw new IllegalArgumentException("Invalid address: " + theAddress);
+		}
+		return mMemory.read(theAddress);
+	}
+
+	/**
+	 * @return the memory-mapped keyboard and display, which host threads
+	 *         may feed and drain while the program runs
+	 */
+	public DeviceBus getDevices() {
+		return mDevices;
+	}
+
+	/**
+	 * Compares this Computer's memory with another's, for the DifferentialFuzzer.
+	 * @param theOther the computer to compare with
+	 * @return the first address whose words differ, or -1 if none does
+	 */
+	int memoryMismatch(final Computer theOther) {
+		return mMemory.mismatch(theOther.mMemory);
+	}
+
+	/**
+	 * @return the debugger, which sets breakpoints and watchpoints; a run
+	 *         only looks at them while at least one is set
 	 */
-	public BitString[] getMemory() {
-		return copyBitStringArray(mMemory);
+	public Debugger getDebugger() {
+		if (mDebugger == null) {
+			mDebugger = new Debugger(this);
+		}
+		return mDebugger;
+	}
+
+	/**
+	 * Returns a read-only view of a range of memory. The view reads the
+	 * live words, so it shows every later write without being asked again.
+	 * @param theStart the address of the first word
+	 * @param theLength the number of words
+	 * @return the view
+	 */
+	public MemoryView memory(final int theStart, final int theLength) {
+		if (theStart < 0 || theLength < 0 || theStart + theLength > MAX_MEMORY) {
+			throw new IllegalArgumentException("Invalid range: " + theStart + ", " + theLength);
+		}
+		return new MemoryView(mMemory, theStart, theLength);
 	}
 
 	/**
@@ -84,7 +290,32 @@ public class Computer {
 	public BitString getCC() {
 		return mCC.copy();
 	}
+
+	/**
+	 * @return the PSR: the privilege mode in bit 15, 1 for user mode, the
+	 *         priority level in bits [10:8] and the CC in bits [2:0]
+	 */
+	public BitString getPSR() {
+		BitString psr = new BitString();
+		psr.setUnsignedValue(psr());
+		return psr;
+	}
 	
+	/**
+	 * Takes a snapshot of the registers, PC, IR, PSR and memory. Only the
+	 * memory pages written since the last snapshot are visited, and this
+	 * Computer copies a page again the next time it writes to it.
+	 * @return the snapshot
+	 */
+	public ComputerSnapshot snapshot() {
+		int[] registers = new int[MAX_REGISTERS];
+		for (int i = 0; i < MAX_REGISTERS; i++) {
+			registers[i] = mRegisters[i].getUnsignedValue();
+		}
+		return new ComputerSnapshot(mMemory.snapshot(), registers, mPC.getUnsignedValue(),
+				mIR.getUnsignedValue(), psr(), mSavedStack, mOrigin);
+	}
+
 	/**
 	 * Safely copies a BitString array.
 	 * @param theArray the array to copy.
@@ -105,28 +336,129 @@ public class Computer {
 		if (address < 0 || address >= MAX_MEMORY) {
 			throw new IllegalArgumentException("Invalid address");
 		}
-		mMemory[address] = word;
+		loadWord(address, word.getUnsignedValue());
+	}
+
+	/**
+	 * Loads a word into memory for a loader. Like load(), it fills memory
+	 * even under the device registers rather than writing to the devices.
+	 * @param theAddress memory address
+	 * @param theValue the word
+	 */
+	private void loadWord(int theAddress, int theValue) {
+		mMemory.write(theAddress, theValue);
+		invalidate(theAddress);
 	}
 	
 	/**
-	 * Loads a machine code program, as Strings.
+	 * Loads a machine code program, as Strings, starting at address 0.
 	 * @param theWords the Strings that contain the instructions or data.
 	 */
 	public void loadMachineCode(final String ... theWords) {
-		if (theWords.length == 0 || theWords.length >= MAX_MEMORY) {
+		loadMachineCode(0, theWords);
+	}
+
+	/**
+	 * Loads a machine code program, as Strings, starting at theOrigin
+	 * (x3000 for most LC-3 programs) and sets the PC to theOrigin.
+	 * @param theOrigin the address of the first word.
+	 * @param theWords the Strings that contain the instructions or data.
+	 */
+	public void loadMachineCode(final int theOrigin, final String ... theWords) {
+		if (theWords.length == 0 || theOrigin < 0 || theOrigin + theWords.length > MAX_MEMORY) {
 			throw new IllegalArgumentException("Invalid words");
 		}
 		for (int i = 0; i < theWords.length; i++) {
 			final BitString instruction = new BitString();
 			// Added input cleaning to strip spaces. This makes input strings MUCH more readable
 			instruction.setBits(theWords[i].replaceAll(" ", "").toCharArray());
-			loadWord(i, instruction);
+			loadWord(theOrigin + i, instruction);
+		}
+		mOrigin = theOrigin;
+		mPC.setUnsignedValue(theOrigin);
+	}
+
+	/**
+	 * Loads a machine code program as text, one word per line, starting at
+	 * theOrigin and sets the PC to theOrigin. The text is parsed as it is
+	 * read, so programs of any length can be loaded; spaces and // comments
+	 * are ignored, as in Simulator.main.
+	 * If a line is invalid, the words before it have already been loaded.
+	 * @param theOrigin the address of the first word.
+	 * @param theReader the text of the program.
+	 * @throws IOException if the text cannot be read.
+	 */
+	public void loadMachineCode(final int theOrigin, final Reader theReader) throws IOException {
+		if (theOrigin < 0 || theOrigin >= MAX_MEMORY) {
+			throw new IllegalArgumentException("Invalid origin");
+		}
+		MachineCodeReader words = new MachineCodeReader(theReader);
+		int address = theOrigin;
+		for (int word = words.next(); word >= 0; word = words.next()) {
+			if (address == MAX_MEMORY) {
+				throw new IllegalArgumentException("Line " + words.getLine()
+						+ ": the program does not fit in memory");
+			}
+			loadWord(address++, word);
+		}
+		if (address == theOrigin) {
+			throw new IllegalArgumentException("Invalid words");
+		}
+		mOrigin = theOrigin;
+		mPC.setUnsignedValue(theOrigin);
+	}
+
+	/**
+	 * Loads an LC-3 object file: a big-endian origin word followed by the
+	 * program's words. The file is memory mapped and copied straight into
+	 * memory, and the PC is set to the origin.
+	 * @param theFile the .obj file.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public void loadObjectFile(final Path theFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < 4 || size % 2 != 0 || size > 2L * (MAX_MEMORY + 1)) {
+				throw new IllegalArgumentException("Invalid object file: " + theFile);
+			}
+			ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			int origin = bytes.getShort() & 0xFFFF;
+			int length = bytes.remaining() / 2;
+			if (origin + length > MAX_MEMORY) {
+				throw new IllegalArgumentException("Invalid object file: " + theFile);
+			}
+			load(origin, bytes.asShortBuffer());
+		}
+	}
+
+	/**
+	 * Loads a program from the Assembler: its words are copied into memory
+	 * at its origin, and the PC is set to the origin.
+	 * @param theProgram the assembled program.
+	 */
+	public void loadProgram(final AssembledProgram theProgram) {
+		load(theProgram.getOrigin(), ShortBuffer.wrap(theProgram.words()));
+	}
+
+	/**
+	 * Copies words into memory, forgets anything decoded or compiled from
+	 * the old words, and sets the PC to theOrigin.
+	 * @param theOrigin the address of the first word.
+	 * @param theWords the words, which must fit in memory.
+	 */
+	private void load(final int theOrigin, final ShortBuffer theWords) {
+		int length = theWords.remaining();
+		mMemory.load(theOrigin, theWords);
+		for (int address = theOrigin; address < theOrigin + length; address++) {
+			invalidate(address);
 		}
+		mOrigin = theOrigin;
+		mPC.setUnsignedValue(theOrigin);
 	}
 	
 	
-	// The next 6 methods are used to execute the required instructions:
-	// BR, ADD, LD, ST, AND, NOT, TRAP
+	// The next methods are used to execute each instruction:
+	// BR, ADD, LD, ST, JSR, AND, LDR, STR, RTI, NOT, LDI, STI, JMP, LEA, TRAP
 	
 	/**
 	 * op   nzp pc9offset
@@ -139,19 +471,7 @@ public class Computer {
 	 * adding the sign-extended PCoffset9 field to the incremented PC.
 	 */
 	public void executeBranch() {
-		char[] condition = mIR.substring(4, 3).getBits();
-		int offset = mIR.substring(7, 9).get2sCompValue();
-
-		if (condition[0] == '1' && mCC.getBits()[0] == '1') {
-			// negative
-			mPC.set2sCompValue(mPC.get2sCompValue() + offset);
-		} else if (condition[1] == '1' && mCC.getBits()[1] == '1') {
-			// zero
-			mPC.set2sCompValue(mPC.get2sCompValue() + offset);
-		} else if (condition[2] == '1' && mCC.getBits()[2] == '1') {
-			// positive
-			mPC.set2sCompValue(mPC.get2sCompValue() + offset);
-		}
+		branch(mIR.field(4, 3), mIR.signedField(7, 9));
 	}
 	
 	/**
@@ -170,17 +490,11 @@ public class Computer {
 	 * negative, zero, or positive.
 	 */
 	public void executeAdd() {
-		int dest = mIR.substring(4, 3).getUnsignedValue();
-		int source = mRegisters[mIR.substring(7, 3).getUnsignedValue()].get2sCompValue();
-
-		if (mIR.substring(10, 1).getUnsignedValue() == 1) { // immediate value
-			int immediate = mIR.substring(11, 5).get2sCompValue();
-			mRegisters[dest].set2sCompValue(source + immediate);
+		if (mIR.field(10, 1) == 1) { // immediate value
+			addImmediate(mIR.field(4, 3), mIR.field(7, 3), mIR.signedField(11, 5));
 		} else { // register operand
-			int operand = mRegisters[mIR.substring(13, 3).get2sCompValue()].get2sCompValue();
-			mRegisters[dest].set2sCompValue(source + operand);
+			addRegister(mIR.field(4, 3), mIR.field(7, 3), mIR.field(13, 3));
 		}
-		setConditionCode(((Integer) mRegisters[dest].get2sCompValue()).compareTo(0));
 	}
 	
 	/**
@@ -191,10 +505,7 @@ public class Computer {
 	 * then sets CC.
 	 */
 	public void executeLoad() {
-		int dest = mIR.substring(4, 3).getUnsignedValue();
-		int target = mPC.getUnsignedValue() + mIR.substring(7, 9).get2sCompValue();
-		// set the value of Rdest to the data in memory location [mPC + offset]
-		mRegisters[dest].set2sCompValue(mMemory[target].get2sCompValue());
+		load(mIR.field(4, 3), mIR.signedField(7, 9));
 	}
 	
 	/**
@@ -202,11 +513,11 @@ public class Computer {
 	 * Store the contents of the register specified by SR
 	 * in the memory location whose address is computed by sign-extending bits [8:0] to 16 bits
 	 * and adding this value to the incremented PC.
+	 * 
+	 * @return true if it stored to a device register; false otherwise.
 	 */
-	public void executeStore() {
-		int source = mIR.substring(4, 3).getUnsignedValue();
-		int offset = mIR.substring(7, 9).get2sCompValue();
-		mMemory[mPC.get2sCompValue() + offset].set2sCompValue(mRegisters[source].get2sCompValue());
+	public boolean executeStore() {
+		return store(mIR.field(4, 3), mIR.signedField(7, 9));
 	}
 	
 	/**
@@ -226,29 +537,11 @@ public class Computer {
 	 * is negative, zero, or positive.
 	 */
 	public void executeAnd() {
-		int dest = mIR.substring(4, 3).getUnsignedValue();
-		char[] source = mRegisters[mIR.substring(7, 3).getUnsignedValue()].getBits();
-		char[] comparison;
-		// none of this is good. it's 1am. im tired okay...
-		if (mIR.substring(10, 1).getUnsignedValue() == 1) { // immediate value
-			char[] imm = mIR.substring(11, 5).getBits();
-			comparison = new char[] {
-				imm[0], imm[0], imm[0], imm[0],
-				imm[0], imm[0], imm[0], imm[0],
-				imm[0], imm[0], imm[0], imm[0],
-				imm[1], imm[2], imm[3], imm[4]};
+		if (mIR.field(10, 1) == 1) { // immediate value
+			andImmediate(mIR.field(4, 3), mIR.field(7, 3), mIR.signedField(11, 5));
 		} else { // second operand
-			comparison = mRegisters[mIR.substring(13, 3).getUnsignedValue()].getBits();
+			andRegister(mIR.field(4, 3), mIR.field(7, 3), mIR.field(13, 3));
 		}
-		char[] output = new char[16];
-		for (int i = 0; i < 16; i++) {
-			if (source[i] == '1' && comparison[i] == '1') {
-				output[i] = '1';
-			} else {
-				output[i] = '0';
-			}
-		}
-		mRegisters[dest].setBits(output);
 	}
 
 	/**
@@ -257,88 +550,888 @@ public class Computer {
 	 * Then sets CC.
 	 */
 	public void executeNot() {
-		BitString destBS = mIR.substring(4, 3);
-		BitString sourceBS = mIR.substring(7, 3);
-		mRegisters[destBS.getUnsignedValue()] = mRegisters[sourceBS.getUnsignedValue()].copy();
-		mRegisters[destBS.getUnsignedValue()].invert();
-		setConditionCode(((Integer) destBS.get2sCompValue()).compareTo(0));
+		not(mIR.field(4, 3), mIR.field(7, 3));
+	}
+
+	/**
+	 * op   1 pc11offset
+	 * 0100 1 00000000000
+	 * 
+	 * OR
+	 * 
+	 * op   0 00 baseR 000000
+	 * 0100 0 00 000   000000
+	 * 
+	 * The incremented PC is saved in R7. If bit [11] is 1 (JSR), the PC is
+	 * set to the incremented PC plus the sign-extended PCoffset11.
+	 * If bit [11] is 0 (JSRR), the PC is set to the contents of BaseR.
+	 */
+	public void executeJumpSubroutine() {
+		if (mIR.field(4, 1) == 1) { // JSR
+			jumpSubroutine(mIR.signedField(5, 11));
+		} else { // JSRR
+			jumpSubroutineRegister(mIR.field(7, 3));
+		}
+	}
+
+	/**
+	 * 0110 000 000 000000 (opcode, DR, BaseR, offset6)
+	 * Loads DR from the memory location whose address is the contents of
+	 * BaseR plus the sign-extended offset6, then sets CC.
+	 */
+	public void executeLoadRegister() {
+		loadRegister(mIR.field(4, 3), mIR.field(7, 3), mIR.signedField(10, 6));
+	}
+
+	/**
+	 * 0111 000 000 000000 (opcode, SR, BaseR, offset6)
+	 * Stores SR in the memory location whose address is the contents of
+	 * BaseR plus the sign-extended offset6.
+	 * 
+	 * @return true if it stored to a device register; false otherwise.
+	 */
+	public boolean executeStoreRegister() {
+		return storeRegister(mIR.field(4, 3), mIR.field(7, 3), mIR.signedField(10, 6));
+	}
+
+	/**
+	 * 1000 000000000000 (opcode)
+	 * Returns from an interrupt service routine: pops the PC and then the
+	 * PSR off the supervisor stack, and goes back to the user stack if the
+	 * PSR is for user mode. Programs start in user mode, where RTI is a
+	 * privilege mode violation.
+	 * 
+	 * @return true, so the engine stops and interrupts of a lower priority are looked at.
+	 */
+	public boolean executeReturnFromInterrupt() {
+		return returnFromInterrupt();
+	}
+
+	/**
+	 * 1010 000 000000000 (opcode, DR, offset9)
+	 * Loads DR from the memory location whose address is stored at the
+	 * incremented PC plus the sign-extended offset9, then sets CC.
+	 */
+	public void executeLoadIndirect() {
+		loadIndirect(mIR.field(4, 3), mIR.signedField(7, 9));
+	}
+
+	/**
+	 * 1011 000 000000000 (opcode, SR, offset9)
+	 * Stores SR in the memory location whose address is stored at the
+	 * incremented PC plus the sign-extended offset9.
+	 * 
+	 * @return true if it stored to a device register; false otherwise.
+	 */
+	public boolean executeStoreIndirect() {
+		return storeIndirect(mIR.field(4, 3), mIR.signedField(7, 9));
+	}
+
+	/**
+	 * 1100 000 000 000000 (opcode, BaseR)
+	 * Sets the PC to the contents of BaseR. RET is JMP R7.
+	 */
+	public void executeJump() {
+		jump(mIR.field(7, 3));
+	}
+
+	/**
+	 * 1110 000 000000000 (opcode, DR, offset9)
+	 * Loads DR with the incremented PC plus the sign-extended offset9.
+	 * As in the current LC-3 definition, the CC is not changed.
+	 */
+	public void executeLoadEffectiveAddress() {
+		loadEffectiveAddress(mIR.field(4, 3), mIR.signedField(7, 9));
 	}
 	
 	/**
 	 * 1111 0000 ******** (trapvect8)
 	 * Executes the trap operation by checking the vector (bits [7:0]
 	 * 
+	 * vector x20 - GETC
 	 * vector x21 - OUT
+	 * vector x22 - PUTS
+	 * vector x23 - IN
+	 * vector x24 - PUTSP
 	 * vector x25 - HALT
 	 * 
-	 * @return true if this Trap is a HALT command; false otherwise.
+	 * The simulator services traps itself, without an operating system,
+	 * so R7 is not changed.
+	 * 
+	 * @return true if this Trap is a HALT command or is waiting for input; false otherwise.
 	 */
 	public boolean executeTrap() {
-		int vector = mIR.substring(8, 8).get2sCompValue();
-		if (vector == 0x21) {
-			System.out.print((char) mRegisters[0].substring(8, 8).get2sCompValue());
-			return false;
-		} else if (vector == 0x25) {
-			return true;
+		return trap(mIR.signedField(8, 8));
+	}
+
+
+	// The next methods carry out each instruction on fields that have
+	// already been decoded. The execute methods above decode mIR and call
+	// them; so do the handlers of the cached DecodedInstructions.
+
+	/**
+	 * BR: adds theOffset to the PC if any of theCondition's nzp bits
+	 * is also set in the CC.
+	 * @param theCondition the nzp bits [11:9]
+	 * @param theOffset the sign extended PCoffset9
+	 */
+	void branch(int theCondition, int theOffset) {
+		// nzp in the instruction lines up bit for bit with nzp in the CC
+		if ((theCondition & mCC.getUnsignedValue()) != 0) {
+			mPC.setUnsignedValue((mPC.getUnsignedValue() + theOffset) & 0xFFFF);
 		}
+	}
+
+	/**
+	 * ADD: DR <- SR1 + imm5, then sets CC.
+	 * @param theDest DR
+	 * @param theSource SR1
+	 * @param theImmediate the sign extended imm5
+	 */
+	void addImmediate(int theDest, int theSource, int theImmediate) {
+		int result = (short) (mRegisters[theSource].get2sCompValue() + theImmediate);
+		mRegisters[theDest].set2sCompValue(result);
+		setConditionCode(result);
+	}
+
+	/**
+	 * ADD DR, SR1, #imm5 followed by BR, as one superinstruction. The IR and
+	 * PC end up as they would after the BR.
+	 * @param theDest DR
+	 * @param theSource SR1
+	 * @param theImmediate the sign extended imm5
+	 * @param theBranch the BR instruction word
+	 * @param theCondition the nzp bits of the BR
+	 * @param theOffset the sign extended offset9 of the BR
+	 */
+	void addBranch(int theDest, int theSource, int theImmediate, int theBranch, int theCondition,
+			int theOffset) {
+		addImmediate(theDest, theSource, theImmediate);
+		mIR.setUnsignedValue(theBranch);
+		int next = mPC.getUnsignedValue() + 1;
+		if ((theCondition & mCC.getUnsignedValue()) != 0) {
+			next += theOffset;
+		}
+		mPC.setUnsignedValue(next & 0xFFFF);
+	}
+
+	/**
+	 * AND DR, SR1, #0 followed by ADD DR, DR, #imm5, as one superinstruction:
+	 * DR <- imm5, then sets CC. The IR and PC end up as they would after the ADD.
+	 * @param theDest DR
+	 * @param theImmediate the sign extended imm5 of the ADD
+	 * @param theAdd the ADD instruction word
+	 */
+	void clearAdd(int theDest, int theImmediate, int theAdd) {
+		mIR.setUnsignedValue(theAdd);
+		mPC.addOne();
+		mRegisters[theDest].set2sCompValue(theImmediate);
+		setConditionCode(theImmediate);
+	}
+
+	/**
+	 * ADD: DR <- SR1 + SR2, then sets CC.
+	 * @param theDest DR
+	 * @param theSource1 SR1
+	 * @param theSource2 SR2
+	 */
+	void addRegister(int theDest, int theSource1, int theSource2) {
+		addImmediate(theDest, theSource1, mRegisters[theSource2].get2sCompValue());
+	}
+
+	/**
+	 * LD: DR <- memory[PC + offset9], then sets CC.
+	 * @param theDest DR
+	 * @param theOffset the sign extended PCoffset9
+	 */
+	void load(int theDest, int theOffset) {
+		// set the value of Rdest to the data in memory location [mPC + offset]
+		int value = readWord((mPC.getUnsignedValue() + theOffset) & 0xFFFF);
+		mRegisters[theDest].set2sCompValue(value);
+		setConditionCode(value);
+	}
+
+	/**
+	 * ST: memory[PC + offset9] <- SR.
+	 * @param theSource SR
+	 * @param theOffset the sign extended PCoffset9
+	 * @return true if it stored to a device register, to stop the engine
+	 */
+	boolean store(int theSource, int theOffset) {
+		writeWord((mPC.getUnsignedValue() + theOffset) & 0xFFFF, mRegisters[theSource].getUnsignedValue());
+		return mRecheck;
+	}
+
+	/**
+	 * AND: DR <- SR1 & imm5, then sets CC.
+	 * @param theDest DR
+	 * @param theSource SR1
+	 * @param theImmediate the sign extended imm5
+	 */
+	void andImmediate(int theDest, int theSource, int theImmediate) {
+		int result = mRegisters[theSource].get2sCompValue() & theImmediate;
+		mRegisters[theDest].set2sCompValue(result);
+		setConditionCode(result);
+	}
+
+	/**
+	 * AND: DR <- SR1 & SR2, then sets CC.
+	 * @param theDest DR
+	 * @param theSource1 SR1
+	 * @param theSource2 SR2
+	 */
+	void andRegister(int theDest, int theSource1, int theSource2) {
+		andImmediate(theDest, theSource1, mRegisters[theSource2].get2sCompValue());
+	}
+
+	/**
+	 * NOT: DR <- ~SR, then sets CC.
+	 * @param theDest DR
+	 * @param theSource SR
+	 */
+	void not(int theDest, int theSource) {
+		int result = ~mRegisters[theSource].get2sCompValue();
+		mRegisters[theDest].set2sCompValue(result);
+		setConditionCode(result);
+	}
+
+	/**
+	 * JSR: R7 <- PC, PC <- PC + offset11.
+	 * @param theOffset the sign extended PCoffset11
+	 */
+	void jumpSubroutine(int theOffset) {
+		int pc = mPC.getUnsignedValue();
+		mRegisters[7].setUnsignedValue(pc);
+		mPC.setUnsignedValue((pc + theOffset) & 0xFFFF);
+	}
+
+	/**
+	 * JSRR: R7 <- PC, PC <- BaseR. BaseR is read first, so JSRR R7 works.
+	 * @param theBase BaseR
+	 */
+	void jumpSubroutineRegister(int theBase) {
+		int target = mRegisters[theBase].getUnsignedValue();
+		mRegisters[7].setUnsignedValue(mPC.getUnsignedValue());
+		mPC.setUnsignedValue(target);
+	}
+
+	/**
+	 * LDR: DR <- memory[BaseR + offset6], then sets CC.
+	 * @param theDest DR
+	 * @param theBase BaseR
+	 * @param theOffset the sign extended offset6
+	 */
+	void loadRegister(int theDest, int theBase, int theOffset) {
+		int value = readWord((mRegisters[theBase].getUnsignedValue() + theOffset) & 0xFFFF);
+		mRegisters[theDest].set2sCompValue(value);
+		setConditionCode(value);
+	}
+
+	/**
+	 * STR: memory[BaseR + offset6] <- SR.
+	 * @param theSource SR
+	 * @param theBase BaseR
+	 * @param theOffset the sign extended offset6
+	 * @return true if it stored to a device register, to stop the engine
+	 */
+	boolean storeRegister(int theSource, int theBase, int theOffset) {
+		writeWord((mRegisters[theBase].getUnsignedValue() + theOffset) & 0xFFFF,
+				mRegisters[theSource].getUnsignedValue());
+		return mRecheck;
+	}
+
+	/**
+	 * RTI: PC <- pop, PSR <- pop, then back to the user stack if the PSR
+	 * is for user mode. A privilege mode violation in user mode.
+	 * @return true, to stop the engine
+	 */
+	boolean returnFromInterrupt() {
+		if (!mSupervisor) {
+			throw new IllegalStateException("RTI in user mode at x"
+					+ Integer.toHexString((mPC.getUnsignedValue() - 1) & 0xFFFF));
+		}
+		int stack = mRegisters[6].getUnsignedValue();
+		mPC.setUnsignedValue(readWord(stack) & 0xFFFF);
+		int psr = readWord((stack + 1) & 0xFFFF);
+		mRegisters[6].setUnsignedValue((stack + 2) & 0xFFFF);
+		mCC.setBits(psr & 0x7, 3);
+		mPriority = (psr >>> 8) & 0x7;
+		if ((psr & 0x8000) != 0) {
+			mSupervisor = false;
+			swapStacks();
+		}
+		mRecheck = true;
+		return true;
+	}
+
+	/**
+	 * LDI: DR <- memory[memory[PC + offset9]], then sets CC.
+	 * @param theDest DR
+	 * @param theOffset the sign extended PCoffset9
+	 */
+	void loadIndirect(int theDest, int theOffset) {
+		int pointer = readWord((mPC.getUnsignedValue() + theOffset) & 0xFFFF) & 0xFFFF;
+		int value = readWord(pointer);
+		mRegisters[theDest].set2sCompValue(value);
+		setConditionCode(value);
+	}
+
+	/**
+	 * STI: memory[memory[PC + offset9]] <- SR.
+	 * @param theSource SR
+	 * @param theOffset the sign extended PCoffset9
+	 * @return true if it stored to a device register, to stop the engine
+	 */
+	boolean storeIndirect(int theSource, int theOffset) {
+		int pointer = readWord((mPC.getUnsignedValue() + theOffset) & 0xFFFF) & 0xFFFF;
+		writeWord(pointer, mRegisters[theSource].getUnsignedValue());
+		return mRecheck;
+	}
+
+	/**
+	 * JMP: PC <- BaseR.
+	 * @param theBase BaseR
+	 */
+	void jump(int theBase) {
+		mPC.setUnsignedValue(mRegisters[theBase].getUnsignedValue());
+	}
+
+	/**
+	 * LEA: DR <- PC + offset9.
+	 * @param theDest DR
+	 * @param theOffset the sign extended PCoffset9
+	 */
+	void loadEffectiveAddress(int theDest, int theOffset) {
+		mRegisters[theDest].setUnsignedValue((mPC.getUnsignedValue() + theOffset) & 0xFFFF);
+	}
+
+	/**
+	 * TRAP: carries out the service routine for theVector. A vector with no
+	 * service routine does nothing.
+	 * @param theVector trapvect8
+	 * @return true if this Trap is a HALT command or is waiting for input; false otherwise.
+	 */
+	boolean trap(int theVector) {
+		if (mTimed && theVector >= 0x20 && theVector <= 0x24) {
+			// the engine only adds up its count when it stops, so stop it once first
+			if (!mSynced) {
+				mSynced = true;
+				return rewind();
+			}
+			mSynced = false;
+		}
+		switch (theVector) {
+			case 0x20: { // GETC: R0 <- one character, not echoed
+				int character = readCharacter();
+				if (character == InputDevice.WOULD_BLOCK) {
+					return suspend();
+				}
+				mRegisters[0].setUnsignedValue(character);
+				return false;
+			}
+			case 0x21: // OUT: writes the low byte of R0
+				mOutput.write((char) mRegisters[0].signedField(8, 8));
+				return false;
+			case 0x22: // PUTS: writes one character per word from R0 up to a 0
+				for (int address = mRegisters[0].getUnsignedValue(); ; address = (address + 1) & 0xFFFF) {
+					int word = readWord(address) & 0xFFFF;
+					if (word == 0) {
+						break;
+					}
+					mOutput.write((char) (word & 0xFF));
+				}
+				return false;
+			case 0x23: { // IN: prompts, then reads and echoes one character into R0
+				if (!mWaiting) { // the prompt was shown before it suspended
+					for (int i = 0; i < IN_PROMPT.length(); i++) {
+						mOutput.write(IN_PROMPT.charAt(i));
+					}
+				}
+				int character = readCharacter();
+				if (character == InputDevice.WOULD_BLOCK) {
+					return suspend();
+				}
+				mRegisters[0].setUnsignedValue(character);
+				mOutput.write((char) character);
+				mOutput.write('\n');
+				return false;
+			}
+			case 0x24: // PUTSP: writes two characters per word, low byte first, up to a 0
+				for (int address = mRegisters[0].getUnsignedValue(); ; address = (address + 1) & 0xFFFF) {
+					int word = readWord(address) & 0xFFFF;
+					if (word == 0) {
+						break;
+					}
+					mOutput.write((char) (word & 0xFF));
+					if ((word >>> 8) != 0) {
+						mOutput.write((char) (word >>> 8));
+					}
+				}
+				return false;
+			case 0x25: // HALT: flushes the output and stops
+				mOutput.flush();
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Reads one character for GETC or IN.
+	 * @return the character, 0 to 65535, or WOULD_BLOCK if it has not arrived yet
+	 */
+	private int readCharacter() {
+		// anything written so far is shown before waiting for input
+		mOutput.flush();
+		int character = mInput.read();
+		if (character == InputDevice.WOULD_BLOCK) {
+			return character;
+		}
+		mWaiting = false;
+		if (character < 0) {
+			throw new IllegalStateException("No more input");
+		}
+		return character & 0xFFFF;
+	}
+
+	/**
+	 * Suspends the trap in the IR until its input arrives.
+	 * @return true, to stop the engine
+	 */
+	private boolean suspend() {
+		mWaiting = true;
+		return rewind();
+	}
+
+	/**
+	 * Stops the engine before the trap in the IR: the PC goes back to the
+	 * trap so that it runs again next time, and it is not counted.
+	 * @return true, to stop the engine
+	 */
+	private boolean rewind() {
+		mRewound = true;
+		mPC.setUnsignedValue((mPC.getUnsignedValue() - 1) & 0xFFFF);
+		// the engine counts the trap when it returns
+		mInstructions--;
+		return true;
+	}
+
+	/**
+	 * @return true if the instruction that just stopped the engine was a
+	 *         trap that went back to run again, so engines that count or
+	 *         record instructions leave it out this time
+	 */
+	boolean wasRewound() {
+		return mRewound;
+	}
+
+	/**
+	 * @return true if a store to a device register or an RTI wants the
+	 *         engine stopped; compiled blocks, which end at a store, look
+	 *         here instead of at a handler's result
+	 */
+	boolean needsRecheck() {
+		return mRecheck;
+	}
+
+	/**
+	 * @return the PSR: privilege mode, priority level and CC
+	 */
+	private int psr() {
+		return (mSupervisor ? 0 : 0x8000) | (mPriority << 8) | mCC.getUnsignedValue();
+	}
+
+	/**
+	 * Exchanges R6 with the saved stack pointer of the other mode.
+	 */
+	private void swapStacks() {
+		int stack = mRegisters[6].getUnsignedValue();
+		mRegisters[6].setUnsignedValue(mSavedStack);
+		mSavedStack = stack;
+	}
+
+	/**
+	 * Pushes a word onto the stack R6 points to.
+	 * @param theValue the word; only the low 16 bits are kept
+	 */
+	private void push(int theValue) {
+		int stack = (mRegisters[6].getUnsignedValue() - 1) & 0xFFFF;
+		mRegisters[6].setUnsignedValue(stack);
+		writeWord(stack, theValue);
+	}
+
+	/**
+	 * Takes an interrupt between two instructions: switches to the
+	 * supervisor stack if in user mode, pushes the PSR and then the PC,
+	 * and continues at the address in the interrupt vector table.
+	 * @param theVector the interrupt vector, x00 to xFF
+	 * @param thePriority the priority level of the interrupt
+	 */
+	private void interrupt(int theVector, int thePriority) {
+		int psr = psr();
+		if (!mSupervisor) {
+			mSupervisor = true;
+			swapStacks();
+		}
+		mPriority = thePriority;
+		mCC.setBits(0b000, 3);
+		push(psr);
+		push(mPC.getUnsignedValue());
+		mPC.setUnsignedValue(readWord(INTERRUPT_TABLE + theVector) & 0xFFFF);
+	}
+
+	/**
+	 * Called between engine runs, with the instruction count up to date:
+	 * handles the events that are due, schedules the timer and keyboard
+	 * from their registers, and takes the most urgent interrupt whose
+	 * priority is above the current one.
+	 */
+	private void serviceEvents() {
+		for (int source = mEvents.poll(mInstructions); source >= 0; source = mEvents.poll(mInstructions)) {
+			if (source == EventQueue.TIMER) {
+				mDevices.expireTimer();
+				int interval = mDevices.getTimerInterval();
+				if (interval > 0) {
+					mEvents.schedule(EventQueue.TIMER, mInstructions + interval);
+				}
+			}
+		}
+		if (mDevices.takeTimerChange()) {
+			int interval = mDevices.getTimerInterval();
+			if (interval > 0) {
+				mEvents.schedule(EventQueue.TIMER, mInstructions + interval);
+			} else {
+				mEvents.cancel(EventQueue.TIMER);
+			}
+		}
+		if (!mDevices.isKeyboardEnabled()) {
+			mEvents.cancel(EventQueue.KEYBOARD);
+		} else if (!mEvents.isScheduled(EventQueue.KEYBOARD)) {
+			// host threads type at any time, so look every so often rather than after every instruction
+			mEvents.schedule(EventQueue.KEYBOARD, mInstructions + KEYBOARD_POLL);
+		}
+
+		boolean timer = mDevices.isTimerRequest() && DeviceBus.TIMER_PRIORITY > mPriority;
+		boolean keyboard = mDevices.isKeyboardRequest() && DeviceBus.KEYBOARD_PRIORITY > mPriority;
+		if (!timer && !keyboard) {
+			return;
+		}
+		if (mWaiting || mSynced) {
+			// the trap before the PC has to run first; look again right after it
+			mEvents.schedule(EventQueue.CHECK, mInstructions + 1);
+		} else if (timer) {
+			mDevices.acknowledgeTimer();
+			interrupt(DeviceBus.TIMER_VECTOR, DeviceBus.TIMER_PRIORITY);
+		} else {
+			interrupt(DeviceBus.KEYBOARD_VECTOR, DeviceBus.KEYBOARD_PRIORITY);
+		}
+	}
+
+	/**
+	 * Runs theEngine until the instruction count reaches theEnd. Each run
+	 * of the engine has a budget that ends at the next event, so engines
+	 * never look for interrupts themselves; the events are serviced
+	 * between runs.
+	 * @param theEngine the engine to run the program with
+	 * @param theEnd the instruction count to stop at
+	 * @return true if it stopped at a HALT, to wait for input, or at a
+	 *         breakpoint or watchpoint
+	 */
+	private boolean advance(final ExecutionEngine theEngine, final long theEnd) {
+		// a store outside run() may have set it, and it must not hide a HALT
+		mRecheck = false;
+		ExecutionEngine engine = theEngine;
+		if (mDebugger != null) {
+			mDebugger.clearHit();
+			// the checked loop only runs while there is something to check
+			if (mDebugger.isArmed()) {
+				engine = mDebugger.getEngine();
+			}
+		}
+		do {
+			mRewound = false;
+			boolean stopped = engine.run(this, Math.min(theEnd, mEvents.next()) - mInstructions);
+			if (stopped && !mSynced && !mRecheck) {
+				return true;
+			}
+			// an I/O trap, a device store or an RTI stopped the engine to bring the count up to date
+			serviceEvents();
+			mRecheck = false;
+			if (mDebugger != null && mDebugger.getHit() != null) {
+				return true; // a watched store to a device register
+			}
+		} while (mInstructions < theEnd);
 		return false;
 	}
-	
+
 	/**
-	 * Private helper method to set the condition code from an integer.
+	 * Asks the input device to call back once the trap a run() returned
+	 * WAITING for can continue.
+	 * @param theWakeup what to run when input has arrived or ended
+	 */
+	void awaitInput(final Runnable theWakeup) {
+		mInput.awaitInput(theWakeup);
+	}
+
+	/**
+	 * Sets the condition code from an integer.
 	 * @param theCode a negative, zero, or positive integer which the condition code will be set by.
 	 */
-	private void setConditionCode(int theCode) {
+	void setConditionCode(int theCode) {
 		if (theCode == 0) {
-			mCC.setBits(new char[] {'0', '1', '0'});
+			mCC.setBits(0b010, 3);
 		} else if (theCode < 0) {
-			mCC.setBits(new char[] {'1', '0', '0'});
+			mCC.setBits(0b100, 3);
 		} else {
-			mCC.setBits(new char[] {'0', '0', '1'});
+			mCC.setBits(0b001, 3);
+		}
+	}
+
+	/**
+	 * @return the CC as nzp bits, 0 to 7
+	 */
+	int getConditionBits() {
+		return mCC.getUnsignedValue();
+	}
+
+	/**
+	 * @param theRegister the register number, 0 to 7
+	 * @return the 2s complement value of the register
+	 */
+	int readRegister(int theRegister) {
+		return mRegisters[theRegister].get2sCompValue();
+	}
+
+	/**
+	 * @param theRegister the register number, 0 to 7
+	 * @param theValue the value to store; only the low 16 bits are kept
+	 */
+	void writeRegister(int theRegister, int theValue) {
+		mRegisters[theRegister].setUnsignedValue(theValue & 0xFFFF);
+	}
+
+	/**
+	 * @return the address in the PC
+	 */
+	int getPCAddress() {
+		return mPC.getUnsignedValue();
+	}
+
+	/**
+	 * @param theAddress the address to continue executing from
+	 */
+	void setPCAddress(int theAddress) {
+		mPC.setUnsignedValue(theAddress & 0xFFFF);
+	}
+
+	/**
+	 * @param theWord the instruction word last executed, for engines that do not fetch
+	 */
+	void setIRWord(int theWord) {
+		mIR.setUnsignedValue(theWord & 0xFFFF);
+	}
+
+	/**
+	 * Reads a word of memory, or a device register from xFE00 to xFE0F.
+	 * @param theAddress the address to read
+	 * @return the 2s complement value of the word
+	 */
+	int readWord(int theAddress) {
+		if (DeviceBus.isMapped(theAddress)) {
+			return mDevices.read(theAddress);
 		}
+		return mMemory.read(theAddress);
 	}
 
 	/**
-	 * This method will execute all the instructions starting at address 0 
+	 * Reads a word as readWord() would, but without its side effects: a
+	 * device register is looked at, not read.
+	 * @param theAddress the address to read
+	 * @return the 2s complement value of the word
+	 */
+	int peekWord(int theAddress) {
+		if (DeviceBus.isMapped(theAddress)) {
+			return mDevices.peek(theAddress);
+		}
+		return mMemory.read(theAddress);
+	}
+
+	/**
+	 * Writes a word of memory. Every write to memory goes through here so
+	 * that any cached decoding or compiled block covering that address is
+	 * thrown away. Writes from xFE00 to xFE0F go to the device registers,
+	 * and the engine stops after the instruction so that the interrupts and
+	 * timer are looked at with the instruction count up to date.
+	 * @param theAddress the address to write
+	 * @param theValue the value to store; only the low 16 bits are kept
+	 */
+	void writeWord(int theAddress, int theValue) {
+		if (DeviceBus.isMapped(theAddress)) {
+			mDevices.write(theAddress, theValue);
+			mRecheck = true;
+			return;
+		}
+		mMemory.write(theAddress, theValue);
+		invalidate(theAddress);
+	}
+
+	/**
+	 * Forgets anything decoded or compiled from the word at theAddress.
+	 * @param theAddress the address that changed
+	 */
+	private void invalidate(int theAddress) {
+		mDecoded.invalidate(theAddress);
+		mFused.invalidate(theAddress);
+		if (mBlocks != null) {
+			mBlocks.invalidate(theAddress);
+		}
+	}
+
+	/**
+	 * @return the compiled blocks of this computer, created the first time
+	 *         the JIT engine runs it
+	 */
+	BlockCache getBlockCache() {
+		if (mBlocks == null) {
+			mBlocks = new BlockCache(mMemory);
+		}
+		return mBlocks;
+	}
+	
+	/**
+	 * This method will execute all the instructions starting at the PC
+	 * (address 0 unless the program was loaded elsewhere)
 	 * until a HALT instruction is encountered. 
 	 */
 	public void execute() {
-		BitString opCodeStr;
-		int opCode;
-		boolean halt = false;
-
-		while (!halt) {
-			// Fetch the next instruction
-			mIR = mMemory[mPC.getUnsignedValue()];
-			// increment the PC
-			mPC.addOne();
-
-			// Decode the instruction's first 4 bits 
-			// to figure out the opcode
-			opCodeStr = mIR.substring(0, 4);
-			opCode = opCodeStr.getUnsignedValue();
-
-			// What instruction is this?
-			if (opCode == 0) { // BR
-				executeBranch();
-			} else if (opCode == 1) {  // ADD    0001
-				executeAdd();
-			} else if (opCode == 2) {  // LD     0010
-				executeLoad();
-			} else if (opCode == 3) {  // ST     0011
-				executeStore();
-			} else if (opCode == 5) {  // AND    0101
-				executeAnd();
-			} else if (opCode == 9) {  // NOT    1001
-				executeNot();
-			} else if (opCode == 15) { // TRAP   1111
-				halt = executeTrap();
-			} else {
-				throw new UnsupportedOperationException("Illegal opCode: " + opCode);
+		execute(ExecutionEngine.DECODED);
+	}
+
+	/**
+	 * Executes instructions starting at the PC until a HALT instruction is
+	 * encountered, using the given engine to fetch and dispatch them. It
+	 * also returns at a Debugger breakpoint or watchpoint.
+	 * @param theEngine the engine to run the program with.
+	 */
+	public void execute(final ExecutionEngine theEngine) {
+		try {
+			// a non-blocking input device suspends the program, so wait here instead
+			while (advance(theEngine, Long.MAX_VALUE) && mWaiting) {
+				mOutput.flush();
+				CountDownLatch input = new CountDownLatch(1);
+				awaitInput(input::countDown);
+				try {
+					input.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted waiting for input", e);
+				}
+			}
+		} finally {
+			// HALT flushes; this covers a program that fails before it halts
+			mOutput.flush();
+		}
+	}
+
+	/**
+	 * Executes at most theMaxInstructions instructions starting at the PC,
+	 * stopping early at a HALT instruction.
+	 * @param theMaxInstructions the instruction budget.
+	 * @return why it stopped.
+	 */
+	public RunStatus run(final long theMaxInstructions) {
+		return run(ExecutionEngine.DECODED, theMaxInstructions);
+	}
+
+	/**
+	 * Executes at most theMaxInstructions instructions starting at the PC,
+	 * stopping early at a HALT instruction, using the given engine. A
+	 * program that used up its budget, is waiting for input or is at a
+	 * breakpoint or watchpoint continues where it stopped the next time
+	 * it is run. A fault is not thrown; it
+	 * is kept for getFault().
+	 * @param theEngine the engine to run the program with.
+	 * @param theMaxInstructions the instruction budget.
+	 * @return why it stopped.
+	 */
+	public RunStatus run(final ExecutionEngine theEngine, final long theMaxInstructions) {
+		if (theEngine == null || theMaxInstructions < 0) {
+			throw new IllegalArgumentException("Invalid engine or budget");
+		}
+		long end = mInstructions + Math.min(theMaxInstructions, Long.MAX_VALUE - mInstructions);
+		try {
+			if (!advance(theEngine, end)) {
+				return RunStatus.BUDGET_EXHAUSTED;
+			}
+			if (mWaiting) {
+				return RunStatus.WAITING;
 			}
+			return mDebugger != null && mDebugger.getHit() != null ? mDebugger.getHit() : RunStatus.HALTED;
+		} catch (RuntimeException e) {
+			mFault = e;
+			return RunStatus.FAULTED;
+		} finally {
+			mOutput.flush();
 		}
 	}
 
+	/**
+	 * @return the number of instructions this Computer has executed.
+	 */
+	public long getInstructionCount() {
+		return mInstructions;
+	}
+
+	/**
+	 * @return why the last run() that returned FAULTED faulted, or null.
+	 */
+	public RuntimeException getFault() {
+		return mFault;
+	}
+
+	/**
+	 * Adds to the instruction count; called by an engine when it stops.
+	 * @param theCount the number of instructions the engine executed
+	 */
+	void retire(long theCount) {
+		mInstructions += theCount;
+	}
+
+	/**
+	 * Fetches the instruction at the PC into the IR and increments the PC.
+	 * @return the instruction word, 0 to 65535
+	 */
+	int fetch() {
+		int word = mMemory.read(mPC.getUnsignedValue()) & 0xFFFF;
+		mIR.setUnsignedValue(word);
+		mPC.addOne();
+		return word;
+	}
+
+	/**
+	 * Fetches the instruction at the PC into the IR and increments the PC,
+	 * decoding it only the first time this address is reached.
+	 * @return the decoded instruction
+	 */
+	DecodedInstruction fetchDecoded() {
+		DecodedInstruction instruction = mDecoded.get(mPC.getUnsignedValue());
+		mIR.setUnsignedValue(instruction.getWord());
+		mPC.addOne();
+		return instruction;
+	}
+
+	/**
+	 * Like fetchDecoded(), but the instruction may be a superinstruction,
+	 * which executes the instruction after it as well.
+	 * @return the decoded instruction or superinstruction
+	 */
+	DecodedInstruction fetchFused() {
+		DecodedInstruction instruction = mFused.get(mPC.getUnsignedValue());
+		mIR.setUnsignedValue(instruction.getWord());
+		mPC.addOne();
+		return instruction;
+	}
+
 	/**
 	 * Displays the computer's state
 	 */
@@ -365,9 +1458,11 @@ public class Computer {
 			}
 		}
 		System.out.println();
-		for (int i = 0; i < MAX_MEMORY; i++) {
-			System.out.printf("%3d ", i);
-			mMemory[i].display(true);
+		BitString word = new BitString();
+		for (int i = 0; i < DISPLAY_MEMORY && mOrigin + i < MAX_MEMORY; i++) {
+			System.out.printf("%3d ", mOrigin + i);
+			word.set2sCompValue(mMemory.read(mOrigin + i));
+			word.display(true);
 			if (i % 3 == 2) {
 				System.out.println();
 			} else {
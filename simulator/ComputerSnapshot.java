@@ -0,0 +1,73 @@
+package simulator;
+
+/**
+ * A ComputerSnapshot is the frozen state of a Computer: registers, PC, IR,
+ * PSR, the other mode's stack pointer and memory. The device registers
+ * and the timer are not part of it. Any number of Computers can be forked from one snapshot
+ * with new Computer(ComputerSnapshot, OutputDevice). They share every
+ * memory page until they write to it.
+ *
+ * @version 1.1
+ */
+public final class ComputerSnapshot {
+
+	private final short[][] myPages;
+	private final int[] myRegisters;
+	private final int myPC;
+	private final int myIR;
+	private final int myPSR;
+	private final int mySavedStack;
+	private final int myOrigin;
+
+	/**
+	 * @param thePages the frozen memory pages
+	 * @param theRegisters the register values
+	 * @param thePC the PC
+	 * @param theIR the IR
+	 * @param thePSR the PSR: privilege mode, priority level and CC
+	 * @param theSavedStack the stack pointer of the mode not running
+	 * @param theOrigin the address the program was loaded at
+	 */
+	ComputerSnapshot(final short[][] thePages, final int[] theRegisters, final int thePC,
+			final int theIR, final int thePSR, final int theSavedStack, final int theOrigin) {
+		myPages = thePages;
+		myRegisters = theRegisters;
+		myPC = thePC;
+		myIR = theIR;
+		myPSR = thePSR;
+		mySavedStack = theSavedStack;
+		myOrigin = theOrigin;
+	}
+
+	short[][] getPages() {
+		return myPages;
+	}
+
+	int getRegister(final int theRegister) {
+		return myRegisters[theRegister];
+	}
+
+	int getPC() {
+		return myPC;
+	}
+
+	int getIR() {
+		return myIR;
+	}
+
+	int getCC() {
+		return myPSR & 0x7;
+	}
+
+	int getPSR() {
+		return myPSR;
+	}
+
+	int getSavedStack() {
+		return mySavedStack;
+	}
+
+	int getOrigin() {
+		return myOrigin;
+	}
+}
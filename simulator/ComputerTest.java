@@ -6,15 +6,39 @@ package simulator;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * @author Alan Fowler
- * @version 1.3
+ * @version 1.19
  */
 class ComputerTest {
 	
+	// Every engine must give the same results.
+	private final static ExecutionEngine[] ENGINES = {
+		ExecutionEngine.DECODED, ExecutionEngine.TABLE, ExecutionEngine.JIT
+	};
+
 	// An instance of the Computer class to use in the tests.
 	private Computer myComputer;
 
@@ -81,7 +105,52 @@ class ComputerTest {
 		myComputer.loadMachineCode(program);
 		myComputer.execute();
 
-		assertEquals(8, myComputer.getMemory()[4].get2sCompValue());
+		assertEquals(8, myComputer.getMemory().get(4).get2sCompValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#loadMachineCode(int, String...)}. <br>
+	 * Runs a program loaded at x3000 that stores past the end of the old 50 word memory.
+	 */
+	@Test
+	void testLoadMachineCodeAtOrigin() {
+		String[] program = {
+			"0001 001 001 1 00111", // ADD R1 + #7
+			"0011 001 000000010", // ST R1 to + #2
+			"0010 010 000000001", // LD R2 from + #1
+			"1111 0000 00100101", // HALT
+			"0000 0000 0000 0000" // data
+		};
+
+		myComputer.loadMachineCode(0x3000, program);
+		assertEquals(0x3000, myComputer.getPC().getUnsignedValue());
+		myComputer.execute();
+
+		assertEquals(8, myComputer.getMemory().get(0x3004).get2sCompValue());
+		assertEquals(8, myComputer.getRegisters()[2].get2sCompValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeStore()}. <br>
+	 * The store rewrites an instruction that has already run once, so the
+	 * second pass through the loop must see the new instruction.
+	 */
+	@Test
+	void testExecuteStoreSelfModifying() {
+		String[] program = {
+			"0001 000 000 1 00001", // ADD R0 + #1
+			"0010 001 000000100", // LD R1 from + #4
+			"0011 001 111111101", // ST R1 to - #3 (over the first ADD)
+			"0001 010 010 1 11111", // ADD R2 + #-1
+			"0000 001 111111011", // BRp - #5
+			"1111 0000 00100101", // HALT
+			"0001 000 000 1 01000" // ADD R0 + #8
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(9, myComputer.getRegisters()[0].get2sCompValue());
 	}
 
 	/**
@@ -152,7 +221,24 @@ class ComputerTest {
 		expectedCC.setBits("001".toCharArray());
 		assertEquals(expectedCC.get2sCompValue(), myComputer.getCC().get2sCompValue());
 	}
-	
+
+	/**
+	 * Test method for {@link simulator.Computer#executeAdd()}. <br>
+	 * Computes 2 + 5. R0 <- R2 + R5 (SR2 field has its top bit set)
+	 */
+	@Test
+	void testExecuteAddR2PlusR5() {
+
+		String[] program =
+			{"0001 000 010 0 00 101",  // R0 <- R2 + R5 (#7)
+		     "1111 0000 00100101"}; // HALT
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(7, myComputer.getRegisters()[0].get2sCompValue());
+	}
+
 	/**
 	 * Test method for {@link simulator.Computer#executeAdd()}. <br>
 	 * Computes 2 + 3. R0 <- R2 + #3
@@ -196,6 +282,198 @@ class ComputerTest {
 		assertEquals(expectedCC.get2sCompValue(), myComputer.getCC().get2sCompValue());
 	}
 
+	/**
+	 * Test method for {@link simulator.Computer#execute(ExecutionEngine)}. <br>
+	 * Runs the 1 + 2 + 3 + 4 + 5 loop on each engine.
+	 */
+	@Test
+	void testExecuteEngines() {
+		String[] program = {
+			"0101 000 000 1 00000", // clear R0 - R0 will be the SUM
+			"0101 001 001 1 00000", // clear R1 - R1 will be the loop counter
+			"0001 001 001 1 00101", // R1 <- R1 + 5
+			"0001 000 000 0 00 001", // R0 <- R0 + R1
+			"0001 001 001 1 11111", // decrement the counter
+			"0000 001 111111101", // BRp back to the add
+			"1111 0000 00100101" // HALT
+		};
+
+		for (ExecutionEngine engine : ENGINES) {
+			myComputer = new Computer();
+			myComputer.loadMachineCode(program);
+			myComputer.execute(engine);
+
+			assertEquals(15, myComputer.getRegisters()[0].get2sCompValue());
+			assertEquals(0, myComputer.getRegisters()[1].get2sCompValue());
+			assertEquals(7, myComputer.getPC().getUnsignedValue());
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#execute(ExecutionEngine)}. <br>
+	 * Sums 300 down to 1, long enough for the JIT to compile the loop.
+	 */
+	@Test
+	void testExecuteEnginesHotLoop() {
+		String[] program = {
+			"0010 001 000000100", // LD R1 <- 300
+			"0001 000 000 0 00 001", // R0 <- R0 + R1
+			"0001 001 001 1 11111", // decrement the counter
+			"0000 001 111111101", // BRp back to the add
+			"1111 0000 00100101", // HALT
+			"0000 0001 0010 1100" // #300
+		};
+
+		for (ExecutionEngine engine : ENGINES) {
+			myComputer = new Computer();
+			myComputer.loadMachineCode(program);
+			myComputer.execute(engine);
+
+			assertEquals((short) (300 * 301 / 2), myComputer.getRegisters()[0].get2sCompValue());
+			assertEquals(0, myComputer.getRegisters()[1].get2sCompValue());
+			assertEquals(0b010, myComputer.getCC().getUnsignedValue());
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#execute(ExecutionEngine)}. <br>
+	 * Runs a hot loop, then rewrites its first instruction and runs it again,
+	 * so a compiled loop has to be thrown away.
+	 */
+	@Test
+	void testExecuteEnginesSelfModifyingLoop() {
+		String[] program = {
+			"0010 010 000001010", // LD R2 <- COUNT
+			"0001 000 000 1 00001", // LOOP: ADD R0 + #1
+			"0001 010 010 1 11111", // ADD R2 + #-1
+			"0000 001 111111101", // BRp LOOP
+			"0001 001 001 1 11111", // ADD R1 + #-1 (0 the first time, -1 the second)
+			"0000 100 000000100", // BRn DONE
+			"0010 100 000000101", // LD R4 <- NEWINSTR
+			"0011 100 111111001", // ST R4 -> LOOP
+			"0010 010 000000010", // LD R2 <- COUNT
+			"0000 111 111110111", // BRnzp LOOP
+			"1111 0000 00100101", // DONE: HALT
+			"0000 0001 0010 1100", // COUNT: #300
+			"0001 000 000 1 00010" // NEWINSTR: ADD R0 + #2
+		};
+
+		for (ExecutionEngine engine : ENGINES) {
+			myComputer = new Computer();
+			myComputer.loadMachineCode(program);
+			myComputer.execute(engine);
+
+			assertEquals(900, myComputer.getRegisters()[0].get2sCompValue());
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#execute(ExecutionEngine)}. <br>
+	 * The CC is 000 until something sets it, so BRnzp is not taken, on
+	 * every engine and in a compiled block. Only BR controls the flow, so a
+	 * block cannot get hot before the CC is set, and it is compiled directly.
+	 */
+	@Test
+	void testExecuteEnginesBranchBeforeCC() {
+		for (ExecutionEngine engine : ENGINES) {
+			myComputer = new Computer();
+			myComputer.loadMachineCode(0x3000,
+				"0000 111 000000001", // BRnzp + #1, never taken
+				"1111 0000 00100101", // HALT
+				"0001 001 001 1 00001", // ADD R1 + #1
+				"1111 0000 00100101" // HALT
+			);
+			myComputer.execute(engine);
+
+			assertEquals(1, myComputer.getRegisters()[1].get2sCompValue());
+		}
+
+		Memory memory = new Memory();
+		memory.write(0x3000, 0x0E05); // BRnzp + #5
+		CompiledBlock block = BlockCompiler.compile(memory, 0x3000, BlockCompiler.measure(memory, 0x3000));
+		myComputer = new Computer();
+		assertEquals(0x3001, block.run(myComputer));
+		assertEquals(0, myComputer.getCC().getUnsignedValue());
+
+		memory.write(0x3000, 0x1020); // ADD R0 + #0, sets Z
+		memory.write(0x3001, 0x0E05); // BRnzp + #5
+		block = BlockCompiler.compile(memory, 0x3000, BlockCompiler.measure(memory, 0x3000));
+		assertEquals(0x3007, block.run(myComputer));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#execute(ExecutionEngine)}. <br>
+	 * A compiled block leaves its last instruction in the IR, as it was
+	 * executed, even though the block stored over it.
+	 */
+	@Test
+	void testExecuteEnginesIRAfterBlock() {
+		Memory memory = new Memory();
+		memory.write(0x3000, 0x1021); // ADD R0 + #1
+		memory.write(0x3001, 0x31FF); // ST R0 -> - #1, over itself
+		CompiledBlock block = BlockCompiler.compile(memory, 0x3000, BlockCompiler.measure(memory, 0x3000));
+
+		myComputer = new Computer();
+		assertEquals(0x3002, block.run(myComputer));
+		assertEquals(0x31FF, myComputer.getIR().getUnsignedValue());
+		assertEquals(1, myComputer.getMemory().get(0x3001).get2sCompValue());
+		assertEquals(1, myComputer.getRegisters()[0].get2sCompValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#run(ExecutionEngine, long)}. <br>
+	 * The CC is 000 until something sets it, so a hot BRnzp is not taken
+	 * and the loop never reaches the HALT.
+	 */
+	@Test
+	void testRunEnginesHotBranchBeforeCC() {
+		for (ExecutionEngine engine : ENGINES) {
+			myComputer = new Computer(new CaptureOutput());
+			myComputer.loadMachineCode(0x3000,
+				"0000 111 000000001", // BRnzp + #1, never taken
+				"0100 1 11111111110", // JSR - #2
+				"1111 0000 00100101" // HALT
+			);
+
+			assertEquals(RunStatus.BUDGET_EXHAUSTED, myComputer.run(engine, 1000));
+			assertEquals(0x3000, myComputer.getPC().getUnsignedValue());
+			assertEquals(0, myComputer.getCC().getUnsignedValue());
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#run(ExecutionEngine, long)}. <br>
+	 * Stopping right after a hot block leaves its last instruction in the
+	 * IR, as it was executed, even though the block stored over it.
+	 */
+	@Test
+	void testRunEnginesHotBlockIR() {
+		for (ExecutionEngine engine : ENGINES) {
+			myComputer = new Computer(new CaptureOutput());
+			myComputer.loadMachineCode(0x3000,
+				"0010 011 000001000", // LD R3 <- COUNT
+				"1110 001 000001001", // LEA R1 <- DATA
+				"0010 010 000000111", // LD R2 <- NEWINSTR
+				"0001 011 011 1 11111", // LOOP: ADD R3 + #-1
+				"0111 010 001 000000", // STR R2 -> R1 + #0
+				"0000 001 111111101", // BRp LOOP
+				"1110 001 111111101", // LEA R1 <- the STR
+				"0000 111 111111011", // BRnzp LOOP
+				"1111 0000 00100101", // HALT
+				"0000 0001 0010 1100", // COUNT: #300
+				"1111 0000 00100101", // NEWINSTR: HALT
+				"0000 0000 0000 0000" // DATA
+			);
+
+			// 3 to set up, 300 times round the loop, then back to it and through the ADD and STR
+			assertEquals(RunStatus.BUDGET_EXHAUSTED, myComputer.run(engine, 3 + 900 + 2 + 2));
+			assertEquals(0x7440, myComputer.getIR().getUnsignedValue());
+			assertEquals(0xF025, myComputer.getMemory().get(0x3004).getUnsignedValue());
+			assertEquals(0x3005, myComputer.getPC().getUnsignedValue());
+			assertEquals(RunStatus.HALTED, myComputer.run(engine, 10));
+		}
+	}
+
 	/**
 	 * This method tests Load as well as both the Trap vectors.
 	 * Should print the character 'A' to the output.
@@ -209,7 +487,1257 @@ class ComputerTest {
 			"0000 0000 0100 0001" // ASCII 'A'
 		};
 
+		CaptureOutput output = new CaptureOutput();
+		myComputer = new Computer(output);
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals("A", output.toString());
+	}
+
+	/**
+	 * Test method for {@link simulator.BufferedConsoleOutput}. <br>
+	 * Runs the countdown from Simulator with a buffer smaller than its output.
+	 */
+	@Test
+	void testBufferedConsoleOutput() {
+		String[] program = {
+			"0010000000001000",  // LD into R0 x39 which is ASCII 9
+			"0010001000001000",  // LD into R1 x-30
+			"0001010000000001",  // ADD R2 <- R0 + R1 ; #9 ; R2 is the counter
+			"0000010000000100",  // BR if zero skip down to code after the loop
+			"1111000000100001",  // TRAP - vector x21 - OUT R0
+			"0001000000111111",  // ADD - decrement R0 - the character
+			"0001010010111111",  // ADD - decrement R2 - the counter
+			"0000111111111011",  // BR - Loop back
+			"1111000000100101",  // TRAP - vector x25 - HALT
+			"0000000000111001",  // x39
+			"1111111111010000"}; // x-30
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		myComputer = new Computer(new BufferedConsoleOutput(new PrintStream(bytes), 4));
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals("987654321", bytes.toString());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#snapshot()}. <br>
+	 * Forks two Computers from a snapshot taken at the first HALT; running
+	 * one must not change the other or the original.
+	 */
+	@Test
+	void testSnapshotFork() {
+		String[] program = {
+			"0001 000 000 1 00001", // ADD R0 + #1
+			"0011 000 000000100", // ST R0 to + #4
+			"1111 0000 00100101", // HALT - the snapshot is taken here
+			"0001 000 000 1 00001", // ADD R0 + #1
+			"0011 000 000000001", // ST R0 to + #1
+			"1111 0000 00100101", // HALT
+			"0000 0000 0000 0000" // the stored value
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+		ComputerSnapshot snapshot = myComputer.snapshot();
+
+		Computer first = new Computer(snapshot, new CaptureOutput());
+		Computer second = new Computer(snapshot, new CaptureOutput());
+		first.execute();
+
+		assertEquals(2, first.getRegisters()[0].get2sCompValue());
+		assertEquals(2, first.getMemory().get(6).get2sCompValue());
+		assertEquals(1, second.getRegisters()[0].get2sCompValue());
+		assertEquals(1, second.getMemory().get(6).get2sCompValue());
+		assertEquals(3, second.getPC().getUnsignedValue());
+		assertEquals(1, myComputer.getMemory().get(6).get2sCompValue());
+
+		myComputer.execute();
+		second.execute();
+
+		assertEquals(2, myComputer.getMemory().get(6).get2sCompValue());
+		assertEquals(2, second.getMemory().get(6).get2sCompValue());
+		assertEquals(6, second.getPC().getUnsignedValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#loadObjectFile(Path)}. <br>
+	 * Loads a program at x3000 from an object file and runs it from there.
+	 */
+	@Test
+	void testLoadObjectFile(@TempDir Path theDirectory) throws IOException {
+		byte[] image = {
+			0x30, 0x00, // origin x3000
+			0x20, 0x02, // LD + #2
+			(byte) 0xF0, 0x21, // OUT 0x21
+			(byte) 0xF0, 0x25, // HALT
+			0x00, 0x41 // ASCII 'A'
+		};
+		Path file = theDirectory.resolve("printA.obj");
+		Files.write(file, image);
+
+		CaptureOutput output = new CaptureOutput();
+		myComputer = new Computer(output);
+		myComputer.loadObjectFile(file);
+
+		assertEquals(0x3000, myComputer.getPC().getUnsignedValue());
+		myComputer.execute();
+
+		assertEquals("A", output.toString());
+		assertEquals(0x3003, myComputer.getPC().getUnsignedValue());
+		assertEquals(0x41, myComputer.getMemory().get(0x3003).getUnsignedValue());
+
+		Files.write(file, new byte[] {(byte) 0xFF, (byte) 0xFF, 0x00, 0x00, 0x00, 0x00});
+		assertThrows(IllegalArgumentException.class, () -> myComputer.loadObjectFile(file));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#loadMachineCode(int, java.io.Reader)}. <br>
+	 * Loads a program with comments and blank lines from text, and rejects
+	 * a line that is not a 16 bit word with its line number.
+	 */
+	@Test
+	void testLoadMachineCodeReader() throws IOException {
+		String program = "// prints 'A'\n"
+				+ "\n"
+				+ "0010 000 000000010 // LD + #2\r\n"
+				+ "1111 0000 00100001\t// OUT 0x21\n"
+				+ "1111 0000 00100101 // HALT\n"
+				+ "0000 0000 0100 0001"; // ASCII 'A', with no newline
+
+		CaptureOutput output = new CaptureOutput();
+		myComputer = new Computer(output);
+		myComputer.loadMachineCode(0x3000, new StringReader(program));
+		myComputer.execute();
+
+		assertEquals("A", output.toString());
+		assertEquals(0x3003, myComputer.getPC().getUnsignedValue());
+
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> myComputer.loadMachineCode(0, new StringReader("0001 000 000 1 00001\n\n0001 000\n")));
+		assertEquals("Line 3: expected 16 bits but found 7", e.getMessage());
+	}
+
+	/**
+	 * Test method for {@link simulator.TraceRecorder}. <br>
+	 * Traces a loop into a ring smaller than the trace, on the heap and in
+	 * a mapped file, and decodes the last records.
+	 */
+	@Test
+	void testTraceRecorder(@TempDir Path theDirectory) throws IOException {
+		String[] program = {
+			"0001 000 000 1 00011", // ADD R0 + #3
+			"0001 000 000 1 11111", // ADD R0 - #1
+			"0000 001 111111110", // BRp - #2
+			"1111 0000 00100101" // HALT
+		};
+		String expected = "5: PC=x0001 IR=x103F R0=x0000 CC=010\n"
+				+ "6: PC=x0002 IR=x03FE - CC=010\n"
+				+ "7: PC=x0003 IR=xF025 - CC=010\n";
+
+		TraceRecorder recorder = new TraceRecorder(3);
+		myComputer.loadMachineCode(program);
+		myComputer.execute(ExecutionEngine.tracing(recorder));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		recorder.decode(new PrintStream(bytes));
+		assertEquals(8, recorder.getCount());
+		assertEquals(expected, bytes.toString().replace(System.lineSeparator(), "\n"));
+
+		Path file = theDirectory.resolve("trace.bin");
+		try (TraceRecorder mapped = TraceRecorder.create(file, 3)) {
+			myComputer = new Computer();
+			myComputer.loadMachineCode(program);
+			myComputer.execute(ExecutionEngine.tracing(mapped));
+		}
+		bytes.reset();
+		TraceRecorder.decode(file, new PrintStream(bytes));
+		assertEquals(expected, bytes.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	/**
+	 * Test method for {@link simulator.Profiler}. <br>
+	 * Profiles a countdown loop and checks the counters and the top hotspot.
+	 */
+	@Test
+	void testProfiler() {
+		String[] program = {
+			"0001 000 000 1 00011", // ADD R0 + #3
+			"0001 000 000 1 11111", // ADD R0 - #1
+			"0000 001 111111110", // BRp - #2
+			"1111 0000 00100101" // HALT
+		};
+
+		Profiler profiler = new Profiler();
+		myComputer.loadMachineCode(program);
+		myComputer.execute(ExecutionEngine.profiling(profiler));
+
+		assertEquals(8, profiler.getTotal());
+		assertEquals(4, profiler.getOpCodeCount(1));
+		assertEquals(3, profiler.getOpCodeCount(0));
+		assertEquals(1, profiler.getOpCodeCount(15));
+		assertEquals(3, profiler.getAddressCount(1));
+		assertEquals(2, profiler.getTakenCount(2));
+		assertEquals(1, profiler.getNotTakenCount(2));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		profiler.report(new PrintStream(bytes), 1);
+		String report = bytes.toString();
+		assertTrue(report.startsWith("8 instructions retired"));
+		assertTrue(report.contains("x0001"));
+		assertFalse(report.contains("x0002"));
+
+		// given a stream, the engine prints the report itself, once, at the HALT
+		bytes.reset();
+		myComputer = new Computer(new CaptureOutput());
+		myComputer.loadMachineCode(program);
+		ExecutionEngine engine = ExecutionEngine.profiling(new Profiler(), new PrintStream(bytes));
+		assertEquals(RunStatus.BUDGET_EXHAUSTED, myComputer.run(engine, 7));
+		assertEquals(0, bytes.size());
+		assertEquals(RunStatus.HALTED, myComputer.run(engine, 10));
+		report = bytes.toString();
+		assertTrue(report.startsWith("8 instructions retired"));
+		assertEquals(report.indexOf("instructions retired"), report.lastIndexOf("instructions retired"));
+		assertThrows(IllegalArgumentException.class, () -> ExecutionEngine.profiling(new Profiler(), null));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#register(int)},
+	 * {@link simulator.Computer#memory(int)},
+	 * {@link simulator.Computer#memory(int, int)} and
+	 * {@link simulator.Computer#getMemory()}. <br>
+	 * The views read the live state, including a view taken before the run.
+	 */
+	@Test
+	void testReadOnlyViews() {
+		String[] program = {
+			"0001 001 001 1 00111", // ADD R1 <- R1 + #7
+			"0011 001 000000010",   // ST R1 + #2
+			"1111 0000 00100101",   // HALT
+			"0000 0000 0000 0000",
+			"0000 0000 0000 0000"
+		};
+		myComputer.loadMachineCode(program);
+		MemoryView view = myComputer.memory(3, 2);
+		assertArrayEquals(new int[] {0, 0}, view.toArray());
+		List<BitString> words = myComputer.getMemory();
+		assertEquals(Memory.SIZE, words.size());
+
+		myComputer.execute();
+
+		assertEquals(8, myComputer.register(1));
+		assertEquals(8, myComputer.memory(4));
+		assertEquals(3, view.getStart());
+		assertEquals(2, view.getLength());
+		assertEquals(8, view.get(1));
+		assertArrayEquals(new int[] {0, 8}, view.toArray());
+		assertEquals(8, words.get(4).get2sCompValue());
+		words.get(4).set2sCompValue(9);
+		assertEquals(8, myComputer.memory(4));
+
+		assertThrows(IllegalArgumentException.class, () -> myComputer.register(8));
+		assertThrows(IllegalArgumentException.class, () -> myComputer.memory(-1));
+		assertThrows(IllegalArgumentException.class, () -> myComputer.memory(0xFFFF, 2));
+		assertThrows(IllegalArgumentException.class, () -> view.get(2));
+		assertThrows(IndexOutOfBoundsException.class, () -> words.get(Memory.SIZE));
+		assertThrows(UnsupportedOperationException.class, () -> words.set(0, new BitString()));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#run(long)} with a
+	 * {@link simulator.ChannelConsole}. <br>
+	 * IN waits for input without counting the trap or repeating its prompt,
+	 * then continues once the input has arrived.
+	 */
+	@Test
+	void testRunWaitingForInput() throws IOException, InterruptedException {
+		Pipe input = Pipe.open();
+		Pipe output = Pipe.open();
+		try (ConsoleHub hub = new ConsoleHub()) {
+			ChannelConsole console = hub.open(input.source(), output.sink());
+			myComputer = new Computer(console, console);
+			myComputer.loadMachineCode(
+				"1111 0000 00100011", // IN
+				"1111 0000 00100101" // HALT
+			);
+
+			assertEquals(RunStatus.WAITING, myComputer.run(100));
+			assertEquals(RunStatus.WAITING, myComputer.run(100));
+			assertEquals(0, myComputer.getInstructionCount());
+			assertEquals(0, myComputer.getPC().getUnsignedValue());
+
+			CountDownLatch arrived = new CountDownLatch(1);
+			myComputer.awaitInput(arrived::countDown);
+			input.sink().write(StandardCharsets.US_ASCII.encode("A"));
+			assertTrue(arrived.await(10, TimeUnit.SECONDS));
+
+			assertEquals(RunStatus.HALTED, myComputer.run(100));
+			assertEquals(2, myComputer.getInstructionCount());
+			assertEquals('A', myComputer.register(0));
+			String expected = "Input a character> A\n";
+			ByteBuffer echo = ByteBuffer.allocate(expected.length());
+			while (echo.hasRemaining()) {
+				output.source().read(echo);
+			}
+			echo.flip();
+			assertEquals(expected, StandardCharsets.US_ASCII.decode(echo).toString());
+		} finally {
+			input.sink().close();
+			input.source().close();
+			output.sink().close();
+			output.source().close();
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.ConsoleHub#close()}. <br>
+	 * A writer whose peer never reads parks rather than spinning, and
+	 * closing the hub lets it go and wakes a program waiting for input.
+	 */
+	@Test
+	void testConsoleHubClose() throws IOException, InterruptedException {
+		Pipe input = Pipe.open();
+		Pipe output = Pipe.open();
+		try {
+			ConsoleHub hub = new ConsoleHub(16);
+			ChannelConsole console = hub.open(input.source(), output.sink());
+			myComputer = new Computer(console, new CaptureOutput());
+			myComputer.loadMachineCode(
+				"1111 0000 00100000", // GETC
+				"1111 0000 00100101" // HALT
+			);
+			assertEquals(RunStatus.WAITING, myComputer.run(100));
+			CountDownLatch woken = new CountDownLatch(1);
+			myComputer.awaitInput(woken::countDown);
+
+			// far more than the pipe holds, and nothing reads it
+			Thread writer = new Thread(() -> {
+				for (int i = 0; i < 1 << 20; i++) {
+					console.write('x');
+				}
+			});
+			writer.start();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (writer.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(Thread.State.WAITING, writer.getState());
+
+			hub.close();
+			writer.join(10_000);
+			assertFalse(writer.isAlive());
+			assertTrue(woken.await(10, TimeUnit.SECONDS));
+			assertEquals(RunStatus.FAULTED, myComputer.run(100));
+		} finally {
+			input.sink().close();
+			input.source().close();
+			output.sink().close();
+			output.source().close();
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.ConsoleHub}. <br>
+	 * A wakeup that throws, as a shut down pool's does, ends only its own
+	 * console, and another console on the hub keeps working.
+	 */
+	@Test
+	void testConsoleHubFailedWakeup() throws IOException, InterruptedException {
+		Pipe[] pipes = {Pipe.open(), Pipe.open(), Pipe.open(), Pipe.open()};
+		try (ConsoleHub hub = new ConsoleHub()) {
+			ChannelConsole failing = hub.open(pipes[0].source(), pipes[1].sink());
+			ChannelConsole working = hub.open(pipes[2].source(), pipes[3].sink());
+			String[] program = {
+				"1111 0000 00100011", // IN
+				"1111 0000 00100101" // HALT
+			};
+			Computer failed = new Computer(failing, new CaptureOutput());
+			failed.loadMachineCode(
+				"1111 0000 00100000", // GETC
+				"1111 0000 00100000", // GETC
+				"1111 0000 00100101" // HALT
+			);
+			myComputer = new Computer(working, working);
+			myComputer.loadMachineCode(program);
+			assertEquals(RunStatus.WAITING, failed.run(100));
+			assertEquals(RunStatus.WAITING, myComputer.run(100));
+
+			CountDownLatch thrown = new CountDownLatch(1);
+			failed.awaitInput(() -> {
+				thrown.countDown();
+				throw new RejectedExecutionException();
+			});
+			pipes[0].sink().write(StandardCharsets.US_ASCII.encode("A"));
+			assertTrue(thrown.await(10, TimeUnit.SECONDS));
+
+			CountDownLatch arrived = new CountDownLatch(1);
+			myComputer.awaitInput(arrived::countDown);
+			pipes[2].sink().write(StandardCharsets.US_ASCII.encode("B"));
+			assertTrue(arrived.await(10, TimeUnit.SECONDS));
+			assertEquals(RunStatus.HALTED, myComputer.run(100));
+			String expected = "Input a character> B\n";
+			ByteBuffer echo = ByteBuffer.allocate(expected.length());
+			while (echo.hasRemaining()) {
+				pipes[3].source().read(echo);
+			}
+			echo.flip();
+			assertEquals(expected, StandardCharsets.US_ASCII.decode(echo).toString());
+
+			// the failed console was ended, so the A is its last input
+			assertEquals(RunStatus.FAULTED, failed.run(100));
+			assertEquals('A', failed.register(0));
+		} finally {
+			for (Pipe pipe : pipes) {
+				pipe.sink().close();
+				pipe.source().close();
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.DeviceBus}. <br>
+	 * A program that polls the keyboard and display registers echoes what
+	 * a host thread types, on every engine, while another thread drains it.
+	 */
+	@Test
+	void testMemoryMappedDevices() throws InterruptedException {
+		AssembledProgram program = Assembler.assemble(String.join("\n",
+			"        .ORIG x3000",
+			"POLL    LDI R0, KBSR",
+			"        BRzp POLL",
+			"        LDI R0, KBDR",
+			"        ADD R1, R0, #-10  ; stop at a newline",
+			"        BRz DONE",
+			"WAIT    LDI R2, DSR",
+			"        BRzp WAIT",
+			"        STI R0, DDR",
+			"        BRnzp POLL",
+			"DONE    HALT",
+			"KBSR    .FILL xFE00",
+			"KBDR    .FILL xFE02",
+			"DSR     .FILL xFE04",
+			"DDR     .FILL xFE06",
+			"        .END"));
+		for (ExecutionEngine engine : ENGINES) {
+			Computer computer = new Computer(new CaptureOutput());
+			computer.loadProgram(program);
+			DeviceBus devices = computer.getDevices();
+			Thread typist = new Thread(() -> {
+				for (char character : "echo\n".toCharArray()) {
+					while (!devices.offerInput(character)) {
+						Thread.onSpinWait();
+					}
+				}
+			});
+			StringBuilder echoed = new StringBuilder();
+			Thread reader = new Thread(() -> {
+				while (echoed.length() < 4) {
+					int character = devices.pollOutput();
+					if (character >= 0) {
+						echoed.append((char) character);
+					}
+				}
+			});
+			reader.setDaemon(true);
+			typist.start();
+			reader.start();
+			assertEquals(RunStatus.HALTED, computer.run(engine, Long.MAX_VALUE));
+			typist.join();
+			reader.join(10000);
+			assertEquals("echo", echoed.toString());
+		}
+
+		myComputer.loadMachineCode(
+			"1011 000 000000001",  // STI R0 -> xFE06
+			"1010 001 000000001",  // LDI R1 <- xFE04
+			"1111 1110 0000 0110", // xFE06
+			"1111 1110 0000 0100"  // xFE04
+		);
+		myComputer.writeRegister(0, 'x');
+		myComputer.writeWord(DeviceBus.DSR, 0xFFFF);
+		assertEquals(RunStatus.BUDGET_EXHAUSTED, myComputer.run(2));
+		assertEquals(0xC000, myComputer.register(1) & 0xFFFF);
+		assertEquals('x', myComputer.getDevices().pollOutput());
+		assertEquals(-1, myComputer.getDevices().pollOutput());
+		assertEquals(0, myComputer.memory(DeviceBus.DSR));
+		assertEquals(0, myComputer.memory(DeviceBus.DDR));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#loadMachineCode(int, String...)},
+	 * {@link simulator.Computer#loadMachineCode(int, java.io.Reader)} and
+	 * {@link simulator.Computer#loadProgram(AssembledProgram)}. <br>
+	 * An image that covers the device registers fills memory under them, as
+	 * every loader does, and neither prints to DDR nor starts the timer.
+	 */
+	@Test
+	void testLoadUnderDevices() throws IOException {
+		String[] image = new String[16];
+		Arrays.fill(image, "0000 0000 0000 0101");
+		image[DeviceBus.DDR - DeviceBus.KBSR] = "0000 0000 0100 0001"; // 'A'
+		short[] words = new short[16];
+		Arrays.fill(words, (short) 5);
+		words[DeviceBus.DDR - DeviceBus.KBSR] = 'A';
+
+		for (int loader = 0; loader < 3; loader++) {
+			myComputer = new Computer(new CaptureOutput());
+			if (loader == 0) {
+				myComputer.loadMachineCode(DeviceBus.KBSR, image);
+			} else if (loader == 1) {
+				myComputer.loadMachineCode(DeviceBus.KBSR, new StringReader(String.join("\n", image)));
+			} else {
+				myComputer.loadProgram(new AssembledProgram(DeviceBus.KBSR, words, Collections.emptyMap()));
+			}
+
+			assertEquals('A', myComputer.memory(DeviceBus.DDR));
+			assertEquals(5, myComputer.memory(DeviceBus.TMI));
+			assertEquals(-1, myComputer.getDevices().pollOutput());
+			assertEquals(0, myComputer.getDevices().getTimerInterval());
+			assertFalse(myComputer.getDevices().takeTimerChange());
+			assertEquals(DeviceBus.KBSR, myComputer.getPC().getUnsignedValue());
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#run(ExecutionEngine, long)}. <br>
+	 * The timer and keyboard interrupt a user program on every engine at
+	 * the same instruction, on the supervisor stack, and RTI returns to it.
+	 */
+	@Test
+	void testInterrupts() {
+		AssembledProgram program = Assembler.assemble(String.join("\n",
+			"        .ORIG x3000",
+			"        LD R0, INTERVAL",
+			"        STI R0, TMIADDR",
+			"        LD R0, ENABLE",
+			"        STI R0, TMRADDR",
+			"        STI R0, KBSRADDR",
+			"LOOP    ADD R1, R1, #1",
+			"        LD R2, TICKS",
+			"        ADD R2, R2, #-5",
+			"        BRn LOOP",
+			"        LD R2, KEYS",
+			"        ADD R2, R2, #-3",
+			"        BRn LOOP",
+			"        HALT",
+			"TIMER   ST R4, SAVE        ; counts ticks",
+			"        LD R4, TICKS",
+			"        ADD R4, R4, #1",
+			"        ST R4, TICKS",
+			"        LD R4, SAVE",
+			"        RTI",
+			"KEY     ST R4, SAVE        ; echoes a key",
+			"        LDI R4, KBDRADDR",
+			"        STI R4, DDRADDR",
+			"        LD R4, KEYS",
+			"        ADD R4, R4, #1",
+			"        ST R4, KEYS",
+			"        LD R4, SAVE",
+			"        RTI",
+			"INTERVAL .FILL #100",
+			"ENABLE  .FILL x4000",
+			"TMIADDR .FILL xFE0A",
+			"TMRADDR .FILL xFE08",
+			"KBSRADDR .FILL xFE00",
+			"KBDRADDR .FILL xFE02",
+			"DDRADDR .FILL xFE06",
+			"TICKS   .FILL #0",
+			"KEYS    .FILL #0",
+			"SAVE    .FILL #0",
+			"        .END"));
+		long count = -1;
+		for (ExecutionEngine engine : ENGINES) {
+			Computer computer = new Computer(new CaptureOutput());
+			computer.loadProgram(program);
+			computer.writeWord(0x0100 + DeviceBus.TIMER_VECTOR, program.getAddress("TIMER"));
+			computer.writeWord(0x0100 + DeviceBus.KEYBOARD_VECTOR, program.getAddress("KEY"));
+			for (char character : "abc".toCharArray()) {
+				assertTrue(computer.getDevices().offerInput(character));
+			}
+			assertEquals(RunStatus.HALTED, computer.run(engine, 100000));
+
+			// the keys come in as soon as KBSR enables them, the ticks every 100 instructions
+			assertEquals('a', computer.getDevices().pollOutput());
+			assertEquals('b', computer.getDevices().pollOutput());
+			assertEquals('c', computer.getDevices().pollOutput());
+			assertTrue(computer.getInstructionCount() > 2 + 500 && computer.getInstructionCount() < 2 + 500 + 30);
+			if (count >= 0) {
+				assertEquals(count, computer.getInstructionCount());
+			}
+			count = computer.getInstructionCount();
+			assertEquals(6, computer.register(6));
+			assertEquals(0x8000, computer.getPSR().getUnsignedValue() & 0xFF00);
+			// the last tick pushed its PSR and PC just below the supervisor stack's start
+			assertEquals(0x8000, computer.memory(0x2FFF) & 0x8000);
+		}
+
+		// how the caller slices the budget makes no difference
+		myComputer.loadProgram(program);
+		myComputer.writeWord(0x0100 + DeviceBus.TIMER_VECTOR, program.getAddress("TIMER"));
+		myComputer.writeWord(0x0100 + DeviceBus.KEYBOARD_VECTOR, program.getAddress("KEY"));
+		for (char character : "abc".toCharArray()) {
+			assertTrue(myComputer.getDevices().offerInput(character));
+		}
+		RunStatus status;
+		do {
+			status = myComputer.run(ExecutionEngine.DECODED, 7);
+		} while (status == RunStatus.BUDGET_EXHAUSTED);
+		assertEquals(RunStatus.HALTED, status);
+		assertEquals(count, myComputer.getInstructionCount());
+	}
+
+	/**
+	 * Test method for {@link simulator.Debugger}. <br>
+	 * Breakpoints stop before their instruction and let it run when the
+	 * program carries on, watchpoints stop after a load or store, and the
+	 * program ends as it would have without them.
+	 */
+	@Test
+	void testDebugger() {
+		AssembledProgram program = Assembler.assemble(String.join("\n",
+			"        .ORIG x3000",
+			"        LD R1, COUNT",
+			"LOOP    ADD R2, R2, #1",
+			"        ST R2, RESULT",
+			"        ADD R1, R1, #-1",
+			"        BRp LOOP",
+			"        LD R3, RESULT",
+			"        HALT",
+			"COUNT   .FILL #3",
+			"RESULT  .FILL #0",
+			"        .END"));
+		int loop = program.getAddress("LOOP");
+		int result = program.getAddress("RESULT");
+		myComputer.loadProgram(program);
+		Debugger debugger = myComputer.getDebugger();
+
+		debugger.setBreakpoint(loop);
+		assertTrue(debugger.isBreakpoint(loop));
+		assertEquals(RunStatus.BREAKPOINT, debugger.runToBreakpoint(1000));
+		assertEquals(loop, debugger.getHitAddress());
+		assertEquals(loop, myComputer.getPC().getUnsignedValue());
+		assertEquals(1, myComputer.getInstructionCount());
+		assertEquals(RunStatus.BREAKPOINT, myComputer.run(ExecutionEngine.JIT, 1000));
+		assertEquals(5, myComputer.getInstructionCount());
+		assertEquals(3, myComputer.register(2));
+		assertEquals(RunStatus.BUDGET_EXHAUSTED, debugger.step());
+		assertEquals(loop + 1, myComputer.getPC().getUnsignedValue());
+		assertEquals(-1, debugger.getHitAddress());
+
+		debugger.clearBreakpoint(loop);
+		debugger.watchWrites(result);
+		assertEquals(RunStatus.WATCHPOINT, debugger.runToBreakpoint(1000));
+		assertEquals(result, debugger.getHitAddress());
+		assertEquals(loop + 2, myComputer.getPC().getUnsignedValue());
+		assertEquals(4, myComputer.memory(result));
+
+		debugger.unwatch(result);
+		debugger.watchReads(result);
+		assertEquals(RunStatus.WATCHPOINT, debugger.runToBreakpoint(1000));
+		assertEquals(program.getAddress("LOOP") + 5, myComputer.getPC().getUnsignedValue());
+		assertEquals(5, myComputer.register(3));
+
+		debugger.clearAll();
+		assertFalse(debugger.isBreakpoint(loop));
+		assertEquals(RunStatus.HALTED, myComputer.run(1000));
+		Computer plain = new Computer(new CaptureOutput());
+		plain.loadProgram(program);
+		assertEquals(RunStatus.HALTED, plain.run(1000));
+		assertEquals(plain.getInstructionCount(), myComputer.getInstructionCount());
+		assertThrows(IllegalArgumentException.class, () -> debugger.setBreakpoint(Memory.SIZE));
+	}
+
+	/**
+	 * Test method for {@link simulator.Debugger#watchReads(int)}. <br>
+	 * An LDI whose pointer is KBDR is watched at the address of the key
+	 * waiting there, and looking at the pointer does not take the key.
+	 */
+	@Test
+	void testDebuggerPointerInDevices() {
+		myComputer = new Computer(new CaptureOutput());
+		myComputer.loadMachineCode(0x0041, "0000 0000 0000 0111"); // #7 at the address 'A'
+		myComputer.loadMachineCode(0xFDF0,
+			"1010 000 000010001", // LDI R0 <- [KBDR]
+			"1111 0000 00100101" // HALT
+		);
+		DeviceBus devices = myComputer.getDevices();
+		assertTrue(devices.offerInput('A'));
+		assertTrue(devices.offerInput('B'));
+		Debugger debugger = myComputer.getDebugger();
+		debugger.watchReads('A');
+
+		assertEquals(RunStatus.WATCHPOINT, debugger.runToBreakpoint(10));
+		assertEquals('A', debugger.getHitAddress());
+		assertEquals(7, myComputer.register(0));
+		assertEquals('B', devices.read(DeviceBus.KBDR));
+	}
+
+	/**
+	 * Test method for {@link simulator.IoRecorder} and {@link simulator.IoReplay}. <br>
+	 * A recorded run replays on another engine with no input device, and a
+	 * changed program is caught where its output first differs.
+	 */
+	@Test
+	void testRecordReplay() throws IOException {
+		String[] program = {
+			"1111 0000 00100011", // IN
+			"0001 000 000 1 00001", // ADD R0 + #1
+			"1111 0000 00100001", // OUT
+			"1111 0000 00100000", // GETC
+			"1110 000 000000010", // LEA R0 + #2
+			"1111 0000 00100010", // PUTS
+			"1111 0000 00100101", // HALT
+			"0000 0000 0100 0001", // ASCII 'A'
+			"0000 0000 0000 0000"
+		};
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		CaptureOutput output = new CaptureOutput();
+		try (IoRecorder recorder = new IoRecorder(log, new StringInput("xy"), output)) {
+			myComputer = new Computer(recorder, recorder);
+			myComputer.loadMachineCode(program);
+			assertEquals(RunStatus.HALTED, myComputer.run(ExecutionEngine.JIT, 100));
+		}
+		assertEquals("Input a character> x\nyA", output.toString());
+		assertEquals(7, myComputer.getInstructionCount());
+
+		IoReplay replay = new IoReplay(new ByteArrayInputStream(log.toByteArray()));
+		assertEquals(25, replay.getEventCount());
+		Computer computer = new Computer(replay, replay);
+		computer.loadMachineCode(program);
+		assertEquals(RunStatus.HALTED, computer.run(ExecutionEngine.TABLE, 100));
+		assertEquals(7, computer.getInstructionCount());
+		assertTrue(replay.isComplete());
+		replay.finish();
+
+		program[7] = "0000 0000 0100 0010"; // ASCII 'B'
+		replay = new IoReplay(new ByteArrayInputStream(log.toByteArray()));
+		computer = new Computer(replay, replay);
+		computer.loadMachineCode(program);
+		assertEquals(RunStatus.FAULTED, computer.run(100));
+		assertEquals("Replay diverged at instruction 5: expected output 'A' but the program wrote 'B'",
+				computer.getFault().getMessage());
+	}
+
+	/**
+	 * Test method for {@link simulator.Profiler} and
+	 * {@link simulator.TraceRecorder} with an {@link simulator.IoRecorder}. <br>
+	 * An I/O trap stops the engine once before it runs, to bring the count
+	 * up to date for the log, but is profiled and traced only once.
+	 */
+	@Test
+	void testProfileAndTraceRecordedSession() throws IOException {
+		String[] program = {
+			"1111 0000 00100000", // GETC
+			"1111 0000 00100001", // OUT
+			"1111 0000 00100101" // HALT
+		};
+		Profiler profiler = new Profiler();
+		TraceRecorder trace = new TraceRecorder(8);
+		for (ExecutionEngine engine : new ExecutionEngine[] {
+				ExecutionEngine.profiling(profiler), ExecutionEngine.tracing(trace)}) {
+			CaptureOutput output = new CaptureOutput();
+			try (IoRecorder recorder = new IoRecorder(new ByteArrayOutputStream(), new StringInput("x"), output)) {
+				myComputer = new Computer(recorder, recorder);
+				myComputer.loadMachineCode(program);
+				assertEquals(RunStatus.HALTED, myComputer.run(engine, 100));
+			}
+			assertEquals("x", output.toString());
+			assertEquals(3, myComputer.getInstructionCount());
+		}
+
+		assertEquals(3, profiler.getTotal());
+		assertEquals(3, profiler.getOpCodeCount(15));
+		for (int address = 0; address < program.length; address++) {
+			assertEquals(1, profiler.getAddressCount(address));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		profiler.report(new PrintStream(bytes));
+		assertTrue(bytes.toString().startsWith("3 instructions retired"));
+
+		bytes.reset();
+		trace.decode(new PrintStream(bytes));
+		assertEquals(3, trace.getCount());
+		assertEquals("0: PC=x0000 IR=xF020 R0=x0078 CC=000\n"
+				+ "1: PC=x0001 IR=xF021 - CC=000\n"
+				+ "2: PC=x0002 IR=xF025 - CC=000\n",
+				bytes.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#run(ExecutionEngine, long)}. <br>
+	 * Superinstructions in DECODED leave the same state as TABLE after every
+	 * slice of the budget, including a branch into the middle of a pair and
+	 * a write to the second word of a pair.
+	 */
+	@Test
+	void testSuperinstructions() {
+		String[] program = {
+			"0101 001 001 1 00000", // AND R1 & #0
+			"0001 001 001 1 00011", // ADD R1 + #3
+			"0001 001 001 1 11111", // ADD R1 - #1
+			"0000 001 111111110",   // BRp - #2
+			"0101 010 010 1 00000", // AND R2 & #0
+			"0001 010 010 1 00101", // ADD R2 + #5
+			"0001 011 011 1 11111", // ADD R3 - #1
+			"0000 001 111111101",   // BRp - #3, into the middle of the pair above
+			"1111 0000 00100101"    // HALT
+		};
+		for (int slice = 1; slice <= 4; slice++) {
+			Computer fused = new Computer(new CaptureOutput());
+			Computer plain = new Computer(new CaptureOutput());
+			fused.loadMachineCode(program);
+			plain.loadMachineCode(program);
+			RunStatus status;
+			do {
+				status = fused.run(ExecutionEngine.DECODED, slice);
+				assertEquals(plain.run(ExecutionEngine.TABLE, slice), status);
+				assertEquals(plain.getInstructionCount(), fused.getInstructionCount());
+				assertEquals(plain.getPC().getUnsignedValue(), fused.getPC().getUnsignedValue());
+				assertEquals(plain.getIR().getUnsignedValue(), fused.getIR().getUnsignedValue());
+				assertEquals(plain.getCC().getUnsignedValue(), fused.getCC().getUnsignedValue());
+				for (int i = 0; i < 8; i++) {
+					assertEquals(plain.register(i), fused.register(i));
+				}
+			} while (status == RunStatus.BUDGET_EXHAUSTED);
+			assertEquals(RunStatus.HALTED, status);
+			assertEquals(19, fused.getInstructionCount());
+			assertEquals(15, fused.register(2));
+		}
+
+		myComputer.loadMachineCode(program);
+		myComputer.run(100);
+		myComputer.writeWord(1, 0b0001_001_001_1_00111); // ADD R1 + #7
+		myComputer.setPCAddress(0);
+		assertEquals(RunStatus.BUDGET_EXHAUSTED, myComputer.run(2));
+		assertEquals(7, myComputer.register(1));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#run(ExecutionEngine, long)}. <br>
+	 * A counted inner loop is fast-forwarded to the same state as running
+	 * it, whatever the budget, and fast enough to run billions of iterations.
+	 */
+	@Test
+	void testCountedLoops() {
+		String[] program = {
+			"0010 001 000001000",   // LD R1, outer count
+			"0010 010 000001000",   // LD R2, inner count
+			"0001 011 011 1 00001", // ADD R3 + #1
+			"0001 100 100 0 00 010", // ADD R4 + R2
+			"0001 010 010 1 11111", // ADD R2 - #1
+			"0000 001 111111100",   // BRp - #4
+			"0001 001 001 1 11111", // ADD R1 - #1
+			"0000 001 111111001",   // BRp - #7, which has a load in its body
+			"1111 0000 00100101"    // HALT
+		};
+		for (int slice : new int[] {1, 7, 500, 1000, 100000}) {
+			Computer fast = new Computer(new CaptureOutput());
+			Computer plain = new Computer(new CaptureOutput());
+			for (Computer computer : new Computer[] {fast, plain}) {
+				computer.loadMachineCode(program);
+				computer.writeWord(9, 3);
+				computer.writeWord(10, 100);
+			}
+			RunStatus status;
+			do {
+				status = fast.run(ExecutionEngine.DECODED, slice);
+				assertEquals(plain.run(ExecutionEngine.TABLE, slice), status);
+				assertEquals(plain.getInstructionCount(), fast.getInstructionCount());
+				assertEquals(plain.getPC().getUnsignedValue(), fast.getPC().getUnsignedValue());
+				assertEquals(plain.getIR().getUnsignedValue(), fast.getIR().getUnsignedValue());
+				assertEquals(plain.getCC().getUnsignedValue(), fast.getCC().getUnsignedValue());
+				for (int i = 0; i < 8; i++) {
+					assertEquals(plain.register(i), fast.register(i));
+				}
+			} while (status == RunStatus.BUDGET_EXHAUSTED);
+			assertEquals(RunStatus.HALTED, status);
+			assertEquals(3 * (4 * 100 + 3) + 2, fast.getInstructionCount());
+		}
+
+		long outer = 30000;
+		long inner = 30000;
+		myComputer.loadMachineCode(program);
+		myComputer.writeWord(9, (int) outer);
+		myComputer.writeWord(10, (int) inner);
+		int r3 = myComputer.register(3);
+		int r4 = myComputer.register(4);
+		assertTimeout(Duration.ofSeconds(10), () -> assertEquals(RunStatus.HALTED, myComputer.run(Long.MAX_VALUE)));
+		assertEquals(outer * (4 * inner + 3) + 2, myComputer.getInstructionCount());
+		assertEquals(0, myComputer.register(1));
+		assertEquals(0, myComputer.register(2));
+		assertEquals((short) (r3 + outer * inner), myComputer.register(3));
+		assertEquals((short) (r4 + outer * (inner * (inner + 1) / 2)), myComputer.register(4));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#run(ExecutionEngine, long)}. <br>
+	 * Looking at a counted loop whose words lie under the device registers
+	 * reads the words themselves, so it neither takes a waiting key nor
+	 * decodes a device register as part of the loop.
+	 */
+	@Test
+	void testCountedLoopUnderDevices() {
+		myComputer = new Computer(new CaptureOutput());
+		myComputer.loadMachineCode(0xFDFF,
+			"0101 001 001 1 00000", // AND R1 & #0
+			"0101 010 010 1 00000", // KBSR: AND R2 & #0
+			"0001 001 001 1 00101", // ADD R1 + #5
+			"0001 010 010 1 00001", // KBDR: ADD R2 + #1
+			"0001 001 001 1 11111", // ADD R1 - #1
+			"0000 001 111111101",   // BRp - #3
+			"1111 0000 00100101"    // HALT
+		);
+		assertTrue(myComputer.getDevices().offerInput('k'));
+		assertTrue(myComputer.getDevices().offerInput('j'));
+
+		assertEquals(RunStatus.HALTED, myComputer.run(ExecutionEngine.DECODED, 100));
+		assertEquals(5, myComputer.register(2));
+		assertEquals('k', myComputer.getDevices().read(DeviceBus.KBDR));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#run(ExecutionEngine, long)}. <br>
+	 * An endless loop uses up its budget on every engine and can be resumed;
+	 * HALT and an illegal opcode stop it early.
+	 */
+	@Test
+	void testRunBudget() {
+		for (ExecutionEngine engine : ENGINES) {
+			myComputer = new Computer(new CaptureOutput());
+			myComputer.loadMachineCode(
+				"0001 000 000 1 00001", // ADD R0 + #1
+				"0000 111 111111110" // BRnzp - #2
+			);
+
+			assertEquals(RunStatus.BUDGET_EXHAUSTED, myComputer.run(engine, 1001));
+			assertEquals(1001, myComputer.getInstructionCount());
+			assertEquals(501, myComputer.getRegisters()[0].get2sCompValue());
+			assertEquals(RunStatus.BUDGET_EXHAUSTED, myComputer.run(engine, 999));
+			assertEquals(2000, myComputer.getInstructionCount());
+			assertEquals(1000, myComputer.getRegisters()[0].get2sCompValue());
+		}
+
+		myComputer.loadMachineCode(
+			"0001 000 000 1 00001", // ADD R0 + #1
+			"1111 0000 00100101", // HALT
+			"1101 0000 0000 0000" // illegal opcode
+		);
+		assertEquals(RunStatus.HALTED, myComputer.run(10));
+		assertEquals(RunStatus.FAULTED, myComputer.run(10));
+		assertTrue(myComputer.getFault() instanceof UnsupportedOperationException);
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeLoad()}. <br>
+	 * LD sets the CC from the loaded value.
+	 */
+	@Test
+	void testExecuteLoadSetsCC() {
+		String[] program = {
+			"0010 000 000000001", // LD + #1
+			"1111 0000 00100101", // HALT
+			"1111 1111 1111 1111" // #-1
+		};
+
 		myComputer.loadMachineCode(program);
 		myComputer.execute();
+
+		assertEquals(-1, myComputer.getRegisters()[0].get2sCompValue());
+		assertEquals(0b100, myComputer.getCC().getUnsignedValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeAnd()}. <br>
+	 * AND sets the CC from the result, and NOT from its result rather than its DR field.
+	 */
+	@Test
+	void testExecuteAndNotSetCC() {
+		String[] program = {
+			"0101 011 011 1 00000", // AND R3 with #0
+			"1111 0000 00100101", // HALT
+			"1001 001 011 111111", // R1 <- NOT R3
+			"1111 0000 00100101" // HALT
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+		assertEquals(0, myComputer.getRegisters()[3].get2sCompValue());
+		assertEquals(0b010, myComputer.getCC().getUnsignedValue());
+
+		myComputer.execute();
+		assertEquals(-1, myComputer.getRegisters()[1].get2sCompValue());
+		assertEquals(0b100, myComputer.getCC().getUnsignedValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeJumpSubroutine()}. <br>
+	 * JSR saves the return address in R7 and RET returns to it.
+	 */
+	@Test
+	void testExecuteJsrRet() {
+		String[] program = {
+			"0100 1 00000000010", // JSR + #2
+			"0001 001 001 1 00001", // ADD R1 + #1
+			"1111 0000 00100101", // HALT
+			"0001 000 000 1 01010", // SUB: ADD R0 + #10
+			"1100 000 111 000000" // RET
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(10, myComputer.getRegisters()[0].get2sCompValue());
+		assertEquals(2, myComputer.getRegisters()[1].get2sCompValue());
+		assertEquals(1, myComputer.getRegisters()[7].get2sCompValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeJumpSubroutine()}. <br>
+	 * JSRR jumps to the address in a register, and reads it before R7 is written.
+	 */
+	@Test
+	void testExecuteJsrr() {
+		String[] program = {
+			"0001 111 111 1 00000", // ADD R7 + #0 (R7 is 7, the address of SUB)
+			"0100 0 00 111 000000", // JSRR R7
+			"1111 0000 00100101", // HALT
+			"0000 0000 0000 0000", // unused
+			"0000 0000 0000 0000", // unused
+			"0000 0000 0000 0000", // unused
+			"0000 0000 0000 0000", // unused
+			"0001 000 000 1 00111", // SUB: ADD R0 + #7
+			"1100 000 111 000000" // RET
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(7, myComputer.getRegisters()[0].get2sCompValue());
+		assertEquals(2, myComputer.getRegisters()[7].get2sCompValue());
+		assertEquals(3, myComputer.getPC().getUnsignedValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeJump()}.
+	 */
+	@Test
+	void testExecuteJmp() {
+		String[] program = {
+			"1100 000 011 000000", // JMP R3 (R3 is 3)
+			"0001 000 000 1 01000", // ADD R0 + #8, skipped
+			"0001 000 000 1 01000", // ADD R0 + #8, skipped
+			"1111 0000 00100101" // HALT
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(0, myComputer.getRegisters()[0].get2sCompValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeLoadRegister()}.
+	 */
+	@Test
+	void testExecuteLdr() {
+		String[] program = {
+			"0110 000 010 000010", // LDR R0 from R2 + #2 (R2 is 2)
+			"1111 0000 00100101", // HALT
+			"0000 0000 0000 0000", // unused
+			"0000 0000 0000 0000", // unused
+			"1000 0000 0000 0000" // x8000
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(-32768, myComputer.getRegisters()[0].get2sCompValue());
+		assertEquals(0b100, myComputer.getCC().getUnsignedValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeStoreRegister()}.
+	 */
+	@Test
+	void testExecuteStr() {
+		String[] program = {
+			"0111 101 100 111111", // STR R5 to R4 - #1 (R4 is 4, R5 is 5)
+			"1111 0000 00100101" // HALT
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(5, myComputer.getMemory().get(3).get2sCompValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeLoadIndirect()}.
+	 */
+	@Test
+	void testExecuteLdi() {
+		String[] program = {
+			"1010 001 000000001", // LDI R1 from the address at + #1
+			"1111 0000 00100101", // HALT
+			"0000 0000 0000 0011", // x0003
+			"0000 0000 0000 0000" // #0
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(0, myComputer.getRegisters()[1].get2sCompValue());
+		assertEquals(0b010, myComputer.getCC().getUnsignedValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeStoreIndirect()}.
+	 */
+	@Test
+	void testExecuteSti() {
+		String[] program = {
+			"1011 110 000000001", // STI R6 to the address at + #1
+			"1111 0000 00100101", // HALT
+			"0011 0000 0000 0000" // x3000
+		};
+
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals(6, myComputer.getMemory().get(0x3000).get2sCompValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeLoadEffectiveAddress()}. <br>
+	 * LEA does not change the CC.
+	 */
+	@Test
+	void testExecuteLea() {
+		String[] program = {
+			"1110 010 111111110", // LEA R2 <- PC - #2
+			"1111 0000 00100101" // HALT
+		};
+
+		myComputer.loadMachineCode(0x3000, program);
+		myComputer.execute();
+
+		assertEquals(0x2FFF, myComputer.getRegisters()[2].getUnsignedValue());
+		assertEquals(0b000, myComputer.getCC().getUnsignedValue());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeReturnFromInterrupt()}. <br>
+	 * RTI in user mode faults.
+	 */
+	@Test
+	void testExecuteRti() {
+		myComputer.loadMachineCode("1000 0000 0000 0000"); // RTI
+
+		assertEquals(RunStatus.FAULTED, myComputer.run(10));
+		assertTrue(myComputer.getFault() instanceof IllegalStateException);
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeTrap()}. <br>
+	 * GETC reads without echo, IN prompts and echoes, and GETC faults when
+	 * the input runs out.
+	 */
+	@Test
+	void testTrapGetcIn() {
+		String[] program = {
+			"1111 0000 00100000", // GETC
+			"0001 001 000 1 00000", // R1 <- R0
+			"1111 0000 00100011", // IN
+			"1111 0000 00100101", // HALT
+			"1111 0000 00100000" // GETC
+		};
+
+		CaptureOutput output = new CaptureOutput();
+		myComputer = new Computer(new StringInput("xy"), output);
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals('x', myComputer.getRegisters()[1].get2sCompValue());
+		assertEquals('y', myComputer.getRegisters()[0].get2sCompValue());
+		assertEquals("Input a character> y\n", output.toString());
+		assertEquals(RunStatus.FAULTED, myComputer.run(10));
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#executeTrap()}. <br>
+	 * PUTS writes one character per word and PUTSP two, low byte first.
+	 */
+	@Test
+	void testTrapPutsPutsp() {
+		String[] program = {
+			"1110 000 000000100", // LEA R0 <- STRING
+			"1111 0000 00100010", // PUTS
+			"1110 000 000000101", // LEA R0 <- PACKED
+			"1111 0000 00100100", // PUTSP
+			"1111 0000 00100101", // HALT
+			"0000 0000 0100 1000", // STRING: 'H'
+			"0000 0000 0110 1001", // 'i'
+			"0000 0000 0000 0000", // end of STRING
+			"0110 0010 0010 0000", // PACKED: ' ', 'b'
+			"0000 0000 0111 1001", // 'y'
+			"0000 0000 0000 0000" // end of PACKED
+		};
+
+		CaptureOutput output = new CaptureOutput();
+		myComputer = new Computer(output);
+		myComputer.loadMachineCode(program);
+		myComputer.execute();
+
+		assertEquals("Hi by", output.toString());
+	}
+
+	/**
+	 * Test method for {@link simulator.Computer#execute(ExecutionEngine)}. <br>
+	 * A subroutine that walks an array through a pointer, called often enough
+	 * for the JIT to compile it, gives the same results on every engine.
+	 */
+	@Test
+	void testExecuteEnginesSubroutineLoop() {
+		String[] program = {
+			"0010 110 000010100", // LD R6 <- COUNT
+			"1110 001 000001111", // OUTER: LEA R1 <- ARRAY
+			"0101 000 000 1 00000", // clear R0, the sum
+			"0101 010 010 1 00000", // clear R2
+			"0001 010 010 1 00100", // R2 <- 4, the length
+			"0100 1 00000000101", // JSR SUM
+			"0011 000 000001111", // ST R0 -> RESULT
+			"1011 000 000001111", // STI R0 -> the address at POINTER
+			"0001 110 110 1 11111", // decrement the outer counter
+			"0000 001 111110111", // BRp OUTER
+			"1111 0000 00100101", // HALT
+			"0110 011 001 000000", // SUM: LDR R3 <- R1 + #0
+			"0001 000 000 0 00 011", // R0 <- R0 + R3
+			"0001 001 001 1 00001", // increment the pointer
+			"0001 010 010 1 11111", // decrement the length
+			"0000 001 111111011", // BRp the LDR
+			"1100 000 111 000000", // RET
+			"0000 0000 0000 0011", // ARRAY: #3
+			"0000 0000 0000 0101", // #5
+			"0000 0000 0000 0111", // #7
+			"1111 1111 1111 1110", // #-2
+			"0000 0001 0010 1100", // COUNT: #300
+			"0000 0000 0000 0000", // RESULT
+			"0011 0000 0000 0000" // POINTER: x3000
+		};
+
+		for (ExecutionEngine engine : ENGINES) {
+			myComputer = new Computer(new CaptureOutput());
+			myComputer.loadMachineCode(program);
+			myComputer.execute(engine);
+
+			assertEquals(13, myComputer.getRegisters()[0].get2sCompValue());
+			assertEquals(-2, myComputer.getRegisters()[3].get2sCompValue());
+			assertEquals(6, myComputer.getRegisters()[7].get2sCompValue());
+			assertEquals(13, myComputer.getMemory().get(22).get2sCompValue());
+			assertEquals(13, myComputer.getMemory().get(0x3000).get2sCompValue());
+			assertEquals(0b010, myComputer.getCC().getUnsignedValue());
+		}
 	}
 }
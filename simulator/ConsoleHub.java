@@ -0,0 +1,194 @@
+package simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The ConsoleHub does the I/O of any number of ChannelConsoles on one
+ * selector thread, so thousands of interactive sessions over sockets or
+ * pipes need one thread between them rather than one each. Together with
+ * the Scheduler, a program waiting for input holds no thread at all.
+ * Closing the hub ends every console it opened, so no program is left
+ * waiting on one.
+ *
+ * A console whose I/O or wakeup throws is ended on its own, and the hub
+ * goes on serving the others. If the selector itself fails, the hub ends
+ * every console as close() does.
+ *
+ * @version 1.2
+ */
+public final class ConsoleHub implements Closeable {
+
+	/** The default size of each console's input and output rings. */
+	public final static int DEFAULT_CAPACITY = 4096;
+
+	private final Selector mySelector;
+	private final Queue<Runnable> myTasks;
+	/** The consoles opened whose channels have not both ended. */
+	private final Set<ChannelConsole> myConsoles;
+	private final Thread myThread;
+	private final int myCapacity;
+	private volatile boolean myClosed;
+
+	/**
+	 * Starts a hub whose consoles have rings of DEFAULT_CAPACITY bytes.
+	 * @throws IOException if the selector cannot be opened
+	 */
+	public ConsoleHub() throws IOException {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Starts a hub.
+	 * @param theCapacity the size of each console's input and output rings, a power of 2
+	 * @throws IOException if the selector cannot be opened
+	 */
+	public ConsoleHub(final int theCapacity) throws IOException {
+		if (theCapacity < 1 || Integer.bitCount(theCapacity) != 1) {
+			throw new IllegalArgumentException("Invalid capacity");
+		}
+		myCapacity = theCapacity;
+		mySelector = Selector.open();
+		myTasks = new ConcurrentLinkedQueue<>();
+		myConsoles = ConcurrentHashMap.newKeySet();
+		myThread = new Thread(this::loop, "ConsoleHub");
+		myThread.setDaemon(true);
+		myThread.start();
+	}
+
+	/**
+	 * Opens a console over a pair of channels, which are made non-blocking.
+	 * They stay open when the hub is closed; the caller closes them.
+	 * @param theIn the channel to read input from
+	 * @param theOut the channel to write output to; may be the same channel as theIn
+	 * @return the console
+	 * @throws IOException if a channel cannot be made non-blocking
+	 */
+	public <R extends SelectableChannel & ReadableByteChannel,
+			W extends SelectableChannel & WritableByteChannel> ChannelConsole open(final R theIn,
+			final W theOut) throws IOException {
+		if (theIn == null || theOut == null || myClosed) {
+			throw new IllegalArgumentException("Invalid channel or closed hub");
+		}
+		theIn.configureBlocking(false);
+		theOut.configureBlocking(false);
+		ChannelConsole console = new ChannelConsole(this, theIn, theOut, myCapacity);
+		myConsoles.add(console);
+		submit(console, () -> console.register(mySelector));
+		if (myClosed && myConsoles.remove(console)) {
+			// close() may have ended the others before this one was added
+			console.close();
+		}
+		return console;
+	}
+
+	/**
+	 * Forgets a console whose input has ended and whose output has failed,
+	 * so there is nothing left for close() to end.
+	 * @param theConsole the console
+	 */
+	void release(final ChannelConsole theConsole) {
+		myConsoles.remove(theConsole);
+	}
+
+	/**
+	 * Runs a task on the hub's thread, which owns the selector. If the
+	 * task throws, only its console is ended.
+	 * @param theConsole the console the task works for
+	 * @param theTask the task
+	 */
+	void submit(final ChannelConsole theConsole, final Runnable theTask) {
+		if (!myClosed) {
+			myTasks.add(() -> {
+				try {
+					theTask.run();
+				} catch (RuntimeException e) {
+					end(theConsole);
+				}
+			});
+			mySelector.wakeup();
+		}
+	}
+
+	/**
+	 * The hub's thread: waits for channels to be ready and for tasks. A
+	 * console that throws is ended, and the loop goes on with the rest.
+	 */
+	private void loop() {
+		try {
+			while (!myClosed) {
+				mySelector.select();
+				for (Runnable task = myTasks.poll(); task != null; task = myTasks.poll()) {
+					task.run();
+				}
+				Iterator<SelectionKey> keys = mySelector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					ChannelConsole console = (ChannelConsole) key.attachment();
+					try {
+						console.ready(key);
+					} catch (RuntimeException e) {
+						end(console);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// nothing more can be served, so leave no program waiting
+			myClosed = true;
+			myTasks.clear();
+			endAll();
+		}
+	}
+
+	/**
+	 * Ends a console if it has not been ended already.
+	 * @param theConsole the console
+	 */
+	private void end(final ChannelConsole theConsole) {
+		if (myConsoles.remove(theConsole)) {
+			try {
+				theConsole.close();
+			} catch (RuntimeException e) {
+				// its wakeup threw, but it has ended all the same
+			}
+		}
+	}
+
+	/**
+	 * Ends every console not ended already.
+	 */
+	private void endAll() {
+		for (ChannelConsole console : myConsoles) {
+			end(console);
+		}
+	}
+
+	/**
+	 * Stops the hub's thread and ends every console: their input ends,
+	 * their output is dropped, and programs waiting on them are woken.
+	 * @throws IOException if the selector cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		myClosed = true;
+		mySelector.wakeup();
+		try {
+			myThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		endAll();
+		mySelector.close();
+	}
+}
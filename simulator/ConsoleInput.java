@@ -0,0 +1,42 @@
+package simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The ConsoleInput reads characters from an InputStream, System.in unless
+ * another stream is given, one byte per character.
+ *
+ * @version 1.0
+ */
+public class ConsoleInput implements InputDevice {
+
+	private final InputStream myIn;
+
+	/**
+	 * Reads from System.in.
+	 */
+	public ConsoleInput() {
+		this(System.in);
+	}
+
+	/**
+	 * @param theIn the stream to read from
+	 */
+	public ConsoleInput(final InputStream theIn) {
+		if (theIn == null) {
+			throw new IllegalArgumentException("Invalid stream");
+		}
+		myIn = theIn;
+	}
+
+	@Override
+	public int read() {
+		try {
+			return myIn.read();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
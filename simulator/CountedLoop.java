@@ -0,0 +1,306 @@
+package simulator;
+
+/**
+ * A CountedLoop is a loop the DecodedEngine can fast-forward instead of
+ * running it one iteration at a time: a block of instructions ending in
+ * ADD Rc, Rc, #step followed by a BR back to the start of the block,
+ * which runs until the counter Rc crosses 0.
+ *
+ * Only loops without side effects qualify: every instruction in the body
+ * must be ADD, AND with #0 or #-1 (or of a register with itself), NOT or
+ * LEA, so each register after an iteration is a sum of multiples of the
+ * registers before it plus a constant. A loop with a TRAP, a load or
+ * store, a jump or a branch inside it is never fast-forwarded. The counter
+ * must change by the same step every iteration and be the last value the
+ * CC is set from, so the number of iterations left follows from its value.
+ * The registers after m iterations are then the m-th power of the
+ * iteration's affine map, found by repeated squaring in 16 bit arithmetic,
+ * so the registers, CC, PC and instruction count come out exactly as if
+ * every iteration had run.
+ *
+ * The body is read straight from memory, as it is fetched, and never
+ * through the device registers, so looking at a loop has no side effects.
+ *
+ * @version 1.1
+ */
+final class CountedLoop {
+
+	/** Marks a superinstruction that does not close a counted loop. */
+	final static CountedLoop NONE = new CountedLoop(0, new int[0], 0, 0, 0, null);
+
+	/** The fewest iterations worth fast-forwarding; fewer are cheaper to run. */
+	final static int MIN_ITERATIONS = 64;
+
+	/** The longest body looked at, in instructions. */
+	private final static int MAX_LENGTH = 64;
+
+	/** The columns of the map: one per register and one for the constant. */
+	private final static int SIZE = 9;
+
+	private final int myStart;
+	private final int[] myWords;
+	private final int myCounter;
+	private final int myStep;
+	private final int myCondition;
+	/** Row r gives register r after one iteration from the registers before it. */
+	private final int[][] myMap;
+
+	/**
+	 * @param theStart the address of the first instruction of the body
+	 * @param theWords the words of the body, ending with the ADD and BR
+	 * @param theCounter the counter register
+	 * @param theStep what the counter changes by each iteration
+	 * @param theCondition the nzp bits of the BR
+	 * @param theMap the affine map of one iteration
+	 */
+	private CountedLoop(final int theStart, final int[] theWords, final int theCounter, final int theStep,
+			final int theCondition, final int[][] theMap) {
+		myStart = theStart;
+		myWords = theWords;
+		myCounter = theCounter;
+		myStep = theStep;
+		myCondition = theCondition;
+		myMap = theMap;
+	}
+
+	/**
+	 * Called after an ADD and BR superinstruction has executed: if its
+	 * branch was taken back to the start of a counted loop, runs as many
+	 * whole iterations of the loop as are left, or as fit in theBudget.
+	 * @param theComputer the computer
+	 * @param thePair the superinstruction that just executed
+	 * @param theBudget the most instructions that may be executed
+	 * @return the number of instructions fast-forwarded, 0 if none
+	 */
+	static long fastForward(final Computer theComputer, final DecodedInstruction thePair,
+			final long theBudget) {
+		DecodedInstruction branch = thePair.getSecond();
+		int length = -branch.getOffset9();
+		// only a branch taken backwards over at least the pair can close a loop
+		if (length < 2 || (branch.getDest() & theComputer.getConditionBits()) == 0) {
+			return 0;
+		}
+		int start = theComputer.getPCAddress();
+		CountedLoop loop = thePair.getLoop();
+		if (loop == null) {
+			loop = analyze(theComputer, start, length);
+			thePair.setLoop(loop);
+		}
+		if (loop == NONE) {
+			return 0;
+		}
+		long skipped = loop.run(theComputer, theBudget);
+		if (skipped < 0) {
+			// the body has been written since; look at it again next time
+			thePair.setLoop(null);
+			return 0;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Works out the affine map of one iteration of the body.
+	 * @param theComputer the computer whose memory holds the body
+	 * @param theStart the address of the first instruction of the body
+	 * @param theLength the number of instructions in the body, including the BR
+	 * @return the loop, or NONE if the body does not qualify
+	 */
+	private static CountedLoop analyze(final Computer theComputer, final int theStart, final int theLength) {
+		if (theLength > MAX_LENGTH || theStart + theLength > Memory.SIZE) {
+			return NONE;
+		}
+		int[] words = new int[theLength];
+		int[][] rows = identity();
+		int last = -1;
+		for (int i = 0; i < theLength - 1; i++) {
+			int word = theComputer.memory(theStart + i) & 0xFFFF;
+			words[i] = word;
+			int dest = (word >>> 9) & 0x7;
+			int source1 = (word >>> 6) & 0x7;
+			int source2 = word & 0x7;
+			boolean immediate = (word & 0x20) != 0;
+			int value = BitString.signExtend(word, 5);
+			int[] row;
+			switch (word >>> 12) {
+				case 0: // a BR that is never taken does nothing
+					if (dest != 0) {
+						return NONE;
+					}
+					continue;
+				case 1: // ADD
+					row = immediate ? plus(rows[source1], constant(value)) : plus(rows[source1], rows[source2]);
+					break;
+				case 5: // AND, only when it clears or copies a register
+					if (immediate && value == 0) {
+						row = constant(0);
+					} else if (immediate ? value == -1 : source1 == source2) {
+						row = rows[source1].clone();
+					} else {
+						return NONE;
+					}
+					break;
+				case 9: // NOT: -x - 1
+					row = plus(times(rows[source1], -1), constant(-1));
+					break;
+				case 14: // LEA does not set the CC
+					rows[dest] = constant(theStart + i + 1 + BitString.signExtend(word, 9));
+					continue;
+				default:
+					return NONE;
+			}
+			rows[dest] = row;
+			last = dest;
+		}
+		int branch = theComputer.memory(theStart + theLength - 1) & 0xFFFF;
+		words[theLength - 1] = branch;
+
+		// the CC is set from the counter, which only changes by a constant step
+		int[] counter = rows[last];
+		for (int column = 0; column < SIZE - 1; column++) {
+			if (counter[column] != (column == last ? 1 : 0)) {
+				return NONE;
+			}
+		}
+		int step = (short) counter[SIZE - 1];
+		int condition = (branch >>> 9) & 0x7;
+		boolean down = step < 0 && (condition == 0b001 || condition == 0b011);
+		boolean up = step > 0 && (condition == 0b100 || condition == 0b110);
+		if (!down && !up) {
+			return NONE;
+		}
+		return new CountedLoop(theStart, words, last, step, condition, rows);
+	}
+
+	/**
+	 * Fast-forwards the loop from the start of an iteration.
+	 * @param theComputer the computer, with its PC at the start of the loop
+	 * @param theBudget the most instructions that may be executed
+	 * @return the number of instructions fast-forwarded, 0 if none, or -1
+	 *         if the body is no longer in memory
+	 */
+	private long run(final Computer theComputer, final long theBudget) {
+		// the counter only moves towards 0 by the step, so it cannot wrap around
+		int counter = theComputer.readRegister(myCounter);
+		int distance = myStep < 0 ? counter : -counter;
+		int step = Math.abs(myStep);
+		// p and n go on while the counter is nonzero, zp and nz while it has not crossed 0
+		boolean strict = myCondition == 0b001 || myCondition == 0b100;
+		long left = strict ? (distance + step - 1) / step : distance / step + 1;
+		long iterations = Math.min(left, theBudget / myWords.length);
+		if (iterations < MIN_ITERATIONS) {
+			return 0;
+		}
+		if (!matches(theComputer)) {
+			return -1;
+		}
+
+		int[][] map = power(myMap, iterations);
+		int[] before = new int[SIZE];
+		for (int register = 0; register < SIZE - 1; register++) {
+			before[register] = theComputer.readRegister(register);
+		}
+		before[SIZE - 1] = 1;
+		for (int register = 0; register < SIZE - 1; register++) {
+			int value = 0;
+			for (int column = 0; column < SIZE; column++) {
+				value += map[register][column] * before[column];
+			}
+			theComputer.writeRegister(register, value);
+		}
+		theComputer.setConditionCode((short) (counter + iterations * myStep));
+		// the IR already holds the BR, which is also the last instruction fast-forwarded
+		if (iterations == left) {
+			theComputer.setPCAddress(myStart + myWords.length);
+		}
+		return iterations * myWords.length;
+	}
+
+	/**
+	 * @param theComputer the computer
+	 * @return true if memory still holds the body this loop was made from
+	 */
+	private boolean matches(final Computer theComputer) {
+		for (int i = 0; i < myWords.length; i++) {
+			if ((theComputer.memory(myStart + i) & 0xFFFF) != myWords[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the map that leaves every register as it is
+	 */
+	private static int[][] identity() {
+		int[][] rows = new int[SIZE][SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			rows[i][i] = 1;
+		}
+		return rows;
+	}
+
+	/**
+	 * @param theValue a constant
+	 * @return the row for a register set to theValue
+	 */
+	private static int[] constant(final int theValue) {
+		int[] row = new int[SIZE];
+		row[SIZE - 1] = theValue;
+		return row;
+	}
+
+	private static int[] plus(final int[] theFirst, final int[] theSecond) {
+		int[] row = new int[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			row[i] = theFirst[i] + theSecond[i];
+		}
+		return row;
+	}
+
+	private static int[] times(final int[] theRow, final int theFactor) {
+		int[] row = new int[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			row[i] = theRow[i] * theFactor;
+		}
+		return row;
+	}
+
+	/**
+	 * Raises a map to a power by repeated squaring. Arithmetic wraps at 32
+	 * bits, which keeps the low 16 bits exact.
+	 * @param theMap the map, with the constant row last
+	 * @param thePower the number of iterations
+	 * @return the map of thePower iterations
+	 */
+	private static int[][] power(final int[][] theMap, final long thePower) {
+		int[][] result = identity();
+		int[][] square = theMap;
+		for (long power = thePower; power > 0; power >>>= 1) {
+			if ((power & 1) != 0) {
+				result = multiply(result, square);
+			}
+			if (power > 1) {
+				square = multiply(square, square);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return theFirst * theSecond, skipping the zeros that make up most of a loop's map
+	 */
+	private static int[][] multiply(final int[][] theFirst, final int[][] theSecond) {
+		int[][] product = new int[SIZE][SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			for (int k = 0; k < SIZE; k++) {
+				int factor = theFirst[i][k];
+				if (factor != 0) {
+					for (int j = 0; j < SIZE; j++) {
+						product[i][j] += factor * theSecond[k][j];
+					}
+				}
+			}
+		}
+		return product;
+	}
+}
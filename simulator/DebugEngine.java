@@ -0,0 +1,48 @@
+package simulator;
+
+/**
+ * The DebugEngine executes each instruction from the Computer's decoded
+ * instruction cache, as the DecodedEngine does, and stops at the
+ * breakpoints and watchpoints of a Debugger. The Computer only uses it
+ * while one is set.
+ *
+ * @version 1.0
+ */
+final class DebugEngine implements ExecutionEngine {
+
+	private final Debugger myDebugger;
+
+	/**
+	 * @param theDebugger the debugger whose breakpoints and watchpoints it stops at
+	 */
+	DebugEngine(final Debugger theDebugger) {
+		myDebugger = theDebugger;
+	}
+
+	@Override
+	public boolean run(final Computer theComputer, final long theBudget) {
+		long executed = 0;
+		try {
+			while (executed < theBudget) {
+				// a trap that stops the engine to catch up changes the count, so read it afresh
+				if (myDebugger.breaksAt(theComputer.getPCAddress(), theComputer.getInstructionCount() + executed)) {
+					return true;
+				}
+				DecodedInstruction instruction = theComputer.fetchDecoded();
+				int watched = myDebugger.watches(instruction.getWord());
+				boolean halt = instruction.execute(theComputer);
+				executed++;
+				if (watched >= 0) {
+					myDebugger.hit(RunStatus.WATCHPOINT, watched);
+					return true;
+				}
+				if (halt) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			theComputer.retire(executed);
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package simulator;
+
+/**
+ * The Debugger of a Computer, from Computer.getDebugger(), sets PC
+ * breakpoints and memory watchpoints and runs the program to the next one
+ * or a single instruction at a time.
+ *
+ * Breakpoints and watchpoints are bitmaps over the address space. While
+ * none is set, Computer.run() uses the engine it is given, so a program
+ * runs exactly as fast as without a debugger. Once one is set, run()
+ * switches to a DebugEngine, which interprets from the decoded instruction
+ * cache and looks at the bitmaps around every instruction.
+ *
+ * A breakpoint stops the program before the instruction at its address
+ * runs, and run() returns BREAKPOINT; running again carries on with that
+ * instruction. A watchpoint stops it after a load or store that read or
+ * wrote its address, and run() returns WATCHPOINT. The words traps read,
+ * and the pushes of an interrupt, are not watched.
+ *
+ * @version 1.1
+ */
+public final class Debugger {
+
+	private final static int WORDS = Memory.SIZE / Long.SIZE;
+
+	private final Computer myComputer;
+	private final DebugEngine myEngine;
+	private final long[] myBreakpoints = new long[WORDS];
+	private final long[] myReads = new long[WORDS];
+	private final long[] myWrites = new long[WORDS];
+	/** The number of bits set in all three bitmaps. */
+	private int myCount;
+
+	/** Why the last run stopped, or null if not at a breakpoint or watchpoint. */
+	private RunStatus myHit;
+	private int myHitAddress;
+	/** The breakpoint the program is stopped at, which does not stop it again. */
+	private int myResumeAddress = -1;
+	private long myResumeCount;
+
+	/**
+	 * @param theComputer the computer to debug
+	 */
+	Debugger(final Computer theComputer) {
+		myComputer = theComputer;
+		myEngine = new DebugEngine(this);
+	}
+
+	/**
+	 * Stops the program before it executes the instruction at theAddress.
+	 * @param theAddress the address, 0 to 65535
+	 */
+	public void setBreakpoint(final int theAddress) {
+		set(myBreakpoints, theAddress, true);
+	}
+
+	/**
+	 * @param theAddress the address, 0 to 65535
+	 */
+	public void clearBreakpoint(final int theAddress) {
+		set(myBreakpoints, theAddress, false);
+	}
+
+	/**
+	 * @param theAddress the address, 0 to 65535
+	 * @return true if there is a breakpoint at theAddress
+	 */
+	public boolean isBreakpoint(final int theAddress) {
+		return isSet(myBreakpoints, check(theAddress));
+	}
+
+	/**
+	 * Stops the program after an instruction loads from theAddress.
+	 * @param theAddress the address, 0 to 65535
+	 */
+	public void watchReads(final int theAddress) {
+		set(myReads, theAddress, true);
+	}
+
+	/**
+	 * Stops the program after an instruction stores to theAddress.
+	 * @param theAddress the address, 0 to 65535
+	 */
+	public void watchWrites(final int theAddress) {
+		set(myWrites, theAddress, true);
+	}
+
+	/**
+	 * Removes the read and write watchpoints at theAddress.
+	 * @param theAddress the address, 0 to 65535
+	 */
+	public void unwatch(final int theAddress) {
+		set(myReads, theAddress, false);
+		set(myWrites, theAddress, false);
+	}
+
+	/**
+	 * Removes every breakpoint and watchpoint, so runs go back to full speed.
+	 */
+	public void clearAll() {
+		for (int i = 0; i < WORDS; i++) {
+			myBreakpoints[i] = 0;
+			myReads[i] = 0;
+			myWrites[i] = 0;
+		}
+		myCount = 0;
+	}
+
+	/**
+	 * Executes the instruction at the PC, even if it has a breakpoint.
+	 * @return why it stopped: BUDGET_EXHAUSTED after the instruction, or
+	 *         HALTED, WAITING, FAULTED or WATCHPOINT
+	 */
+	public RunStatus step() {
+		myResumeAddress = myComputer.getPCAddress();
+		myResumeCount = myComputer.getInstructionCount();
+		return myComputer.run(ExecutionEngine.DECODED, 1);
+	}
+
+	/**
+	 * Runs the program until it reaches a breakpoint or watchpoint, halts,
+	 * or has executed theMaxInstructions instructions.
+	 * @param theMaxInstructions the instruction budget
+	 * @return why it stopped
+	 */
+	public RunStatus runToBreakpoint(final long theMaxInstructions) {
+		return myComputer.run(ExecutionEngine.DECODED, theMaxInstructions);
+	}
+
+	/**
+	 * @return the address of the breakpoint or watchpoint the last run
+	 *         stopped at, or -1 if it did not stop at one
+	 */
+	public int getHitAddress() {
+		return myHit == null ? -1 : myHitAddress;
+	}
+
+	/**
+	 * @return true if a breakpoint or watchpoint is set, so runs need the DebugEngine
+	 */
+	boolean isArmed() {
+		return myCount > 0;
+	}
+
+	/**
+	 * @return the engine that looks at the breakpoints and watchpoints
+	 */
+	ExecutionEngine getEngine() {
+		return myEngine;
+	}
+
+	/**
+	 * @return BREAKPOINT or WATCHPOINT if the last run stopped at one, or null
+	 */
+	RunStatus getHit() {
+		return myHit;
+	}
+
+	/**
+	 * Forgets the last stop, before a run.
+	 */
+	void clearHit() {
+		myHit = null;
+	}
+
+	/**
+	 * DebugEngine: decides whether the program stops before an instruction.
+	 * @param theAddress the address of the instruction
+	 * @param theCount the instruction count before it runs
+	 * @return true if it stops, at a breakpoint not already stopped at
+	 */
+	boolean breaksAt(final int theAddress, final long theCount) {
+		if (!isSet(myBreakpoints, theAddress)
+				|| (theAddress == myResumeAddress && theCount == myResumeCount)) {
+			return false;
+		}
+		hit(RunStatus.BREAKPOINT, theAddress);
+		myResumeAddress = theAddress;
+		myResumeCount = theCount;
+		return true;
+	}
+
+	/**
+	 * DebugEngine: finds whether the instruction just fetched will touch a
+	 * watched word. It is called before the instruction executes, with the
+	 * PC already incremented, so the registers still hold its operands.
+	 * The pointer of LDI and STI is found as the instruction will find it,
+	 * from a device register if it lies in xFE00 to xFE0F, but without
+	 * taking a key or clearing the timer.
+	 * @param theWord the instruction word
+	 * @return the watched address, or -1 if none is touched
+	 */
+	int watches(final int theWord) {
+		int pc = myComputer.getPCAddress();
+		int address = (pc + BitString.signExtend(theWord, 9)) & 0xFFFF;
+		int base = myComputer.register((theWord >>> 6) & 0x7) + BitString.signExtend(theWord, 6);
+		switch (theWord >>> 12) {
+			case 2:  // LD
+				return watched(myReads, address);
+			case 3:  // ST
+				return watched(myWrites, address);
+			case 6:  // LDR
+				return watched(myReads, base & 0xFFFF);
+			case 7:  // STR
+				return watched(myWrites, base & 0xFFFF);
+			case 10: // LDI
+				return isSet(myReads, address) ? address
+						: watched(myReads, myComputer.peekWord(address) & 0xFFFF);
+			case 11: // STI
+				return isSet(myReads, address) ? address
+						: watched(myWrites, myComputer.peekWord(address) & 0xFFFF);
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Records why the program stopped.
+	 * @param theHit BREAKPOINT or WATCHPOINT
+	 * @param theAddress the address of the breakpoint or watchpoint
+	 */
+	void hit(final RunStatus theHit, final int theAddress) {
+		myHit = theHit;
+		myHitAddress = theAddress;
+	}
+
+	/**
+	 * Sets or clears one bit, keeping count of how many are set.
+	 */
+	private void set(final long[] theMap, final int theAddress, final boolean theOn) {
+		int address = check(theAddress);
+		if (isSet(theMap, address) != theOn) {
+			theMap[address >>> 6] ^= 1L << address;
+			myCount += theOn ? 1 : -1;
+		}
+	}
+
+	private static boolean isSet(final long[] theMap, final int theAddress) {
+		return (theMap[theAddress >>> 6] & (1L << theAddress)) != 0;
+	}
+
+	private static int watched(final long[] theMap, final int theAddress) {
+		return isSet(theMap, theAddress) ? theAddress : -1;
+	}
+
+	private static int check(final int theAddress) {
+		if (theAddress < 0 || theAddress >= Memory.SIZE) {
+			throw new IllegalArgumentException("Invalid address: " + theAddress);
+		}
+		return theAddress;
+	}
+}
@@ -0,0 +1,44 @@
+package simulator;
+
+/**
+ * The DecodedEngine executes each instruction from the Computer's decoded
+ * instruction cache, so an address is only decoded the first time it runs.
+ * Common pairs of instructions are fused into superinstructions that are
+ * dispatched once; see DecodedInstruction. When one of them branches back
+ * to the start of a CountedLoop, the rest of the loop is fast-forwarded.
+ *
+ * @version 1.3
+ */
+final class DecodedEngine implements ExecutionEngine {
+
+	@Override
+	public boolean run(final Computer theComputer, final long theBudget) {
+		long executed = 0;
+		try {
+			// a superinstruction counts as two, so it is only fetched with two left in the budget
+			while (executed < theBudget - 1) {
+				// The handler was picked from the opcode when it was decoded
+				DecodedInstruction instruction = theComputer.fetchFused();
+				boolean halt = instruction.execute(theComputer);
+				if (halt) {
+					executed++;
+					return true;
+				}
+				if (instruction.getLength() == 1) {
+					executed++;
+				} else {
+					executed += 2;
+					executed += CountedLoop.fastForward(theComputer, instruction, theBudget - executed);
+				}
+			}
+			if (executed < theBudget) {
+				boolean halt = theComputer.fetchDecoded().execute(theComputer);
+				executed++;
+				return halt;
+			}
+			return false;
+		} finally {
+			theComputer.retire(executed);
+		}
+	}
+}
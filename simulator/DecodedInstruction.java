@@ -0,0 +1,298 @@
+package simulator;
+
+/**
+ * A DecodedInstruction is one 16 bit instruction word with its operand
+ * fields already pulled out and the handler for its opcode already chosen,
+ * so executing it again does not repeat any decoding.
+ *
+ * A superinstruction is two instructions that are common together in
+ * loops, decoded as one so the interpreter dispatches once for both:
+ * ADD with an immediate followed by BR, and AND Rx, Ry, #0 followed by
+ * ADD Rx, Rx, #imm. It leaves the registers, CC, PC and IR exactly as the
+ * two instructions would. See fuse(). An ADD and BR superinstruction
+ * that closes a loop also remembers the CountedLoop found there.
+ *
+ * @version 1.4
+ */
+final class DecodedInstruction {
+
+	/**
+	 * Carries out a decoded instruction on a Computer.
+	 */
+	@FunctionalInterface
+	interface Handler {
+		/**
+		 * @param theComputer the computer to execute on
+		 * @param theInstruction the decoded instruction
+		 * @return true if the instruction halts the computer or stops the engine; false otherwise.
+		 */
+		boolean execute(Computer theComputer, DecodedInstruction theInstruction);
+	}
+
+	private final static Handler BR = (c, i) -> {
+		c.branch(i.myDest, i.myOffset9);
+		return false;
+	};
+	private final static Handler ADD_IMMEDIATE = (c, i) -> {
+		c.addImmediate(i.myDest, i.mySource1, i.myImmediate);
+		return false;
+	};
+	private final static Handler ADD_REGISTER = (c, i) -> {
+		c.addRegister(i.myDest, i.mySource1, i.mySource2);
+		return false;
+	};
+	private final static Handler LD = (c, i) -> {
+		c.load(i.myDest, i.myOffset9);
+		return false;
+	};
+	private final static Handler ST = (c, i) -> c.store(i.myDest, i.myOffset9);
+	private final static Handler AND_IMMEDIATE = (c, i) -> {
+		c.andImmediate(i.myDest, i.mySource1, i.myImmediate);
+		return false;
+	};
+	private final static Handler AND_REGISTER = (c, i) -> {
+		c.andRegister(i.myDest, i.mySource1, i.mySource2);
+		return false;
+	};
+	private final static Handler NOT = (c, i) -> {
+		c.not(i.myDest, i.mySource1);
+		return false;
+	};
+	private final static Handler JSR = (c, i) -> {
+		c.jumpSubroutine(i.myOffset11);
+		return false;
+	};
+	private final static Handler JSRR = (c, i) -> {
+		c.jumpSubroutineRegister(i.mySource1);
+		return false;
+	};
+	private final static Handler LDR = (c, i) -> {
+		c.loadRegister(i.myDest, i.mySource1, i.myOffset6);
+		return false;
+	};
+	private final static Handler STR = (c, i) -> c.storeRegister(i.myDest, i.mySource1, i.myOffset6);
+	private final static Handler RTI = (c, i) -> c.returnFromInterrupt();
+	private final static Handler LDI = (c, i) -> {
+		c.loadIndirect(i.myDest, i.myOffset9);
+		return false;
+	};
+	private final static Handler STI = (c, i) -> c.storeIndirect(i.myDest, i.myOffset9);
+	private final static Handler JMP = (c, i) -> {
+		c.jump(i.mySource1);
+		return false;
+	};
+	private final static Handler LEA = (c, i) -> {
+		c.loadEffectiveAddress(i.myDest, i.myOffset9);
+		return false;
+	};
+	private final static Handler TRAP = (c, i) -> c.trap(i.myVector);
+	private final static Handler ADD_BR = (c, i) -> {
+		DecodedInstruction branch = i.mySecond;
+		c.addBranch(i.myDest, i.mySource1, i.myImmediate, branch.myWord, branch.myDest, branch.myOffset9);
+		return false;
+	};
+	private final static Handler CLEAR_ADD = (c, i) -> {
+		c.clearAdd(i.myDest, i.mySecond.myImmediate, i.mySecond.myWord);
+		return false;
+	};
+	private final static Handler ILLEGAL = (c, i) -> {
+		throw new UnsupportedOperationException("Illegal opCode: " + i.myOpCode);
+	};
+
+	private final int myWord;
+	private final int myOpCode;
+	/** Bits [11:9]: DR, SR of a store or nzp of a branch. */
+	private final int myDest;
+	/** Bits [8:6]: SR1 or BaseR. */
+	private final int mySource1;
+	/** Bits [2:0]. */
+	private final int mySource2;
+	/** Bits [4:0], sign extended. */
+	private final int myImmediate;
+	/** Bits [5:0], sign extended. */
+	private final int myOffset6;
+	/** Bits [8:0], sign extended. */
+	private final int myOffset9;
+	/** Bits [10:0], sign extended. */
+	private final int myOffset11;
+	/** Bits [7:0]. */
+	private final int myVector;
+	private final Handler myHandler;
+	/** The second instruction of a superinstruction, or null. */
+	private final DecodedInstruction mySecond;
+	/** The loop this superinstruction closes, or CountedLoop.NONE; null until it is looked for. */
+	private CountedLoop myLoop;
+
+	/**
+	 * Decodes an instruction word.
+	 * @param theWord the instruction; only the low 16 bits are used
+	 */
+	DecodedInstruction(int theWord) {
+		myWord = theWord & 0xFFFF;
+		myOpCode = myWord >>> 12;
+		myDest = (myWord >>> 9) & 0x7;
+		mySource1 = (myWord >>> 6) & 0x7;
+		mySource2 = myWord & 0x7;
+		myImmediate = BitString.signExtend(myWord, 5);
+		myOffset6 = BitString.signExtend(myWord, 6);
+		myOffset9 = BitString.signExtend(myWord, 9);
+		myOffset11 = BitString.signExtend(myWord, 11);
+		myVector = myWord & 0xFF;
+		myHandler = handlerFor(myOpCode, (myWord & 0x20) != 0, (myWord & 0x800) != 0);
+		mySecond = null;
+	}
+
+	/**
+	 * Makes a superinstruction; its fields are those of the first instruction.
+	 * @param theFirst the instruction at the address of the pair
+	 * @param theSecond the instruction after it
+	 * @param theHandler the handler that executes both
+	 */
+	private DecodedInstruction(DecodedInstruction theFirst, DecodedInstruction theSecond, Handler theHandler) {
+		myWord = theFirst.myWord;
+		myOpCode = theFirst.myOpCode;
+		myDest = theFirst.myDest;
+		mySource1 = theFirst.mySource1;
+		mySource2 = theFirst.mySource2;
+		myImmediate = theFirst.myImmediate;
+		myOffset6 = theFirst.myOffset6;
+		myOffset9 = theFirst.myOffset9;
+		myOffset11 = theFirst.myOffset11;
+		myVector = theFirst.myVector;
+		myHandler = theHandler;
+		mySecond = theSecond;
+	}
+
+	/**
+	 * Fuses an instruction with the one after it into a superinstruction
+	 * if the two form one of the pairs above.
+	 * @param theFirst the decoded instruction
+	 * @param theNextWord the word at the next address
+	 * @return the superinstruction, or theFirst if the pair does not fuse
+	 */
+	static DecodedInstruction fuse(DecodedInstruction theFirst, int theNextWord) {
+		if (theFirst.myHandler != ADD_IMMEDIATE && theFirst.myHandler != AND_IMMEDIATE) {
+			return theFirst;
+		}
+		DecodedInstruction second = new DecodedInstruction(theNextWord);
+		if (theFirst.myHandler == ADD_IMMEDIATE && second.myHandler == BR) {
+			return new DecodedInstruction(theFirst, second, ADD_BR);
+		}
+		if (theFirst.myHandler == AND_IMMEDIATE && theFirst.myImmediate == 0
+				&& second.myHandler == ADD_IMMEDIATE
+				&& second.myDest == theFirst.myDest && second.mySource1 == theFirst.myDest) {
+			return new DecodedInstruction(theFirst, second, CLEAR_ADD);
+		}
+		return theFirst;
+	}
+
+	/**
+	 * @return the second instruction of a superinstruction, or null
+	 */
+	DecodedInstruction getSecond() {
+		return mySecond;
+	}
+
+	/**
+	 * @return bits [11:9]: DR, SR of a store or nzp of a branch
+	 */
+	int getDest() {
+		return myDest;
+	}
+
+	/**
+	 * @return bits [8:0], sign extended
+	 */
+	int getOffset9() {
+		return myOffset9;
+	}
+
+	/**
+	 * @return the loop this superinstruction closes, CountedLoop.NONE, or null
+	 */
+	CountedLoop getLoop() {
+		return myLoop;
+	}
+
+	/**
+	 * @param theLoop the loop this superinstruction closes, or CountedLoop.NONE
+	 */
+	void setLoop(CountedLoop theLoop) {
+		myLoop = theLoop;
+	}
+
+	/**
+	 * @return the number of instructions this executes: 2 for a superinstruction, otherwise 1
+	 */
+	int getLength() {
+		return mySecond == null ? 1 : 2;
+	}
+
+	/**
+	 * @param theOpCode the opcode, bits [15:12]
+	 * @param theImmediate true if bit [5] is set
+	 * @param theOffset true if bit [11] is set
+	 * @return the handler for that opcode
+	 */
+	private static Handler handlerFor(int theOpCode, boolean theImmediate, boolean theOffset) {
+		switch (theOpCode) {
+			case 0:  return BR;
+			case 1:  return theImmediate ? ADD_IMMEDIATE : ADD_REGISTER;
+			case 2:  return LD;
+			case 3:  return ST;
+			case 4:  return theOffset ? JSR : JSRR;
+			case 5:  return theImmediate ? AND_IMMEDIATE : AND_REGISTER;
+			case 6:  return LDR;
+			case 7:  return STR;
+			case 8:  return RTI;
+			case 9:  return NOT;
+			case 10: return LDI;
+			case 11: return STI;
+			case 12: return JMP;
+			case 14: return LEA;
+			case 15: return TRAP;
+			default: return ILLEGAL;
+		}
+	}
+
+	/**
+	 * @return the instruction word, 0 to 65535
+	 */
+	int getWord() {
+		return myWord;
+	}
+
+	/**
+	 * @return the opcode, bits [15:12]
+	 */
+	int getOpCode() {
+		return myOpCode;
+	}
+
+	/**
+	 * @return the register this instruction writes, or -1 if it writes none
+	 */
+	int getDestination() {
+		switch (myOpCode) {
+			case 1:
+			case 2:
+			case 5:
+			case 6:
+			case 9:
+			case 10:
+			case 14: return myDest;
+			case 4:  return 7;
+			case 15: return myVector == 0x20 || myVector == 0x23 ? 0 : -1;
+			default: return -1;
+		}
+	}
+
+	/**
+	 * Executes this instruction. The PC must already have been incremented.
+	 * @param theComputer the computer to execute on
+	 * @return true if the instruction halts the computer; false otherwise.
+	 */
+	boolean execute(Computer theComputer) {
+		return myHandler.execute(theComputer, this);
+	}
+}
@@ -0,0 +1,254 @@
+package simulator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The DeviceBus holds the LC-3's memory-mapped keyboard and display
+ * registers, and a timer, so programs can poll them with LDI and STI
+ * instead of using the I/O traps, or take interrupts from them:
+ *
+ * xFE00 KBSR - bit 15 is set while a character is waiting in KBDR
+ * xFE02 KBDR - reading it takes the waiting character
+ * xFE04 DSR  - bit 15 is set while the display can take a character
+ * xFE06 DDR  - writing it sends the low 8 bits to the display
+ * xFE08 TMR  - bit 15 is set when the timer has expired since TMR was last read
+ * xFE0A TMI  - the timer's interval in instructions; 0 stops it
+ *
+ * Bit 14 of KBSR, DSR and TMR is the interrupt enable bit, which programs
+ * may set and clear. The keyboard interrupts at priority 4 through vector
+ * x80 for as long as a character is waiting, and the timer at priority 6
+ * through vector x81 each time it expires. The display never interrupts.
+ * The other words from xFE00 to xFE0F read as 0 and ignore writes. The
+ * Computer sends every load and store in that range here and every other
+ * one to memory, with a single comparison.
+ *
+ * The keyboard and display are ByteRings, so host threads feed input and
+ * drain output while the program runs, without locks: one thread may call
+ * offerInput() and putInput(), and one thread pollOutput() and takeOutput().
+ * A character written to DDR while DSR is not ready is dropped, as it
+ * would be by a busy display.
+ *
+ * @version 1.2
+ */
+public final class DeviceBus {
+
+	/** The keyboard status register. */
+	public final static int KBSR = 0xFE00;
+	/** The keyboard data register. */
+	public final static int KBDR = 0xFE02;
+	/** The display status register. */
+	public final static int DSR = 0xFE04;
+	/** The display data register. */
+	public final static int DDR = 0xFE06;
+	/** The timer status register. */
+	public final static int TMR = 0xFE08;
+	/** The timer interval register. */
+	public final static int TMI = 0xFE0A;
+
+	/** The keyboard's interrupt vector. */
+	public final static int KEYBOARD_VECTOR = 0x80;
+	/** The keyboard's interrupt priority. */
+	public final static int KEYBOARD_PRIORITY = 4;
+	/** The timer's interrupt vector. */
+	public final static int TIMER_VECTOR = 0x81;
+	/** The timer's interrupt priority. */
+	public final static int TIMER_PRIORITY = 6;
+
+	/** The default size of the keyboard and display rings. */
+	public final static int DEFAULT_CAPACITY = 256;
+
+	/** The bits of an address that pick out the device registers' 16 words. */
+	private final static int MASK = 0xFFF0;
+
+	private final static int READY = 0x8000;
+	private final static int INTERRUPT_ENABLE = 0x4000;
+
+	private final ByteRing myKeyboard;
+	private final ByteRing myDisplay;
+	/** The last character taken from KBDR, which it reads as until the next one. */
+	private int myData;
+	private int myKeyboardEnable;
+	private int myDisplayEnable;
+	private int myTimerEnable;
+	/** READY once the timer has expired, until TMR is read or its interrupt is taken. */
+	private int myTimerExpired;
+	private int myTimerInterval;
+	/** Set when TMI is written, so the Computer starts the timer again. */
+	private boolean myTimerChanged;
+
+	/**
+	 * @param theCapacity the size of the keyboard and display rings, a power of 2
+	 */
+	DeviceBus(final int theCapacity) {
+		myKeyboard = new ByteRing(theCapacity);
+		myDisplay = new ByteRing(theCapacity);
+	}
+
+	/**
+	 * @param theAddress an address
+	 * @return true if theAddress is one of the words from xFE00 to xFE0F
+	 */
+	static boolean isMapped(final int theAddress) {
+		return (theAddress & MASK) == KBSR;
+	}
+
+	/**
+	 * Host: types a character on the keyboard.
+	 * @param theCharacter the character; only the low 8 bits are kept
+	 * @return false if the keyboard ring is full
+	 */
+	public boolean offerInput(final int theCharacter) {
+		return myKeyboard.offer(theCharacter);
+	}
+
+	/**
+	 * Host: types as many of the remaining bytes of theSource as fit.
+	 * @param theSource the characters, one per byte
+	 * @return the number typed
+	 */
+	public int putInput(final ByteBuffer theSource) {
+		return myKeyboard.put(theSource);
+	}
+
+	/**
+	 * Host: takes one character the program has written to DDR.
+	 * @return the character, 0 to 255, or -1 if there is none
+	 */
+	public int pollOutput() {
+		return myDisplay.poll();
+	}
+
+	/**
+	 * Host: takes as many characters the program has written as fit.
+	 * @param theTarget where to put the characters, one per byte
+	 * @return the number taken
+	 */
+	public int takeOutput(final ByteBuffer theTarget) {
+		return myDisplay.take(theTarget);
+	}
+
+	/**
+	 * @return true if keyboard interrupts are enabled
+	 */
+	boolean isKeyboardEnabled() {
+		return myKeyboardEnable != 0;
+	}
+
+	/**
+	 * @return true if keyboard interrupts are enabled and a character is waiting
+	 */
+	boolean isKeyboardRequest() {
+		return myKeyboardEnable != 0 && !myKeyboard.isEmpty();
+	}
+
+	/**
+	 * @return true if timer interrupts are enabled and the timer has expired
+	 */
+	boolean isTimerRequest() {
+		return myTimerEnable != 0 && myTimerExpired != 0;
+	}
+
+	/**
+	 * @return the timer's interval in instructions, 0 if it is stopped
+	 */
+	int getTimerInterval() {
+		return myTimerInterval;
+	}
+
+	/**
+	 * @return true if TMI has been written since this was last called
+	 */
+	boolean takeTimerChange() {
+		boolean changed = myTimerChanged;
+		myTimerChanged = false;
+		return changed;
+	}
+
+	/**
+	 * Computer: the timer's interval has gone by.
+	 */
+	void expireTimer() {
+		myTimerExpired = READY;
+	}
+
+	/**
+	 * Computer: the timer's interrupt has been taken.
+	 */
+	void acknowledgeTimer() {
+		myTimerExpired = 0;
+	}
+
+	/**
+	 * Computer: a load from a device register.
+	 * @param theAddress an address for which isMapped() is true
+	 * @return the 2s complement value of the register
+	 */
+	int read(final int theAddress) {
+		switch (theAddress) {
+			case KBSR:
+				return (short) ((myKeyboard.isEmpty() ? 0 : READY) | myKeyboardEnable);
+			case KBDR:
+				int character = myKeyboard.poll();
+				if (character >= 0) {
+					myData = character;
+				}
+				return myData;
+			case DSR:
+				return (short) ((myDisplay.isFull() ? 0 : READY) | myDisplayEnable);
+			case TMR:
+				int status = myTimerExpired | myTimerEnable;
+				myTimerExpired = 0;
+				return (short) status;
+			case TMI:
+				return (short) myTimerInterval;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Debugger: what read() would return now, without taking a key from
+	 * KBDR or clearing the timer's READY bit in TMR.
+	 * @param theAddress an address for which isMapped() is true
+	 * @return the 2s complement value of the register
+	 */
+	int peek(final int theAddress) {
+		switch (theAddress) {
+			case KBDR:
+				int character = myKeyboard.peek();
+				return character >= 0 ? character : myData;
+			case TMR:
+				return (short) (myTimerExpired | myTimerEnable);
+			default:
+				return read(theAddress);
+		}
+	}
+
+	/**
+	 * Computer: a store to a device register.
+	 * @param theAddress an address for which isMapped() is true
+	 * @param theValue the value stored; only the low 16 bits are used
+	 */
+	void write(final int theAddress, final int theValue) {
+		switch (theAddress) {
+			case KBSR:
+				myKeyboardEnable = theValue & INTERRUPT_ENABLE;
+				break;
+			case DSR:
+				myDisplayEnable = theValue & INTERRUPT_ENABLE;
+				break;
+			case DDR:
+				myDisplay.offer(theValue);
+				break;
+			case TMR:
+				myTimerEnable = theValue & INTERRUPT_ENABLE;
+				break;
+			case TMI:
+				myTimerInterval = theValue & 0xFFFF;
+				myTimerChanged = true;
+				break;
+			default:
+				break;
+		}
+	}
+}
@@ -0,0 +1,442 @@
+package simulator;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+/**
+ * The DifferentialFuzzer checks that an ExecutionEngine gives the same
+ * results as the REFERENCE engine, which decodes each instruction from the
+ * IR and carries it out with the Computer's execute methods, as execute()
+ * always has.
+ *
+ * Each case is a random program of valid instruction words followed by
+ * random data, with random input for GETC and IN. The program is loaded
+ * into two Computers, and both run it in the same random slices, mostly a
+ * single instruction and sometimes up to a few hundred, so that blocks,
+ * superinstructions and fast-forwarded loops get used as well. After each
+ * slice the status, instruction count, PC, IR, PSR, registers, output,
+ * display output and all of memory must match.
+ *
+ * The cases are spread over a work-stealing pool on every core. A program
+ * that fails is shrunk: runs of its words are removed, or else replaced
+ * with NOPs, halving the run each round, and then the fields of each word
+ * left are cleared one at a time, keeping every change that still fails.
+ *
+ * Usage: java simulator.DifferentialFuzzer [engine] [cases] [seed] [threads]
+ *
+ * @version 1.0
+ */
+public class DifferentialFuzzer {
+
+	/** The engine every other engine is compared with. */
+	public final static ExecutionEngine REFERENCE = ExecutionEngine.TABLE;
+
+	/** The number of cases run from the command line by default. */
+	public final static long DEFAULT_CASES = 1_000_000L;
+
+	/** The most failures shrunk and reported by one run. */
+	public final static int MAX_FAILURES = 10;
+
+	/** Where every program is loaded. */
+	private final static int ORIGIN = 0x3000;
+	private final static int MAX_CODE = 32;
+	private final static int DATA = 8;
+	private final static int MAX_INPUT = 4;
+	/** The most instructions one case runs. */
+	private final static long MAX_INSTRUCTIONS = 2000;
+	private final static int MAX_SLICE = 300;
+	private final static int NOP = 0x0000;
+
+	/** Opcodes to generate, repeated to weight them towards the common ones. */
+	private final static int[] OPCODES = {
+		0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 5, 5, 6, 6, 7, 7, 8, 9, 10, 11, 12, 13, 14, 15, 15
+	};
+	private final static int[] TRAPS = {0x20, 0x21, 0x22, 0x23, 0x24, 0x25};
+
+	/** The fields a word can be simplified by clearing, widest first. */
+	private final static int[] FIELDS = {0x07FF, 0x01FF, 0x0E00, 0x01C0, 0x003F, 0x0038, 0x0020, 0x001F, 0x0007};
+
+	private final ExecutionEngine myCandidate;
+	private final int myParallelism;
+
+	/**
+	 * Creates a fuzzer for an engine on every available core.
+	 * @param theCandidate the engine to compare with the REFERENCE
+	 */
+	public DifferentialFuzzer(final ExecutionEngine theCandidate) {
+		this(theCandidate, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param theCandidate the engine to compare with the REFERENCE
+	 * @param theParallelism the number of worker threads
+	 */
+	public DifferentialFuzzer(final ExecutionEngine theCandidate, final int theParallelism) {
+		if (theCandidate == null || theParallelism < 1) {
+			throw new IllegalArgumentException("Invalid engine or parallelism");
+		}
+		myCandidate = theCandidate;
+		myParallelism = theParallelism;
+	}
+
+	/**
+	 * Runs cases 0 to theCases - 1 of theSeed and waits for all of them. A
+	 * case depends only on the seed and its number, so a failure can be
+	 * generated again. After MAX_FAILURES failures the rest are skipped.
+	 * @param theSeed the seed the cases are generated from
+	 * @param theCases the number of cases
+	 * @return the failures, shrunk, in case order; empty if the engines agreed
+	 */
+	public List<FuzzFailure> run(final long theSeed, final long theCases) {
+		if (theCases < 0) {
+			throw new IllegalArgumentException("Invalid number of cases");
+		}
+		Queue<FuzzFailure> failures = new ConcurrentLinkedQueue<>();
+		AtomicInteger found = new AtomicInteger();
+		ForkJoinPool pool = new ForkJoinPool(myParallelism);
+		try {
+			pool.submit(() -> LongStream.range(0, theCases).parallel().forEach(index -> {
+				if (found.get() >= MAX_FAILURES) {
+					return;
+				}
+				Case generated = Case.generate(theSeed, index);
+				String message = compare(generated, myCandidate);
+				if (message != null && found.incrementAndGet() <= MAX_FAILURES) {
+					failures.add(shrink(generated, message));
+				}
+			})).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Fuzzing interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Fuzzing failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		List<FuzzFailure> sorted = new ArrayList<>(failures);
+		sorted.sort(Comparator.comparingLong(FuzzFailure::getCase));
+		return sorted;
+	}
+
+	/**
+	 * Runs one case on the REFERENCE and a candidate side by side.
+	 * @param theCase the case
+	 * @param theCandidate the engine to compare
+	 * @return the first difference, or null if there was none
+	 */
+	static String compare(final Case theCase, final ExecutionEngine theCandidate) {
+		CaptureOutput expectedOutput = new CaptureOutput();
+		CaptureOutput actualOutput = new CaptureOutput();
+		Computer expected = theCase.load(expectedOutput);
+		Computer actual = theCase.load(actualOutput);
+		StringBuilder expectedDisplay = new StringBuilder();
+		StringBuilder actualDisplay = new StringBuilder();
+		SplittableRandom slices = new SplittableRandom(theCase.mySliceSeed);
+		while (expected.getInstructionCount() < MAX_INSTRUCTIONS) {
+			long slice = slices.nextInt(4) == 0 ? slices.nextInt(2, MAX_SLICE) : 1;
+			RunStatus expectedStatus = expected.run(REFERENCE, slice);
+			RunStatus actualStatus;
+			try {
+				actualStatus = actual.run(theCandidate, slice);
+			} catch (LinkageError e) {
+				// compiled code that the JVM will not load
+				return "candidate threw " + e;
+			}
+			drain(expected, expectedDisplay);
+			drain(actual, actualDisplay);
+			String difference = difference(expected, expectedStatus, expectedOutput.toString(),
+					expectedDisplay, actual, actualStatus, actualOutput.toString(), actualDisplay);
+			if (difference != null) {
+				return "after " + expected.getInstructionCount() + " instructions, " + difference;
+			}
+			if (expectedStatus != RunStatus.BUDGET_EXHAUSTED) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the first difference between the two computers, or null if there is none
+	 */
+	private static String difference(final Computer theExpected, final RunStatus theExpectedStatus,
+			final String theExpectedOutput, final CharSequence theExpectedDisplay,
+			final Computer theActual, final RunStatus theActualStatus, final String theActualOutput,
+			final CharSequence theActualDisplay) {
+		if (theExpectedStatus != theActualStatus) {
+			return "status " + theActualStatus + ", expected " + theExpectedStatus
+					+ (theActual.getFault() == null ? "" : " (" + theActual.getFault() + ")");
+		}
+		if (theExpectedStatus == RunStatus.FAULTED
+				&& theExpected.getFault().getClass() != theActual.getFault().getClass()) {
+			return "fault " + theActual.getFault() + ", expected " + theExpected.getFault();
+		}
+		if (theExpected.getInstructionCount() != theActual.getInstructionCount()) {
+			return "count " + theActual.getInstructionCount() + ", expected " + theExpected.getInstructionCount();
+		}
+		String difference = differ("PC", theExpected.getPC().getUnsignedValue(), theActual.getPC().getUnsignedValue());
+		if (difference == null) {
+			difference = differ("IR", theExpected.getIR().getUnsignedValue(), theActual.getIR().getUnsignedValue());
+		}
+		if (difference == null) {
+			difference = differ("PSR", theExpected.getPSR().getUnsignedValue(), theActual.getPSR().getUnsignedValue());
+		}
+		for (int i = 0; i < 8 && difference == null; i++) {
+			difference = differ("R" + i, theExpected.register(i) & 0xFFFF, theActual.register(i) & 0xFFFF);
+		}
+		if (difference != null) {
+			return difference;
+		}
+		if (!theExpectedOutput.equals(theActualOutput)) {
+			return "output \"" + theActualOutput + "\", expected \"" + theExpectedOutput + "\"";
+		}
+		if (!theExpectedDisplay.toString().equals(theActualDisplay.toString())) {
+			return "display \"" + theActualDisplay + "\", expected \"" + theExpectedDisplay + "\"";
+		}
+		int address = theExpected.memoryMismatch(theActual);
+		if (address >= 0) {
+			return differ("memory[x" + hex(address) + "]", theExpected.memory(address) & 0xFFFF,
+					theActual.memory(address) & 0xFFFF);
+		}
+		return null;
+	}
+
+	private static String differ(final String theName, final int theExpected, final int theActual) {
+		return theExpected == theActual ? null
+				: theName + " x" + hex(theActual) + ", expected x" + hex(theExpected);
+	}
+
+	private static String hex(final int theValue) {
+		return Integer.toHexString(theValue).toUpperCase();
+	}
+
+	/**
+	 * Moves what a program wrote to DDR into theDisplay.
+	 */
+	private static void drain(final Computer theComputer, final StringBuilder theDisplay) {
+		for (int character = theComputer.getDevices().pollOutput(); character >= 0;
+				character = theComputer.getDevices().pollOutput()) {
+			theDisplay.append((char) character);
+		}
+	}
+
+	/**
+	 * Shrinks a failing case to a smaller program that still fails.
+	 * @param theCase the case
+	 * @param theMessage the difference it failed with
+	 * @return the failure, with the shrunk program
+	 */
+	private FuzzFailure shrink(final Case theCase, final String theMessage) {
+		Case smallest = theCase;
+		String message = theMessage;
+		for (int size = theCase.myWords.length / 2; size >= 1; size /= 2) {
+			int start = 0;
+			while (start + size <= smallest.myWords.length) {
+				int length = smallest.myWords.length;
+				if (size < length) {
+					// removing the run moves what follows, which may still fail
+					int[] words = new int[length - size];
+					System.arraycopy(smallest.myWords, 0, words, 0, start);
+					System.arraycopy(smallest.myWords, start + size, words, start, length - start - size);
+					Case smaller = smallest.with(words);
+					String failure = compare(smaller, myCandidate);
+					if (failure != null) {
+						smallest = smaller;
+						message = failure;
+						continue;
+					}
+				}
+				int[] words = smallest.myWords.clone();
+				Arrays.fill(words, start, start + size, NOP);
+				if (!Arrays.equals(words, smallest.myWords)) {
+					Case smaller = smallest.with(words);
+					String failure = compare(smaller, myCandidate);
+					if (failure != null) {
+						smallest = smaller;
+						message = failure;
+					}
+				}
+				start += size;
+			}
+		}
+		for (int i = 0; i < smallest.myWords.length; i++) {
+			for (int field : FIELDS) {
+				int[] words = smallest.myWords.clone();
+				words[i] &= ~field;
+				if (words[i] == smallest.myWords[i]) {
+					continue;
+				}
+				Case smaller = smallest.with(words);
+				String failure = compare(smaller, myCandidate);
+				if (failure != null) {
+					smallest = smaller;
+					message = failure;
+				}
+			}
+		}
+		// memory is 0 past the program anyway
+		int length = smallest.myWords.length;
+		while (length > 1 && smallest.myWords[length - 1] == NOP) {
+			length--;
+		}
+		return new FuzzFailure(theCase.myIndex, ORIGIN, Arrays.copyOf(smallest.myWords, length),
+				theCase.myInput, message, theCase.myWords.length);
+	}
+
+	/**
+	 * One generated program, with its input and how it is sliced.
+	 */
+	static final class Case {
+
+		private final long myIndex;
+		private final int[] myWords;
+		private final String myInput;
+		private final long mySliceSeed;
+
+		private Case(final long theIndex, final int[] theWords, final String theInput, final long theSliceSeed) {
+			myIndex = theIndex;
+			myWords = theWords;
+			myInput = theInput;
+			mySliceSeed = theSliceSeed;
+		}
+
+		/**
+		 * Generates case theIndex of theSeed.
+		 * @param theSeed the seed of the run
+		 * @param theIndex the number of the case
+		 * @return the case
+		 */
+		static Case generate(final long theSeed, final long theIndex) {
+			SplittableRandom random = new SplittableRandom(theSeed).split();
+			random = new SplittableRandom(random.nextLong() ^ (theIndex * 0x9E3779B97F4A7C15L));
+			int code = random.nextInt(1, MAX_CODE + 1);
+			int[] words = new int[code + DATA];
+			for (int i = 0; i < code; i++) {
+				words[i] = instruction(random, code);
+			}
+			for (int i = code; i < words.length; i++) {
+				words[i] = random.nextBoolean() ? random.nextInt(-16, 16) & 0xFFFF : random.nextInt(0x10000);
+			}
+			char[] input = new char[random.nextInt(MAX_INPUT + 1)];
+			for (int i = 0; i < input.length; i++) {
+				input[i] = (char) random.nextInt('a', 'z' + 1);
+			}
+			return new Case(theIndex, words, new String(input), random.nextLong());
+		}
+
+		/**
+		 * Generates a valid instruction word. PC-relative offsets mostly
+		 * stay within the program and its data.
+		 * @param theRandom the source of randomness
+		 * @param theCode the number of instructions in the program
+		 * @return the word
+		 */
+		private static int instruction(final SplittableRandom theRandom, final int theCode) {
+			int opCode = OPCODES[theRandom.nextInt(OPCODES.length)];
+			int dest = theRandom.nextInt(8) << 9;
+			int source = theRandom.nextInt(8) << 6;
+			int offset9 = theRandom.nextInt(-theCode, theCode + DATA) & 0x1FF;
+			switch (opCode) {
+				case 0: // BR, with any nzp
+					return dest | offset9;
+				case 1: // ADD
+				case 5: // AND
+					int operand = theRandom.nextBoolean() ? 0x20 | theRandom.nextInt(32) : theRandom.nextInt(8);
+					return opCode << 12 | dest | source | operand;
+				case 4: // JSR or JSRR
+					return theRandom.nextBoolean() ? 0x4800 | (theRandom.nextInt(-theCode, theCode) & 0x7FF)
+							: 0x4000 | source;
+				case 6: // LDR
+				case 7: // STR
+					return opCode << 12 | dest | source | theRandom.nextInt(64);
+				case 8: // RTI
+				case 13: // reserved
+					return opCode << 12;
+				case 9: // NOT
+					return 0x903F | dest | source;
+				case 12: // JMP, or RET
+					return 0xC000 | (theRandom.nextInt(4) == 0 ? 7 << 6 : source);
+				case 15: // TRAP
+					return 0xF000 | TRAPS[theRandom.nextInt(TRAPS.length)];
+				default: // LD, ST, LDI, STI, LEA
+					return opCode << 12 | dest | offset9;
+			}
+		}
+
+		/**
+		 * @param theWords other words for the program
+		 * @return this case with theWords
+		 */
+		Case with(final int[] theWords) {
+			return new Case(myIndex, theWords, myInput, mySliceSeed);
+		}
+
+		/**
+		 * @param theOutput where the program's traps write
+		 * @return a new Computer with the program loaded
+		 */
+		Computer load(final OutputDevice theOutput) {
+			short[] words = new short[myWords.length];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = (short) myWords[i];
+			}
+			Computer computer = new Computer(new StringInput(myInput), theOutput);
+			computer.loadProgram(new AssembledProgram(ORIGIN, words, Collections.emptyMap()));
+			return computer;
+		}
+	}
+
+	/**
+	 * Prints the failures found, each with its shrunk program.
+	 * @param theFailures the failures
+	 * @param theCases the number of cases run
+	 * @param theNanos the time the run took
+	 * @param theOut where to print
+	 */
+	static void printReport(final List<FuzzFailure> theFailures, final long theCases, final long theNanos,
+			final PrintStream theOut) {
+		for (FuzzFailure failure : theFailures) {
+			theOut.println(failure);
+		}
+		theOut.printf("%d cases, %d failed, %.0f cases/s%n", theCases, theFailures.size(),
+				theCases / Math.max(theNanos / 1e9, 1e-9));
+	}
+
+	/**
+	 * Fuzzes an engine from the command line, exiting with status 1 if it
+	 * disagreed with the REFERENCE.
+	 * @param theArgs optionally an engine name, a number of cases, a seed
+	 *                and a number of threads
+	 */
+	public static void main(final String[] theArgs) {
+		if (theArgs.length > 4) {
+			System.err.println("Usage: java simulator.DifferentialFuzzer [engine] [cases] [seed] [threads]");
+			System.exit(2);
+		}
+		ExecutionEngine engine = theArgs.length > 0
+				? ExecutionEngine.forName(theArgs[0]) : ExecutionEngine.DECODED;
+		long cases = theArgs.length > 1 ? Long.parseLong(theArgs[1]) : DEFAULT_CASES;
+		long seed = theArgs.length > 2 ? Long.parseLong(theArgs[2]) : System.nanoTime();
+		int threads = theArgs.length > 3
+				? Integer.parseInt(theArgs[3]) : Runtime.getRuntime().availableProcessors();
+
+		System.out.println("Seed " + seed);
+		long start = System.nanoTime();
+		List<FuzzFailure> failures = new DifferentialFuzzer(engine, threads).run(seed, cases);
+		printReport(failures, cases, System.nanoTime() - start, System.out);
+		if (!failures.isEmpty()) {
+			System.exit(1);
+		}
+	}
+}
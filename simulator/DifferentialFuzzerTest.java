@@ -0,0 +1,76 @@
+/*
+ * Unit tests for the DifferentialFuzzer class.
+ */
+
+package simulator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @version 1.0
+ */
+class DifferentialFuzzerTest {
+
+	/**
+	 * Test method for {@link simulator.DifferentialFuzzer#run(long, long)}. <br>
+	 * The engines agree with the reference on thousands of random programs.
+	 */
+	@Test
+	void testRun() {
+		for (ExecutionEngine engine : new ExecutionEngine[] {ExecutionEngine.DECODED, ExecutionEngine.JIT}) {
+			List<FuzzFailure> failures = new DifferentialFuzzer(engine, 4).run(371, 3000);
+			assertTrue(failures.isEmpty(), () -> failures.get(0).toString());
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.DifferentialFuzzer#run(long, long)}. <br>
+	 * An engine that gets NOT wrong is caught, and the program is shrunk
+	 * to little more than the NOT.
+	 */
+	@Test
+	void testRunFindsBrokenEngine() {
+		// runs the reference, then overwrites the result of each NOT as if it were LEA
+		ExecutionEngine broken = (theComputer, theBudget) -> {
+			for (long executed = 0; executed < theBudget; executed++) {
+				boolean stop = ExecutionEngine.TABLE.run(theComputer, 1);
+				if (theComputer.getIR().getUnsignedValue() >>> 12 == 9) {
+					theComputer.executeLoadEffectiveAddress();
+				}
+				if (stop) {
+					return true;
+				}
+			}
+			return false;
+		};
+
+		List<FuzzFailure> failures = new DifferentialFuzzer(broken, 2).run(5, 1000);
+
+		assertEquals(DifferentialFuzzer.MAX_FAILURES, failures.size());
+		for (FuzzFailure failure : failures) {
+			String[] program = failure.getProgram();
+			assertTrue(program.length <= 2, failure::toString);
+			assertTrue(program.length < failure.getOriginalLength());
+			assertTrue(Arrays.stream(program).anyMatch(line -> line.startsWith("1001")), failure::toString);
+			assertEquals(0x3000, failure.getOrigin());
+		}
+		assertTrue(failures.get(0).getCase() < failures.get(1).getCase());
+	}
+
+	/**
+	 * Test method for {@link simulator.DifferentialFuzzer#DifferentialFuzzer(ExecutionEngine, int)}.
+	 */
+	@Test
+	void testDifferentialFuzzerInvalid() {
+		assertThrows(IllegalArgumentException.class, () -> new DifferentialFuzzer(null, 1));
+		assertThrows(IllegalArgumentException.class,
+				() -> new DifferentialFuzzer(ExecutionEngine.DECODED, 0));
+		assertThrows(IllegalArgumentException.class,
+				() -> new DifferentialFuzzer(ExecutionEngine.DECODED).run(0, -1));
+	}
+}
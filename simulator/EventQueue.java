@@ -0,0 +1,110 @@
+package simulator;
+
+import java.util.Arrays;
+
+/**
+ * An EventQueue holds the instruction counts at which something needs the
+ * Computer's attention between instructions, such as the timer expiring.
+ * The Computer gives each engine a budget that ends at next(), so engines
+ * never look at devices themselves: with nothing scheduled, a program runs
+ * in one slice exactly as it did without interrupts.
+ *
+ * Each source has at most one event pending, and scheduling it again moves
+ * it. There are only a few sources, so the earliest is found again by a
+ * scan whenever one changes, and next() is a single field read.
+ *
+ * @version 1.0
+ */
+final class EventQueue {
+
+	/** The timer expires. */
+	final static int TIMER = 0;
+	/** The keyboard is looked at for a character, while its interrupt is enabled. */
+	final static int KEYBOARD = 1;
+	/** A pending interrupt is looked at again once an I/O trap has finished. */
+	final static int CHECK = 2;
+
+	/** Returned by next() when nothing is scheduled. */
+	final static long NEVER = Long.MAX_VALUE;
+
+	private final static int SOURCES = 3;
+
+	/** The instruction count each source's event is due at, or NEVER. */
+	private final long[] myCycles;
+	private long myNext;
+
+	/**
+	 * Creates a queue with nothing scheduled.
+	 */
+	EventQueue() {
+		myCycles = new long[SOURCES];
+		Arrays.fill(myCycles, NEVER);
+		myNext = NEVER;
+	}
+
+	/**
+	 * @return the instruction count the earliest event is due at, or NEVER
+	 */
+	long next() {
+		return myNext;
+	}
+
+	/**
+	 * @param theSource TIMER, KEYBOARD or CHECK
+	 * @return true if theSource has an event pending
+	 */
+	boolean isScheduled(final int theSource) {
+		return myCycles[theSource] != NEVER;
+	}
+
+	/**
+	 * Schedules theSource's event, replacing any it already has.
+	 * @param theSource TIMER, KEYBOARD or CHECK
+	 * @param theCycle the instruction count it is due at
+	 */
+	void schedule(final int theSource, final long theCycle) {
+		myCycles[theSource] = theCycle;
+		findNext();
+	}
+
+	/**
+	 * Removes theSource's event, if it has one.
+	 * @param theSource TIMER, KEYBOARD or CHECK
+	 */
+	void cancel(final int theSource) {
+		if (myCycles[theSource] != NEVER) {
+			myCycles[theSource] = NEVER;
+			findNext();
+		}
+	}
+
+	/**
+	 * Removes an event that is due.
+	 * @param theNow the instruction count now
+	 * @return the source of an event due at or before theNow, or -1 if none is
+	 */
+	int poll(final long theNow) {
+		if (myNext > theNow) {
+			return -1;
+		}
+		for (int source = 0; source < SOURCES; source++) {
+			if (myCycles[source] <= theNow) {
+				myCycles[source] = NEVER;
+				findNext();
+				return source;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Works out the earliest event after one was added, moved or removed.
+	 */
+	private void findNext() {
+		long next = NEVER;
+		for (long cycle : myCycles) {
+			next = Math.min(next, cycle);
+		}
+		myNext = next;
+	}
+}
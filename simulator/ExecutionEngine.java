@@ -0,0 +1,93 @@
+package simulator;
+
+import java.io.PrintStream;
+
+/**
+ * An ExecutionEngine runs the fetch/decode/execute loop of a Computer
+ * until a HALT instruction is encountered or its instruction budget is
+ * used up. Every engine gives the same
+ * results; they differ only in how instructions are dispatched, so they
+ * can be swapped to compare throughput.
+ *
+ * @version 1.6
+ */
+public interface ExecutionEngine {
+
+	/** Executes instructions from the decoded instruction cache. This is the default. */
+	ExecutionEngine DECODED = new DecodedEngine();
+
+	/** Decodes every instruction as it is fetched and dispatches on a 16 entry opcode table. */
+	ExecutionEngine TABLE = new TableEngine();
+
+	/** Interprets until a block gets hot, then runs it as compiled JVM bytecode. */
+	ExecutionEngine JIT = new JitEngine();
+
+	/**
+	 * Returns an engine that interprets instructions from the decoded
+	 * instruction cache, like DECODED, and records each one.
+	 * @param theRecorder the recorder to record into
+	 * @return the tracing engine
+	 */
+	static ExecutionEngine tracing(final TraceRecorder theRecorder) {
+		if (theRecorder == null) {
+			throw new IllegalArgumentException("Invalid trace recorder");
+		}
+		return new TracingEngine(theRecorder);
+	}
+
+	/**
+	 * Returns an engine that interprets instructions from the decoded
+	 * instruction cache, like DECODED, and counts each one.
+	 * @param theProfiler the profiler to count into
+	 * @return the profiling engine
+	 */
+	static ExecutionEngine profiling(final Profiler theProfiler) {
+		if (theProfiler == null) {
+			throw new IllegalArgumentException("Invalid profiler");
+		}
+		return new ProfilingEngine(theProfiler, null);
+	}
+
+	/**
+	 * Returns an engine that interprets instructions from the decoded
+	 * instruction cache, like DECODED, counts each one, and prints the
+	 * profiler's hotspot report when the program halts.
+	 * @param theProfiler the profiler to count into
+	 * @param theReport where to print the report
+	 * @return the profiling engine
+	 */
+	static ExecutionEngine profiling(final Profiler theProfiler, final PrintStream theReport) {
+		if (theProfiler == null || theReport == null) {
+			throw new IllegalArgumentException("Invalid profiler or report stream");
+		}
+		return new ProfilingEngine(theProfiler, theReport);
+	}
+
+	/**
+	 * Finds an engine by the name of its constant, for command line options.
+	 * @param theName DECODED, TABLE or JIT, in any case
+	 * @return the engine with that name
+	 */
+	static ExecutionEngine forName(final String theName) {
+		switch (theName.toUpperCase()) {
+			case "DECODED": return DECODED;
+			case "TABLE":   return TABLE;
+			case "JIT":     return JIT;
+			default: throw new IllegalArgumentException("Unknown engine: " + theName);
+		}
+	}
+
+	/**
+	 * Executes instructions starting at the PC until a HALT instruction is
+	 * encountered, a trap suspends to wait for input, an instruction stops
+	 * the engine, or theBudget instructions have executed, and adds the
+	 * number executed to the computer's instruction count. The Computer
+	 * ends theBudget at its next event, such as the timer expiring, so an
+	 * engine never looks for interrupts itself.
+	 * @param theComputer the computer to run.
+	 * @param theBudget the most instructions to execute.
+	 * @return true if a HALT instruction was executed, a trap suspended or
+	 *         an instruction stopped the engine; false if the budget ran out.
+	 */
+	boolean run(Computer theComputer, long theBudget);
+}
@@ -0,0 +1,101 @@
+package simulator;
+
+/**
+ * A FuzzFailure is a program on which the DifferentialFuzzer found an
+ * engine disagreeing with the reference, shrunk to as few instructions as
+ * still show a difference, with what it gives the program as input.
+ *
+ * @version 1.0
+ */
+public final class FuzzFailure {
+
+	private final long myCase;
+	private final int myOrigin;
+	private final int[] myWords;
+	private final String myInput;
+	private final String myMessage;
+	private final int myOriginalLength;
+
+	/**
+	 * @param theCase the number of the case that failed
+	 * @param theOrigin the address the program is loaded at
+	 * @param theWords the shrunk program
+	 * @param theInput the characters the program reads
+	 * @param theMessage the first difference, on the shrunk program
+	 * @param theOriginalLength the number of words before shrinking
+	 */
+	FuzzFailure(final long theCase, final int theOrigin, final int[] theWords, final String theInput,
+			final String theMessage, final int theOriginalLength) {
+		myCase = theCase;
+		myOrigin = theOrigin;
+		myWords = theWords;
+		myInput = theInput;
+		myMessage = theMessage;
+		myOriginalLength = theOriginalLength;
+	}
+
+	/**
+	 * @return the number of the case that failed, which run() with the same
+	 *         seed generates again
+	 */
+	public long getCase() {
+		return myCase;
+	}
+
+	/**
+	 * @return the address the program is loaded at
+	 */
+	public int getOrigin() {
+		return myOrigin;
+	}
+
+	/**
+	 * @return the shrunk program as one 16 bit binary word per line, ready
+	 *         for Computer.loadMachineCode or a BatchRunner program file
+	 */
+	public String[] getProgram() {
+		String[] lines = new String[myWords.length];
+		for (int i = 0; i < myWords.length; i++) {
+			String bits = Integer.toBinaryString(myWords[i] | 0x10000).substring(1);
+			lines[i] = bits.substring(0, 4) + " " + bits.substring(4);
+		}
+		return lines;
+	}
+
+	/**
+	 * @return the characters the program reads from GETC and IN
+	 */
+	public String getInput() {
+		return myInput;
+	}
+
+	/**
+	 * @return the first difference between the engines
+	 */
+	public String getMessage() {
+		return myMessage;
+	}
+
+	/**
+	 * @return the number of words the program had before it was shrunk
+	 */
+	public int getOriginalLength() {
+		return myOriginalLength;
+	}
+
+	/**
+	 * @return a report of the failure with the program, one word per line
+	 */
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append("Case ").append(myCase).append(": ").append(myMessage).append('\n');
+		report.append("// origin x").append(Integer.toHexString(myOrigin).toUpperCase());
+		report.append(", input \"").append(myInput).append("\", shrunk from ");
+		report.append(myOriginalLength).append(" words\n");
+		for (String line : getProgram()) {
+			report.append(line).append('\n');
+		}
+		return report.toString();
+	}
+}
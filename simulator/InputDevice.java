@@ -0,0 +1,35 @@
+package simulator;
+
+/**
+ * An InputDevice supplies the characters a Computer reads with the GETC
+ * and IN traps.
+ *
+ * A blocking device waits in read() for a character. A non-blocking one,
+ * such as a ChannelConsole, returns WOULD_BLOCK instead; the Computer then
+ * suspends the trap and asks the device with awaitInput() to say when to
+ * run it again.
+ *
+ * @version 1.1
+ */
+public interface InputDevice {
+
+	/** Returned by read() when no character has arrived yet but more may come. */
+	int WOULD_BLOCK = -2;
+
+	/**
+	 * Reads one character.
+	 * @return the character, -1 if there is no more input, or WOULD_BLOCK
+	 *         if a non-blocking device has no character yet
+	 */
+	int read();
+
+	/**
+	 * Asks to be told when read() may no longer return WOULD_BLOCK. The
+	 * wakeup is run once, on any thread. A blocking device never returns
+	 * WOULD_BLOCK, so by default the wakeup is run at once.
+	 * @param theWakeup what to run when input has arrived or ended
+	 */
+	default void awaitInput(final Runnable theWakeup) {
+		theWakeup.run();
+	}
+}
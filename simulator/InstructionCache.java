@@ -0,0 +1,91 @@
+package simulator;
+
+/**
+ * The InstructionCache holds one DecodedInstruction per memory address.
+ * An address is decoded the first time it is fetched and reused after that
+ * until the word at that address is written, which invalidates it.
+ *
+ * The entries are kept in pages of PAGE_SIZE addresses that are only
+ * allocated once code in them is fetched, so creating a Computer (or
+ * forking one from a snapshot) does not pay for the whole address space.
+ *
+ * A fusing cache decodes superinstructions: an address whose instruction
+ * fuses with the next one holds the pair, and writing either word drops
+ * it. Only the address of the first instruction holds the pair, so a jump
+ * to the second still finds it on its own.
+ *
+ * @version 1.2
+ */
+final class InstructionCache {
+
+	private final static int PAGE_BITS = 8;
+	private final static int PAGE_SIZE = 1 << PAGE_BITS;
+	private final static int PAGE_MASK = PAGE_SIZE - 1;
+
+	private final Memory myMemory;
+	private final DecodedInstruction[][] myPages;
+	private final boolean myFuse;
+
+	/**
+	 * @param theMemory the memory whose words are decoded
+	 */
+	InstructionCache(Memory theMemory) {
+		this(theMemory, false);
+	}
+
+	/**
+	 * @param theMemory the memory whose words are decoded
+	 * @param theFuse true to decode superinstructions
+	 */
+	InstructionCache(Memory theMemory, boolean theFuse) {
+		myMemory = theMemory;
+		myPages = new DecodedInstruction[Memory.SIZE >>> PAGE_BITS][];
+		myFuse = theFuse;
+	}
+
+	/**
+	 * Returns the decoded instruction at theAddress, decoding it if it is
+	 * not cached.
+	 * @param theAddress the address to fetch from
+	 * @return the decoded instruction
+	 */
+	DecodedInstruction get(int theAddress) {
+		DecodedInstruction[] page = myPages[theAddress >>> PAGE_BITS];
+		if (page == null) {
+			page = new DecodedInstruction[PAGE_SIZE];
+			myPages[theAddress >>> PAGE_BITS] = page;
+		}
+		DecodedInstruction instruction = page[theAddress & PAGE_MASK];
+		if (instruction == null) {
+			instruction = new DecodedInstruction(myMemory.read(theAddress));
+			if (myFuse) {
+				instruction = DecodedInstruction.fuse(instruction, myMemory.read((theAddress + 1) & 0xFFFF));
+			}
+			page[theAddress & PAGE_MASK] = instruction;
+		}
+		return instruction;
+	}
+
+	/**
+	 * Drops the cached decoding of theAddress; called whenever the
+	 * word at theAddress changes.
+	 * @param theAddress the address that was written
+	 */
+	void invalidate(int theAddress) {
+		drop(theAddress);
+		if (myFuse) {
+			// the address before may hold a superinstruction ending here
+			drop((theAddress - 1) & 0xFFFF);
+		}
+	}
+
+	/**
+	 * @param theAddress the address whose decoding is dropped
+	 */
+	private void drop(int theAddress) {
+		DecodedInstruction[] page = myPages[theAddress >>> PAGE_BITS];
+		if (page != null) {
+			page[theAddress & PAGE_MASK] = null;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package simulator;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The IoRecorder logs every character a Computer reads and writes with
+ * its traps, and the instruction count at which it did, so that the run
+ * can be played back later by an IoReplay without the console. It sits in
+ * front of the real devices: pass it to the Computer as both its input
+ * and its output device.
+ *
+ * The log starts with MAGIC, followed by one event per character: a kind
+ * byte, the instructions since the previous event and then the character,
+ * both as variable length integers of 7 bits per byte. An interactive
+ * session of a few thousand characters logs in a few kilobytes.
+ *
+ * @version 1.0
+ */
+public final class IoRecorder implements InputDevice, OutputDevice, TimedDevice, Closeable {
+
+	final static int MAGIC = 0x4C433349; // "LC3I"
+
+	/** The kinds of event. */
+	final static int INPUT = 0;
+	final static int OUTPUT = 1;
+	final static int END_OF_INPUT = 2;
+
+	private final InputDevice myInput;
+	private final OutputDevice myOutput;
+	private final DataOutputStream myLog;
+	private Computer myComputer;
+	private long myLast;
+
+	/**
+	 * Creates a recorder, replacing the log file if it exists.
+	 * @param theLog the log file
+	 * @param theInput the device input is really read from
+	 * @param theOutput the device output really goes to
+	 * @throws IOException if the log cannot be created
+	 */
+	public IoRecorder(final Path theLog, final InputDevice theInput, final OutputDevice theOutput)
+			throws IOException {
+		this(Files.newOutputStream(theLog), theInput, theOutput);
+	}
+
+	/**
+	 * @param theLog where to write the log; it is closed by close()
+	 * @param theInput the device input is really read from
+	 * @param theOutput the device output really goes to
+	 * @throws IOException if the log cannot be written
+	 */
+	public IoRecorder(final OutputStream theLog, final InputDevice theInput, final OutputDevice theOutput)
+			throws IOException {
+		if (theLog == null || theInput == null || theOutput == null) {
+			throw new IllegalArgumentException("Invalid log or device");
+		}
+		myInput = theInput;
+		myOutput = theOutput;
+		myLog = new DataOutputStream(new BufferedOutputStream(theLog));
+		myLog.writeInt(MAGIC);
+	}
+
+	@Override
+	public void attach(final Computer theComputer) {
+		if (myComputer != null && myComputer != theComputer) {
+			throw new IllegalArgumentException("The recorder already belongs to a Computer");
+		}
+		myComputer = theComputer;
+	}
+
+	@Override
+	public int read() {
+		int character = myInput.read();
+		if (character != WOULD_BLOCK) {
+			log(character < 0 ? END_OF_INPUT : INPUT, character);
+		}
+		return character;
+	}
+
+	@Override
+	public void awaitInput(final Runnable theWakeup) {
+		myInput.awaitInput(theWakeup);
+	}
+
+	@Override
+	public void write(final char theCharacter) {
+		log(OUTPUT, theCharacter);
+		myOutput.write(theCharacter);
+	}
+
+	/**
+	 * Flushes the output device and the log, so that the log is complete
+	 * up to here even if the process dies.
+	 */
+	@Override
+	public void flush() {
+		myOutput.flush();
+		try {
+			myLog.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes the log. The devices are not closed.
+	 * @throws IOException if the log cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		myLog.close();
+	}
+
+	/**
+	 * @param theKind INPUT, OUTPUT or END_OF_INPUT
+	 * @param theCharacter the character, ignored for END_OF_INPUT
+	 */
+	private void log(final int theKind, final int theCharacter) {
+		if (myComputer == null) {
+			throw new IllegalStateException("The recorder does not belong to a Computer");
+		}
+		long count = myComputer.getInstructionCount();
+		try {
+			myLog.writeByte(theKind);
+			writeVariable(myLog, count - myLast);
+			if (theKind != END_OF_INPUT) {
+				writeVariable(myLog, theCharacter);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		myLast = count;
+	}
+
+	/**
+	 * Writes a non-negative number 7 bits at a time, low bits first, with
+	 * the top bit of each byte set if more bytes follow.
+	 * @param theOut where to write it
+	 * @param theValue the number
+	 * @throws IOException if it cannot be written
+	 */
+	private static void writeVariable(final DataOutputStream theOut, final long theValue) throws IOException {
+		long value = theValue;
+		while (value >= 0x80) {
+			theOut.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		theOut.writeByte((int) value);
+	}
+}
@@ -0,0 +1,224 @@
+package simulator;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The IoReplay plays back a log written by an IoRecorder: pass it to a
+ * fresh Computer as both its input and its output device, load the same
+ * program and run it. Each read gets the recorded input at once, with no
+ * console, and each character written is checked against the recorded
+ * output. The first difference, in a character or in the instruction
+ * count it happened at, throws an IllegalStateException saying where the
+ * run diverged; a run() returns FAULTED with it.
+ *
+ * @version 1.0
+ */
+public final class IoReplay implements InputDevice, OutputDevice, TimedDevice {
+
+	private byte[] myKinds;
+	private long[] myCounts;
+	private int[] myCharacters;
+	private int myLength;
+	private int myNext;
+	private Computer myComputer;
+
+	/**
+	 * Reads a log file.
+	 * @param theLog the log file
+	 * @throws IOException if the log cannot be read
+	 */
+	public IoReplay(final Path theLog) throws IOException {
+		this(Files.newInputStream(theLog));
+	}
+
+	/**
+	 * Reads a log, and closes the stream.
+	 * @param theLog the log
+	 * @throws IOException if the log cannot be read
+	 */
+	public IoReplay(final InputStream theLog) throws IOException {
+		if (theLog == null) {
+			throw new IllegalArgumentException("Invalid log");
+		}
+		myKinds = new byte[64];
+		myCounts = new long[64];
+		myCharacters = new int[64];
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(theLog))) {
+			if (in.readInt() != IoRecorder.MAGIC) {
+				throw new IllegalArgumentException("Invalid I/O log");
+			}
+			long count = 0;
+			for (int kind = in.read(); kind >= 0; kind = in.read()) {
+				if (kind > IoRecorder.END_OF_INPUT) {
+					throw new IllegalArgumentException("Invalid I/O log");
+				}
+				count += readVariable(in);
+				add(kind, count, kind == IoRecorder.END_OF_INPUT ? -1 : (int) readVariable(in));
+			}
+		} catch (EOFException e) {
+			throw new IllegalArgumentException("Invalid I/O log", e);
+		}
+	}
+
+	@Override
+	public void attach(final Computer theComputer) {
+		if (myComputer != null && myComputer != theComputer) {
+			throw new IllegalArgumentException("The replay already belongs to a Computer");
+		}
+		myComputer = theComputer;
+	}
+
+	@Override
+	public int read() {
+		int event = expect(IoRecorder.INPUT, '\0');
+		return myCharacters[event];
+	}
+
+	@Override
+	public void write(final char theCharacter) {
+		int event = expect(IoRecorder.OUTPUT, theCharacter);
+		if (myCharacters[event] != theCharacter) {
+			throw diverged("expected output " + quote((char) myCharacters[event]) + " but the program wrote "
+					+ quote(theCharacter));
+		}
+	}
+
+	@Override
+	public void flush() {
+		// nothing is written anywhere
+	}
+
+	/**
+	 * @return the number of events in the log
+	 */
+	public int getEventCount() {
+		return myLength;
+	}
+
+	/**
+	 * @return true if every event in the log has been played back
+	 */
+	public boolean isComplete() {
+		return myNext == myLength;
+	}
+
+	/**
+	 * Checks that the run did everything in the log, as a run that halted
+	 * early would not.
+	 */
+	public void finish() {
+		if (!isComplete()) {
+			throw diverged("the program stopped before " + describe(myNext));
+		}
+	}
+
+	/**
+	 * Moves on to the next event, which must be of the kind the program did
+	 * and at the same instruction count.
+	 * @param theKind INPUT or OUTPUT; INPUT also accepts END_OF_INPUT
+	 * @param theCharacter the character written, for the message
+	 * @return the index of the event
+	 */
+	private int expect(final int theKind, final char theCharacter) {
+		if (myComputer == null) {
+			throw new IllegalStateException("The replay does not belong to a Computer");
+		}
+		if (myNext == myLength) {
+			throw diverged("the log has ended but the program " + action(theKind, theCharacter));
+		}
+		int kind = myKinds[myNext];
+		boolean input = kind == IoRecorder.INPUT || kind == IoRecorder.END_OF_INPUT;
+		if (input != (theKind == IoRecorder.INPUT)) {
+			throw diverged("expected " + describe(myNext) + " but the program "
+					+ action(theKind, theCharacter));
+		}
+		if (myCounts[myNext] != myComputer.getInstructionCount()) {
+			throw diverged("expected " + describe(myNext) + " at instruction " + myCounts[myNext]);
+		}
+		return myNext++;
+	}
+
+	/**
+	 * @param theKind INPUT or OUTPUT
+	 * @param theCharacter the character written
+	 * @return what the program did, in words
+	 */
+	private static String action(final int theKind, final char theCharacter) {
+		return theKind == IoRecorder.INPUT ? "read input" : "wrote " + quote(theCharacter);
+	}
+
+	/**
+	 * @param theMessage how the run differs from the log
+	 * @return the exception to throw
+	 */
+	private IllegalStateException diverged(final String theMessage) {
+		return new IllegalStateException("Replay diverged at instruction "
+				+ (myComputer == null ? 0 : myComputer.getInstructionCount()) + ": " + theMessage);
+	}
+
+	/**
+	 * @param theEvent the index of an event
+	 * @return the event in words
+	 */
+	private String describe(final int theEvent) {
+		switch (myKinds[theEvent]) {
+			case IoRecorder.INPUT:
+				return "input " + quote((char) myCharacters[theEvent]);
+			case IoRecorder.OUTPUT:
+				return "output " + quote((char) myCharacters[theEvent]);
+			default:
+				return "the end of input";
+		}
+	}
+
+	/**
+	 * @param theCharacter a character
+	 * @return the character in quotes, or its code if it cannot be printed
+	 */
+	private static String quote(final char theCharacter) {
+		return theCharacter >= ' ' && theCharacter < 0x7F ? "'" + theCharacter + "'"
+				: String.format("x%02X", (int) theCharacter);
+	}
+
+	/**
+	 * @param theKind the kind of event
+	 * @param theCount the instruction count it happened at
+	 * @param theCharacter its character, or -1
+	 */
+	private void add(final int theKind, final long theCount, final int theCharacter) {
+		if (myLength == myKinds.length) {
+			myKinds = Arrays.copyOf(myKinds, myLength * 2);
+			myCounts = Arrays.copyOf(myCounts, myLength * 2);
+			myCharacters = Arrays.copyOf(myCharacters, myLength * 2);
+		}
+		myKinds[myLength] = (byte) theKind;
+		myCounts[myLength] = theCount;
+		myCharacters[myLength] = theCharacter;
+		myLength++;
+	}
+
+	/**
+	 * Reads a number written by IoRecorder.writeVariable.
+	 * @param theIn where to read it
+	 * @return the number
+	 * @throws IOException if it cannot be read
+	 */
+	private static long readVariable(final DataInputStream theIn) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = theIn.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if (b < 0x80) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Invalid I/O log");
+	}
+}
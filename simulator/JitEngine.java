@@ -0,0 +1,48 @@
+package simulator;
+
+/**
+ * The JitEngine interprets instructions from the decoded instruction cache
+ * until a block leader becomes hot, then runs the BlockCompiler's bytecode
+ * for that block instead of interpreting it one instruction at a time.
+ *
+ * @version 1.2
+ */
+final class JitEngine implements ExecutionEngine {
+
+	@Override
+	public boolean run(final Computer theComputer, final long theBudget) {
+		BlockCache blocks = theComputer.getBlockCache();
+		boolean leader = true;
+		long executed = 0;
+		try {
+			while (executed < theBudget) {
+				if (leader) {
+					int pc = theComputer.getPCAddress();
+					CompiledBlock block = blocks.enter(pc);
+					// a block never halts, so it only runs if the budget covers all of it
+					int length = blocks.getLength(pc);
+					if (block != null && length <= theBudget - executed) {
+						theComputer.setPCAddress(block.run(theComputer));
+						executed += length;
+						// a store to a device register can only be the last instruction of a block
+						if (theComputer.needsRecheck()) {
+							return true;
+						}
+						continue;
+					}
+				}
+				DecodedInstruction instruction = theComputer.fetchDecoded();
+				boolean halt = instruction.execute(theComputer);
+				executed++;
+				if (halt) {
+					return true;
+				}
+				// anything that can end a block starts a new one after it
+				leader = !BlockCompiler.isStraightLine(instruction.getOpCode());
+			}
+			return false;
+		} finally {
+			theComputer.retire(executed);
+		}
+	}
+}
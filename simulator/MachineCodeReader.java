@@ -0,0 +1,108 @@
+package simulator;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The MachineCodeReader parses machine code text one word at a time: one
+ * 16 bit word per line, written as 0s and 1s, as in Simulator.main.
+ * Spaces and tabs are ignored, anything after // is a comment, and lines
+ * with no bits are skipped.
+ *
+ * The text is read through a fixed buffer without building a String per
+ * line, so the memory used does not depend on the length of the text.
+ *
+ * @version 1.0
+ */
+final class MachineCodeReader {
+
+	private final static int BUFFER_SIZE = 8192;
+
+	private final Reader myReader;
+	private final char[] myBuffer;
+	private int myPosition;
+	private int myLimit;
+	/** The number of the line being read, counting from 1. */
+	private int myLine;
+	/** The number of the line the last word was on. */
+	private int myWordLine;
+
+	/**
+	 * @param theReader the text to parse
+	 */
+	MachineCodeReader(Reader theReader) {
+		myReader = theReader;
+		myBuffer = new char[BUFFER_SIZE];
+		myLine = 1;
+	}
+
+	/**
+	 * Parses the next word.
+	 * @return the word, 0 to 65535, or -1 at the end of the text
+	 * @throws IOException if the text cannot be read
+	 * @throws IllegalArgumentException if a line is not a 16 bit word,
+	 *         with the line number in the message
+	 */
+	int next() throws IOException {
+		int word = 0;
+		int bits = 0;
+		boolean comment = false;
+		while (true) {
+			int c = read();
+			if (c == '\n' || c == -1) {
+				myWordLine = myLine++;
+				if (bits == 16) {
+					return word & 0xFFFF;
+				}
+				if (bits != 0) {
+					throw error(myWordLine, "expected 16 bits but found " + bits);
+				}
+				if (c == -1) {
+					return -1;
+				}
+				comment = false;
+			} else if (comment) {
+				continue;
+			} else if (c == '0' || c == '1') {
+				word = word << 1 | (c - '0');
+				bits++;
+			} else if (c == '/' && read() == '/') {
+				comment = true;
+			} else if (c != ' ' && c != '\t' && c != '\r') {
+				throw error(myLine, "invalid character '" + (char) c + "'");
+			}
+		}
+	}
+
+	/**
+	 * @return the number of the line the last word returned by next() was on
+	 */
+	int getLine() {
+		return myWordLine;
+	}
+
+	/**
+	 * @return the next character, or -1 at the end of the text
+	 * @throws IOException if the text cannot be read
+	 */
+	private int read() throws IOException {
+		if (myPosition == myLimit) {
+			int count = myReader.read(myBuffer, 0, myBuffer.length);
+			if (count <= 0) {
+				return -1;
+			}
+			myPosition = 0;
+			myLimit = count;
+		}
+		return myBuffer[myPosition++];
+	}
+
+	/**
+	 * @param theLine the line number
+	 * @param theMessage what is wrong with the line
+	 * @return the exception to throw
+	 */
+	private static IllegalArgumentException error(int theLine, String theMessage) {
+		return new IllegalArgumentException("Line " + theLine + ": " + theMessage);
+	}
+}
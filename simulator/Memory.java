@@ -0,0 +1,145 @@
+package simulator;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * The Memory class holds the full LC-3 address space: 65,536 words of
+ * 16 bits each, stored as packed shorts (128 KB) rather than as one
+ * BitString object per word.
+ *
+ * The words are kept in pages of PAGE_SIZE words that are copied on
+ * write. A new memory shares one all-zero page everywhere, and a snapshot
+ * shares every page with the memory it was taken from, so both only pay
+ * for the pages that are written afterwards.
+ *
+ * Addresses passed in must already be in the range 0 to SIZE - 1;
+ * callers wrap address arithmetic to 16 bits.
+ *
+ * @version 1.3
+ */
+class Memory {
+
+	/** The number of addressable words. */
+	final static int SIZE = 1 << 16;
+
+	private final static int PAGE_BITS = 8;
+	private final static int PAGE_SIZE = 1 << PAGE_BITS;
+	private final static int PAGE_MASK = PAGE_SIZE - 1;
+	private final static int PAGES = SIZE >>> PAGE_BITS;
+
+	/** Shared by every memory for the pages it has not written. Never written. */
+	private final static short[] ZERO_PAGE = new short[PAGE_SIZE];
+
+	private final short[][] myPages;
+	/** True for the pages only this memory refers to, which it may write in place. */
+	private final boolean[] myOwned;
+	/** The indexes of the owned pages, so a snapshot only visits those. */
+	private final int[] myOwnedList;
+	private int myOwnedCount;
+
+	/**
+	 * Creates a memory with every word set to 0.
+	 */
+	Memory() {
+		myPages = new short[PAGES][];
+		for (int i = 0; i < PAGES; i++) {
+			myPages[i] = ZERO_PAGE;
+		}
+		myOwned = new boolean[PAGES];
+		myOwnedList = new int[PAGES];
+	}
+
+	/**
+	 * Creates a memory with the contents of a snapshot.
+	 * @param theSnapshot pages returned by snapshot()
+	 */
+	Memory(short[][] theSnapshot) {
+		myPages = theSnapshot.clone();
+		myOwned = new boolean[PAGES];
+		myOwnedList = new int[PAGES];
+	}
+
+	/**
+	 * Returns the word at the given address.
+	 * @param theAddress the address to read
+	 * @return the 2s complement value of the word
+	 */
+	int read(int theAddress) {
+		return myPages[theAddress >>> PAGE_BITS][theAddress & PAGE_MASK];
+	}
+
+	/**
+	 * Writes the low 16 bits of theValue to the given address, first
+	 * copying its page if the page is shared.
+	 * @param theAddress the address to write
+	 * @param theValue the value to store; only the low 16 bits are kept
+	 */
+	void write(int theAddress, int theValue) {
+		int page = theAddress >>> PAGE_BITS;
+		if (!myOwned[page]) {
+			own(page);
+		}
+		myPages[page][theAddress & PAGE_MASK] = (short) theValue;
+	}
+
+	/**
+	 * Copies the remaining words of theWords into memory starting at
+	 * theAddress, a page at a time.
+	 * @param theAddress the address of the first word
+	 * @param theWords the words; they must fit below SIZE
+	 */
+	void load(int theAddress, ShortBuffer theWords) {
+		int address = theAddress;
+		while (theWords.hasRemaining()) {
+			int page = address >>> PAGE_BITS;
+			int offset = address & PAGE_MASK;
+			int count = Math.min(PAGE_SIZE - offset, theWords.remaining());
+			if (!myOwned[page]) {
+				own(page);
+			}
+			theWords.get(myPages[page], offset, count);
+			address += count;
+		}
+	}
+
+	/**
+	 * Gives this memory its own copy of a shared page so it can be written.
+	 * @param thePage the index of the page
+	 */
+	private void own(int thePage) {
+		myPages[thePage] = myPages[thePage].clone();
+		myOwned[thePage] = true;
+		myOwnedList[myOwnedCount++] = thePage;
+	}
+
+	/**
+	 * Compares the contents with another memory. Pages the two still share,
+	 * such as the zero page, are skipped without looking at their words.
+	 * @param theOther the memory to compare with
+	 * @return the first address whose words differ, or -1 if none does
+	 */
+	int mismatch(Memory theOther) {
+		for (int page = 0; page < PAGES; page++) {
+			int offset = Arrays.mismatch(myPages[page], theOther.myPages[page]);
+			if (offset >= 0) {
+				return (page << PAGE_BITS) + offset;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Freezes the current contents. The pages written since the last
+	 * snapshot become shared, so this memory copies them again before
+	 * its next write to each one.
+	 * @return the pages, which must never be written
+	 */
+	short[][] snapshot() {
+		for (int i = 0; i < myOwnedCount; i++) {
+			myOwned[myOwnedList[i]] = false;
+		}
+		myOwnedCount = 0;
+		return myPages.clone();
+	}
+}
@@ -0,0 +1,62 @@
+package simulator;
+
+/**
+ * A MemoryView is a read-only window onto a range of a Computer's memory,
+ * from Computer.memory(int, int). It reads the live words each time it is
+ * asked, so it copies nothing and always shows the memory as it is now.
+ *
+ * @version 1.0
+ */
+public final class MemoryView {
+
+	private final Memory myMemory;
+	private final int myStart;
+	private final int myLength;
+
+	/**
+	 * @param theMemory the memory to read
+	 * @param theStart the address of the first word in the view
+	 * @param theLength the number of words in the view
+	 */
+	MemoryView(final Memory theMemory, final int theStart, final int theLength) {
+		myMemory = theMemory;
+		myStart = theStart;
+		myLength = theLength;
+	}
+
+	/**
+	 * @return the address of the first word in the view
+	 */
+	public int getStart() {
+		return myStart;
+	}
+
+	/**
+	 * @return the number of words in the view
+	 */
+	public int getLength() {
+		return myLength;
+	}
+
+	/**
+	 * @param theIndex the index of a word in the view, 0 to getLength() - 1
+	 * @return the 2s complement value of the word at getStart() + theIndex
+	 */
+	public int get(final int theIndex) {
+		if (theIndex < 0 || theIndex >= myLength) {
+			throw new IllegalArgumentException("Invalid index: " + theIndex);
+		}
+		return myMemory.read(myStart + theIndex);
+	}
+
+	/**
+	 * @return a copy of the words in the view as they are now
+	 */
+	public int[] toArray() {
+		int[] words = new int[myLength];
+		for (int i = 0; i < myLength; i++) {
+			words[i] = myMemory.read(myStart + i);
+		}
+		return words;
+	}
+}
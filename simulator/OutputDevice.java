@@ -0,0 +1,20 @@
+package simulator;
+
+/**
+ * An OutputDevice receives the characters a Computer prints with the OUT trap.
+ *
+ * @version 1.0
+ */
+public interface OutputDevice {
+
+	/**
+	 * Outputs one character. It may be held in a buffer until flush is called.
+	 * @param theCharacter the character to output
+	 */
+	void write(char theCharacter);
+
+	/**
+	 * Pushes out any buffered characters. The Computer calls this on HALT.
+	 */
+	void flush();
+}
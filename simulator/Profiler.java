@@ -0,0 +1,165 @@
+package simulator;
+
+import java.io.PrintStream;
+
+/**
+ * The Profiler counts where a program spends its time: the instructions
+ * retired per opcode and per PC address, and for each branch how often it
+ * was taken and not taken. A program is profiled by executing it with
+ * ExecutionEngine.profiling(profiler); the counters add up over every run
+ * with the same profiler, and report() prints the hotspots. Executing it
+ * with ExecutionEngine.profiling(profiler, stream) prints them there at
+ * HALT, and java simulator.Simulator --profile prints them after the run.
+ *
+ * The counters are plain long arrays indexed by opcode or address, so
+ * counting an instruction is a few array increments.
+ *
+ * @version 1.1
+ */
+public final class Profiler {
+
+	/** The number of hotspots report() lists. */
+	public final static int DEFAULT_HOTSPOTS = 10;
+
+	private final static String[] OPCODE_NAMES = {
+		"BR", "ADD", "LD", "ST", "JSR", "AND", "LDR", "STR",
+		"RTI", "NOT", "LDI", "STI", "JMP", "RES", "LEA", "TRAP"
+	};
+
+	private final long[] myOpCodes;
+	private final long[] myAddresses;
+	private final long[] myTaken;
+	private final long[] myNotTaken;
+	private long myTotal;
+
+	/**
+	 * Creates a profiler with every counter at 0.
+	 */
+	public Profiler() {
+		myOpCodes = new long[OPCODE_NAMES.length];
+		myAddresses = new long[Memory.SIZE];
+		myTaken = new long[Memory.SIZE];
+		myNotTaken = new long[Memory.SIZE];
+	}
+
+	/**
+	 * Counts a retired instruction.
+	 * @param thePC the address it was fetched from
+	 * @param theOpCode its opcode
+	 */
+	void retire(final int thePC, final int theOpCode) {
+		myOpCodes[theOpCode]++;
+		myAddresses[thePC]++;
+		myTotal++;
+	}
+
+	/**
+	 * Counts the outcome of a branch.
+	 * @param thePC the address of the branch
+	 * @param theTaken true if it branched
+	 */
+	void branch(final int thePC, final boolean theTaken) {
+		if (theTaken) {
+			myTaken[thePC]++;
+		} else {
+			myNotTaken[thePC]++;
+		}
+	}
+
+	/**
+	 * @return the number of instructions retired
+	 */
+	public long getTotal() {
+		return myTotal;
+	}
+
+	/**
+	 * @param theOpCode an opcode, 0 to 15
+	 * @return the number of instructions retired with that opcode
+	 */
+	public long getOpCodeCount(final int theOpCode) {
+		return myOpCodes[theOpCode];
+	}
+
+	/**
+	 * @param theAddress an address, 0 to 65535
+	 * @return the number of instructions retired from that address
+	 */
+	public long getAddressCount(final int theAddress) {
+		return myAddresses[theAddress];
+	}
+
+	/**
+	 * @param theAddress the address of a branch
+	 * @return the number of times it branched
+	 */
+	public long getTakenCount(final int theAddress) {
+		return myTaken[theAddress];
+	}
+
+	/**
+	 * @param theAddress the address of a branch
+	 * @return the number of times it fell through
+	 */
+	public long getNotTakenCount(final int theAddress) {
+		return myNotTaken[theAddress];
+	}
+
+	/**
+	 * Prints the instructions retired per opcode and the DEFAULT_HOTSPOTS
+	 * addresses that retired the most.
+	 * @param theOut where to print the report
+	 */
+	public void report(final PrintStream theOut) {
+		report(theOut, DEFAULT_HOTSPOTS);
+	}
+
+	/**
+	 * Prints the instructions retired per opcode and the addresses that
+	 * retired the most, with the taken and not taken counts of branches.
+	 * @param theOut where to print the report
+	 * @param theHotspots the number of addresses to list
+	 */
+	public void report(final PrintStream theOut, final int theHotspots) {
+		theOut.printf("%d instructions retired%n", myTotal);
+		theOut.printf("%-6s%14s%8s%n", "opcode", "count", "%");
+		for (int op = 0; op < myOpCodes.length; op++) {
+			if (myOpCodes[op] > 0) {
+				theOut.printf("%-6s%14d%8.1f%n", OPCODE_NAMES[op], myOpCodes[op], percent(myOpCodes[op]));
+			}
+		}
+
+		theOut.printf("%-6s%14s%8s%14s%14s%n", "PC", "count", "%", "taken", "not taken");
+		// Picks the next largest count each time, so nothing is sorted or boxed
+		long previous = Long.MAX_VALUE;
+		int previousAddress = -1;
+		for (int n = 0; n < theHotspots; n++) {
+			int best = -1;
+			for (int address = 0; address < myAddresses.length; address++) {
+				long count = myAddresses[address];
+				boolean after = count < previous || count == previous && address > previousAddress;
+				if (count > 0 && after && (best < 0 || count > myAddresses[best])) {
+					best = address;
+				}
+			}
+			if (best < 0) {
+				break;
+			}
+			theOut.printf("x%04X %14d%8.1f", best, myAddresses[best], percent(myAddresses[best]));
+			if (myTaken[best] + myNotTaken[best] > 0) {
+				theOut.printf("%14d%14d", myTaken[best], myNotTaken[best]);
+			}
+			theOut.println();
+			previous = myAddresses[best];
+			previousAddress = best;
+		}
+	}
+
+	/**
+	 * @param theCount a number of instructions
+	 * @return theCount as a percentage of all retired instructions
+	 */
+	private double percent(final long theCount) {
+		return 100.0 * theCount / myTotal;
+	}
+}
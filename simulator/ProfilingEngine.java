@@ -0,0 +1,62 @@
+package simulator;
+
+import java.io.PrintStream;
+
+/**
+ * The ProfilingEngine executes each instruction from the Computer's decoded
+ * instruction cache, as the DecodedEngine does, and counts it in a
+ * Profiler. Given a stream, it prints the Profiler's report there when the
+ * program halts.
+ *
+ * @version 1.3
+ */
+final class ProfilingEngine implements ExecutionEngine {
+
+	/** The trap vector of HALT. */
+	private final static int HALT = 0x25;
+
+	private final Profiler myProfiler;
+	private final PrintStream myReport;
+
+	/**
+	 * @param theProfiler the profiler to count into
+	 * @param theReport where to print the report at HALT, or null not to print it
+	 */
+	ProfilingEngine(final Profiler theProfiler, final PrintStream theReport) {
+		myProfiler = theProfiler;
+		myReport = theReport;
+	}
+
+	@Override
+	public boolean run(final Computer theComputer, final long theBudget) {
+		long executed = 0;
+		try {
+			while (executed < theBudget) {
+				int pc = theComputer.getPCAddress();
+				DecodedInstruction instruction = theComputer.fetchDecoded();
+				int opCode = instruction.getOpCode();
+				if (opCode == 0) {
+					// A branch does not change the CC, so it can be tested first
+					int nzp = (instruction.getWord() >>> 9) & 0x7;
+					myProfiler.branch(pc, (nzp & theComputer.getConditionBits()) != 0);
+				}
+				boolean halt = instruction.execute(theComputer);
+				executed++;
+				if (halt && theComputer.wasRewound()) {
+					return true; // the trap is counted when it runs again
+				}
+				myProfiler.retire(pc, opCode);
+				if (halt) {
+					// only a HALT, not a trap waiting for input or a store to a device register
+					if (myReport != null && opCode == 15 && (instruction.getWord() & 0xFF) == HALT) {
+						myProfiler.report(myReport);
+					}
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			theComputer.retire(executed);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package simulator;
+
+/**
+ * The reason Computer.run() returned.
+ *
+ * @version 1.2
+ */
+public enum RunStatus {
+
+	/** A HALT instruction was executed. */
+	HALTED,
+
+	/** The instruction budget was used up before a HALT; run() can be called again to continue. */
+	BUDGET_EXHAUSTED,
+
+	/** An instruction could not be executed; Computer.getFault() says why. */
+	FAULTED,
+
+	/**
+	 * A GETC or IN trap is waiting for input from a non-blocking device;
+	 * run() can be called again to continue once Computer.awaitInput() has
+	 * called back.
+	 */
+	WAITING,
+
+	/**
+	 * The program stopped before an instruction with a Debugger breakpoint;
+	 * run() can be called again to carry on with that instruction.
+	 */
+	BREAKPOINT,
+
+	/** The program stopped after an instruction read or wrote a word a Debugger watches. */
+	WATCHPOINT
+}
@@ -0,0 +1,139 @@
+package simulator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The Scheduler time-slices many Computers over a fixed pool of worker
+ * threads. Each Computer runs for a quantum of instructions at a time and,
+ * if it has not halted or faulted, goes to the back of the queue, so a
+ * program stuck in a loop only ever holds a thread for one quantum and
+ * every other program keeps making progress.
+ *
+ * A Computer whose GETC or IN trap is waiting for input gives up its
+ * thread too, and is only queued again when its input device calls back,
+ * so a program waiting on a ChannelConsole costs nothing until a character
+ * arrives.
+ *
+ * @version 1.1
+ */
+public final class Scheduler {
+
+	/** The default number of instructions a Computer runs before it yields. */
+	public final static long DEFAULT_QUANTUM = 10_000;
+
+	private final ExecutionEngine myEngine;
+	private final int myThreads;
+	private final long myQuantum;
+
+	/**
+	 * Creates a scheduler using the default engine and quantum on every
+	 * available core.
+	 */
+	public Scheduler() {
+		this(ExecutionEngine.DECODED, Runtime.getRuntime().availableProcessors(), DEFAULT_QUANTUM);
+	}
+
+	/**
+	 * @param theEngine the engine every Computer is run with
+	 * @param theThreads the number of worker threads
+	 * @param theQuantum the number of instructions a Computer runs before it yields
+	 */
+	public Scheduler(final ExecutionEngine theEngine, final int theThreads, final long theQuantum) {
+		if (theEngine == null || theThreads < 1 || theQuantum < 1) {
+			throw new IllegalArgumentException("Invalid engine, threads or quantum");
+		}
+		myEngine = theEngine;
+		myThreads = theThreads;
+		myQuantum = theQuantum;
+	}
+
+	/**
+	 * Runs every Computer from its PC until it halts, faults or has
+	 * executed theLimit instructions, and waits for all of them to stop.
+	 * A Computer waiting for input has not stopped.
+	 * Each Computer must appear in the list only once.
+	 * @param theComputers the Computers to run
+	 * @param theLimit the most instructions each Computer may execute
+	 * @return why each Computer stopped, in the same order as theComputers
+	 */
+	public List<RunStatus> run(final List<Computer> theComputers, final long theLimit) {
+		if (theLimit < 0) {
+			throw new IllegalArgumentException("Invalid limit");
+		}
+		RunStatus[] statuses = new RunStatus[theComputers.size()];
+		CountDownLatch done = new CountDownLatch(statuses.length);
+		ExecutorService pool = Executors.newFixedThreadPool(myThreads);
+		try {
+			for (int i = 0; i < statuses.length; i++) {
+				pool.execute(new Slice(pool, theComputers.get(i), i, theLimit, statuses, done));
+			}
+			done.await();
+			return Arrays.asList(statuses);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Scheduler interrupted", e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs one Computer for a quantum and queues itself again until the
+	 * Computer stops.
+	 */
+	private final class Slice implements Runnable {
+
+		private final ExecutorService myPool;
+		private final Computer myComputer;
+		private final int myIndex;
+		private final long myEnd;
+		private final RunStatus[] myStatuses;
+		private final CountDownLatch myDone;
+
+		/**
+		 * @param thePool the pool to queue the next quantum on
+		 * @param theComputer the Computer to run
+		 * @param theIndex where its status goes in theStatuses
+		 * @param theLimit the most instructions it may execute
+		 * @param theStatuses the statuses of every Computer
+		 * @param theDone counted down when the Computer stops
+		 */
+		Slice(final ExecutorService thePool, final Computer theComputer, final int theIndex,
+				final long theLimit, final RunStatus[] theStatuses, final CountDownLatch theDone) {
+			myPool = thePool;
+			myComputer = theComputer;
+			myIndex = theIndex;
+			long start = theComputer.getInstructionCount();
+			myEnd = start + Math.min(theLimit, Long.MAX_VALUE - start);
+			myStatuses = theStatuses;
+			myDone = theDone;
+		}
+
+		@Override
+		public void run() {
+			// A status is always recorded, even if the run throws an Error
+			RunStatus status = RunStatus.FAULTED;
+			boolean queued = false;
+			try {
+				long left = myEnd - myComputer.getInstructionCount();
+				status = myComputer.run(myEngine, Math.min(myQuantum, left));
+				if (status == RunStatus.BUDGET_EXHAUSTED && left > myQuantum) {
+					myPool.execute(this);
+					queued = true;
+				} else if (status == RunStatus.WAITING) {
+					myComputer.awaitInput(() -> myPool.execute(this));
+					queued = true;
+				}
+			} finally {
+				if (!queued) {
+					myStatuses[myIndex] = status;
+					myDone.countDown();
+				}
+			}
+		}
+	}
+}
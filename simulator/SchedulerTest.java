@@ -0,0 +1,140 @@
+/*
+ * Unit tests for the Scheduler class.
+ */
+
+package simulator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @version 1.1
+ */
+class SchedulerTest {
+
+	/**
+	 * Test method for {@link simulator.Scheduler#run(List, long)}. <br>
+	 * Endless loops share two threads with programs that halt and fault,
+	 * and are stopped at the limit.
+	 */
+	@Test
+	void testRun() {
+		List<Computer> computers = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			Computer computer = new Computer(new CaptureOutput());
+			switch (i % 3) {
+				case 0:
+					computer.loadMachineCode("0000 111 111111111"); // BRnzp - #1, forever
+					break;
+				case 1:
+					computer.loadMachineCode(
+						"0001 000 000 1 00101", // ADD R0 + #5
+						"1111 0000 00100101" // HALT
+					);
+					break;
+				default:
+					computer.loadMachineCode("1101 0000 0000 0000"); // illegal opcode
+					break;
+			}
+			computers.add(computer);
+		}
+
+		List<RunStatus> statuses = new Scheduler(ExecutionEngine.DECODED, 2, 1000).run(computers, 25_500);
+
+		for (int i = 0; i < computers.size(); i++) {
+			Computer computer = computers.get(i);
+			switch (i % 3) {
+				case 0:
+					assertEquals(RunStatus.BUDGET_EXHAUSTED, statuses.get(i));
+					assertEquals(25_500, computer.getInstructionCount());
+					break;
+				case 1:
+					assertEquals(RunStatus.HALTED, statuses.get(i));
+					assertEquals(5, computer.getRegisters()[0].get2sCompValue());
+					break;
+				default:
+					assertEquals(RunStatus.FAULTED, statuses.get(i));
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link simulator.Scheduler#run(List, long)}. <br>
+	 * Echo sessions over pipes wait for input without holding either of the
+	 * two threads, and each gets its own input back.
+	 */
+	@Test
+	void testRunWaitingForInput() throws IOException, InterruptedException {
+		int sessions = 40;
+		List<Computer> computers = new ArrayList<>();
+		List<Pipe> inputs = new ArrayList<>();
+		List<Pipe> outputs = new ArrayList<>();
+		try (ConsoleHub hub = new ConsoleHub()) {
+			for (int i = 0; i < sessions; i++) {
+				Pipe input = Pipe.open();
+				Pipe output = Pipe.open();
+				ChannelConsole console = hub.open(input.source(), output.sink());
+				Computer computer = new Computer(console, console);
+				computer.loadMachineCode(
+					"1111 0000 00100000", // GETC
+					"0001 000 000 1 00000", // ADD R0 + #0, to set the CC
+					"0000 010 000000010", // BRz + #2
+					"1111 0000 00100001", // OUT
+					"0000 111 111111011", // BRnzp - #5
+					"1111 0000 00100101" // HALT
+				);
+				computers.add(computer);
+				inputs.add(input);
+				outputs.add(output);
+			}
+
+			// every session is waiting before any input is written
+			Thread writer = new Thread(() -> {
+				try {
+					for (int round = 0; round < 3; round++) {
+						Thread.sleep(20);
+						for (int i = 0; i < sessions; i++) {
+							String text = round < 2 ? Integer.toString(i).substring(0, 1) + round : "\0";
+							inputs.get(i).sink().write(StandardCharsets.US_ASCII.encode(text));
+						}
+					}
+				} catch (IOException | InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			writer.start();
+			List<RunStatus> statuses = new Scheduler(ExecutionEngine.DECODED, 2, 3).run(computers, 1000);
+			writer.join();
+
+			for (int i = 0; i < sessions; i++) {
+				assertEquals(RunStatus.HALTED, statuses.get(i));
+				String first = Integer.toString(i).substring(0, 1);
+				String expected = first + "0" + first + "1";
+				ByteBuffer echo = ByteBuffer.allocate(expected.length());
+				while (echo.hasRemaining()) {
+					outputs.get(i).source().read(echo);
+				}
+				echo.flip();
+				assertEquals(expected, StandardCharsets.US_ASCII.decode(echo).toString());
+			}
+		} finally {
+			for (Pipe pipe : inputs) {
+				pipe.sink().close();
+				pipe.source().close();
+			}
+			for (Pipe pipe : outputs) {
+				pipe.sink().close();
+				pipe.source().close();
+			}
+		}
+	}
+}
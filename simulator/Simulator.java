@@ -1,16 +1,28 @@
 package simulator;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * The Simulator class is used to load and execute all of the instructions in a machine code program.
  * A sample machine code program is provided which outputs the characters 9 to 1 to the console.
  *  
  * @author mmuppa
  * @author acfowler
- * @version 1.2
+ * @version 1.3
  */
 public class Simulator {
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
+
+		// java simulator.Simulator --batch directory|manifest [engine] [threads] [budget]
+		// runs a whole batch of program files instead; see BatchRunner.
+		if (args.length > 0 && args[0].equals("--batch")) {
+			BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		// java simulator.Simulator --profile prints a hotspot report after the program halts.
+		boolean profile = args.length > 0 && args[0].equals("--profile");
 
 		Computer myComputer;
 
@@ -93,7 +105,14 @@ public class Simulator {
 		/* During execution, the only output to the screen should be */
 		/* the result of executing OUT. */
 
-		myComputer.execute();
+		if (profile) {
+			Profiler profiler = new Profiler();
+			myComputer.execute(ExecutionEngine.profiling(profiler));
+			System.out.println();
+			profiler.report(System.out);
+		} else {
+			myComputer.execute();
+		}
 		
 		/* Show the final configuration of the computer. */
 		// System.out.println();
@@ -0,0 +1,291 @@
+package simulator;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * The SimulatorBenchmark measures the simulator core: the throughput of
+ * Computer.execute() on each ExecutionEngine in millions of instructions
+ * per second (MIPS), the cost of the BitString operations the simulator
+ * leans on, and the bytes allocated per executed instruction.
+ *
+ * Every measurement runs warmup iterations first so the JVM has compiled
+ * the code being measured, then reports the mean of the timed iterations.
+ *
+ * Usage: java simulator.SimulatorBenchmark [iterations]
+ *
+ * @version 1.0
+ */
+public class SimulatorBenchmark {
+
+	private final static int WARMUP_ITERATIONS = 5;
+	private final static int DEFAULT_ITERATIONS = 10;
+
+	/** The least time spent in one iteration, so short programs are timed over many runs. */
+	private final static long MIN_ITERATION_NANOS = 200_000_000L;
+
+	private final static String[] ENGINE_NAMES = {"DECODED", "TABLE", "JIT"};
+	private final static ExecutionEngine[] ENGINES = {
+		ExecutionEngine.DECODED, ExecutionEngine.TABLE, ExecutionEngine.JIT
+	};
+
+	/** The countdown program from Simulator.main; prints 9 to 1 into a CaptureOutput. */
+	private final static String[] COUNTDOWN = {
+		"0010000000001000",  // LD into R0 x39 which is ASCII 9
+		"0010001000001000",  // LD into R1 x-30
+		"0001010000000001",  // ADD R2 <- R0 + R1 ; #9 ; R2 is the counter
+		"0000010000000100",  // BR if zero skip down to code after the loop
+		"1111000000100001",  // TRAP - vector x21 - OUT R0
+		"0001000000111111",  // ADD - decrement R0 - the character
+		"0001010010111111",  // ADD - decrement R2 - the counter
+		"0000111111111011",  // BR - Loop back
+		"1111000000100101",  // TRAP - vector x25 - HALT
+		"0000000000111001",  // x39
+		"1111111111010000"}; // x-30
+
+	/** The 1 + 2 + 3 + 4 + 5 loop from Simulator.main. */
+	private final static String[] SUMMATION = {
+		"0101000000100000",   // clear R0 - R0 will be the SUM
+		"0101001001100000",   // clear R1 - R1 will be the loop counter
+		"0001001001100101",   // R1 <- R1 + 5
+		"0001000000000001",   // R0 <- R0 + R1
+		"0001001001111111",   // decrement the counter
+		"0000001111111101",   // BRp do it again if the counter is not yet zero
+		"1111000000100101"};  // HALT
+
+	/** Nested loops of register-only arithmetic, about 1.9 million instructions. */
+	private final static String[] ALU_KERNEL = {
+		"0010 011 000001011",   // LD R3 <- OUTER
+		"0101 010 010 1 00000", // OUTER_TOP: clear R2
+		"0001 010 010 1 01111", // R2 <- 15, the inner counter
+		"0001 000 000 0 00 010", // INNER: R0 <- R0 + R2
+		"0101 100 000 1 00111", // R4 <- R0 AND #7
+		"1001 101 100 111111",  // R5 <- NOT R4
+		"0001 001 001 0 00 101", // R1 <- R1 + R5
+		"0001 010 010 1 11111", // decrement the inner counter
+		"0000 001 111111010",   // BRp INNER
+		"0001 011 011 1 11111", // decrement the outer counter
+		"0000 001 111110110",   // BRp OUTER_TOP
+		"1111 0000 00100101",   // HALT
+		"0100 1110 0010 0000"}; // OUTER: #20000
+
+	/** A loop of loads and stores to memory, about 1.6 million instructions. */
+	private final static String[] MEMORY_KERNEL = {
+		"0010 011 000001001",   // LD R3 <- COUNT
+		"0010 000 000001001",   // TOP: LD R0 <- A
+		"0001 000 000 1 00001", // R0 <- R0 + 1
+		"0011 000 000000111",   // ST R0 -> A
+		"0010 001 000000111",   // LD R1 <- B
+		"0001 001 001 0 00 000", // R1 <- R1 + R0
+		"0011 001 000000101",   // ST R1 -> B
+		"0001 011 011 1 11111", // decrement the counter
+		"0000 001 111111000",   // BRp TOP
+		"1111 0000 00100101",   // HALT
+		"0100 1110 0010 0000",  // COUNT: #20000
+		"0000 0000 0000 0000",  // A
+		"0000 0000 0000 0000"}; // B
+
+	private final static String[] PROGRAM_NAMES = {"countdown", "summation", "alu", "memory"};
+	private final static String[][] PROGRAMS = {COUNTDOWN, SUMMATION, ALU_KERNEL, MEMORY_KERNEL};
+
+	/** Results are folded into here so the JIT cannot drop the measured work. */
+	private static volatile int sink;
+
+	/**
+	 * Runs the benchmarks and prints the results.
+	 * @param theArgs optionally, the number of measured iterations
+	 */
+	public static void main(String[] theArgs) {
+		int iterations = theArgs.length > 0 ? Integer.parseInt(theArgs[0]) : DEFAULT_ITERATIONS;
+		System.out.println("Throughput (MIPS)");
+		System.out.printf("%-10s", "program");
+		for (String name : ENGINE_NAMES) {
+			System.out.printf("%12s", name);
+		}
+		System.out.println();
+		for (int p = 0; p < PROGRAMS.length; p++) {
+			System.out.printf("%-10s", PROGRAM_NAMES[p]);
+			for (ExecutionEngine engine : ENGINES) {
+				System.out.printf("%12.1f", mips(PROGRAMS[p], engine, iterations));
+			}
+			System.out.println();
+		}
+
+		System.out.println();
+		System.out.println("Allocation (bytes per instruction, excluding load)");
+		System.out.printf("%-10s", "program");
+		for (String name : ENGINE_NAMES) {
+			System.out.printf("%12s", name);
+		}
+		System.out.println();
+		for (int p = 0; p < PROGRAMS.length; p++) {
+			System.out.printf("%-10s", PROGRAM_NAMES[p]);
+			for (ExecutionEngine engine : ENGINES) {
+				System.out.printf("%12.3f", allocationPerInstruction(PROGRAMS[p], engine));
+			}
+			System.out.println();
+		}
+
+		System.out.println();
+		System.out.println("BitString (ns/op)");
+		System.out.printf("%-16s%10.2f%n", "get2sCompValue", bitStringGet2sComp(iterations));
+		System.out.printf("%-16s%10.2f%n", "set2sCompValue", bitStringSet2sComp(iterations));
+		System.out.printf("%-16s%10.2f%n", "substring", bitStringSubstring(iterations));
+		System.out.printf("%-16s%10.2f%n", "copy", bitStringCopy(iterations));
+	}
+
+	/**
+	 * Measures the execution throughput of a program.
+	 * @param theProgram the machine code
+	 * @param theEngine the engine to run it with
+	 * @param theIterations the number of measured iterations
+	 * @return millions of instructions executed per second
+	 */
+	private static double mips(String[] theProgram, ExecutionEngine theEngine, int theIterations) {
+		long instructions = countInstructions(theProgram);
+		double total = 0;
+		for (int i = 0; i < WARMUP_ITERATIONS + theIterations; i++) {
+			long runs = 0;
+			long elapsed = 0;
+			while (elapsed < MIN_ITERATION_NANOS) {
+				Computer computer = new Computer(new CaptureOutput());
+				computer.loadMachineCode(theProgram);
+				long start = System.nanoTime();
+				computer.execute(theEngine);
+				elapsed += System.nanoTime() - start;
+				sink += computer.getPCAddress();
+				runs++;
+			}
+			double mips = instructions * runs * 1e3 / elapsed;
+			if (i >= WARMUP_ITERATIONS) {
+				total += mips;
+			}
+		}
+		return total / theIterations;
+	}
+
+	/**
+	 * Measures how much a program allocates while it executes.
+	 * @param theProgram the machine code
+	 * @param theEngine the engine to run it with
+	 * @return bytes allocated per executed instruction
+	 */
+	private static double allocationPerInstruction(String[] theProgram, ExecutionEngine theEngine) {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long instructions = countInstructions(theProgram);
+		long bytes = 0;
+		long runs = 0;
+		for (int i = 0; i < WARMUP_ITERATIONS + DEFAULT_ITERATIONS; i++) {
+			Computer computer = new Computer(new CaptureOutput());
+			computer.loadMachineCode(theProgram);
+			long before = threads.getThreadAllocatedBytes(thread);
+			computer.execute(theEngine);
+			long after = threads.getThreadAllocatedBytes(thread);
+			if (i >= WARMUP_ITERATIONS) {
+				bytes += after - before;
+				runs++;
+			}
+		}
+		return (double) bytes / (instructions * runs);
+	}
+
+	/**
+	 * @param theProgram the machine code
+	 * @return the number of instructions the program executes, HALT included
+	 */
+	private static long countInstructions(String[] theProgram) {
+		Computer computer = new Computer(new CaptureOutput());
+		computer.loadMachineCode(theProgram);
+		long count = 0;
+		boolean halt = false;
+		while (!halt) {
+			halt = computer.fetchDecoded().execute(computer);
+			count++;
+		}
+		return count;
+	}
+
+	private static double bitStringGet2sComp(int theIterations) {
+		BitString bits = new BitString();
+		bits.setBits("1111111111010000".toCharArray());
+		return measure(theIterations, n -> {
+			int sum = 0;
+			for (int i = 0; i < n; i++) {
+				sum += bits.get2sCompValue();
+			}
+			return sum;
+		});
+	}
+
+	private static double bitStringSet2sComp(int theIterations) {
+		BitString bits = new BitString();
+		return measure(theIterations, n -> {
+			for (int i = 0; i < n; i++) {
+				bits.set2sCompValue((i & 0xFFFF) - 32768);
+			}
+			return bits.getUnsignedValue();
+		});
+	}
+
+	private static double bitStringSubstring(int theIterations) {
+		BitString bits = new BitString();
+		bits.setBits("0001001001111111".toCharArray());
+		return measure(theIterations, n -> {
+			int sum = 0;
+			for (int i = 0; i < n; i++) {
+				sum += bits.substring(i & 7, 8).getLength();
+			}
+			return sum;
+		});
+	}
+
+	private static double bitStringCopy(int theIterations) {
+		BitString bits = new BitString();
+		bits.setBits("0001001001111111".toCharArray());
+		return measure(theIterations, n -> {
+			int sum = 0;
+			for (int i = 0; i < n; i++) {
+				sum += bits.copy().getLength();
+			}
+			return sum;
+		});
+	}
+
+	/**
+	 * An operation repeated n times in one call.
+	 */
+	@FunctionalInterface
+	private interface Operation {
+		/**
+		 * @param n the number of repetitions
+		 * @return a value derived from the work, so it is not optimized away
+		 */
+		int repeat(int n);
+	}
+
+	/**
+	 * Measures an operation.
+	 * @param theIterations the number of measured iterations
+	 * @param theOperation the operation to time
+	 * @return nanoseconds per repetition
+	 */
+	private static double measure(int theIterations, Operation theOperation) {
+		final int batch = 1_000_000;
+		double total = 0;
+		for (int i = 0; i < WARMUP_ITERATIONS + theIterations; i++) {
+			long repetitions = 0;
+			long start = System.nanoTime();
+			long elapsed = 0;
+			while (elapsed < MIN_ITERATION_NANOS) {
+				sink += theOperation.repeat(batch);
+				repetitions += batch;
+				elapsed = System.nanoTime() - start;
+			}
+			if (i >= WARMUP_ITERATIONS) {
+				total += (double) elapsed / repetitions;
+			}
+		}
+		return total / theIterations;
+	}
+}
@@ -0,0 +1,28 @@
+package simulator;
+
+/**
+ * The StringInput supplies the characters of a fixed String, for tests
+ * and batch runs that script a program's input ahead of time.
+ *
+ * @version 1.0
+ */
+public class StringInput implements InputDevice {
+
+	private final String myInput;
+	private int myPosition;
+
+	/**
+	 * @param theInput the characters to supply, in order
+	 */
+	public StringInput(final String theInput) {
+		if (theInput == null) {
+			throw new IllegalArgumentException("Invalid input");
+		}
+		myInput = theInput;
+	}
+
+	@Override
+	public int read() {
+		return myPosition < myInput.length() ? myInput.charAt(myPosition++) : -1;
+	}
+}
@@ -0,0 +1,96 @@
+package simulator;
+
+/**
+ * The TableEngine decodes each instruction as it is fetched and dispatches
+ * on its opcode through a dense 16 entry handler table, so every opcode
+ * costs the same single array lookup.
+ *
+ * @version 1.2
+ */
+final class TableEngine implements ExecutionEngine {
+
+	/**
+	 * Executes the instruction in the IR.
+	 */
+	@FunctionalInterface
+	private interface Handler {
+		/**
+		 * @param theComputer the computer to execute on
+		 * @return true if the instruction halts the computer or stops the engine; false otherwise.
+		 */
+		boolean execute(Computer theComputer);
+	}
+
+	private final static Handler[] HANDLERS = new Handler[16];
+
+	static {
+		for (int i = 0; i < HANDLERS.length; i++) {
+			final int opCode = i;
+			HANDLERS[i] = c -> {
+				throw new UnsupportedOperationException("Illegal opCode: " + opCode);
+			};
+		}
+		HANDLERS[0] = c -> {   // BR     0000
+			c.executeBranch();
+			return false;
+		};
+		HANDLERS[1] = c -> {   // ADD    0001
+			c.executeAdd();
+			return false;
+		};
+		HANDLERS[2] = c -> {   // LD     0010
+			c.executeLoad();
+			return false;
+		};
+		HANDLERS[3] = Computer::executeStore; // ST     0011
+		HANDLERS[4] = c -> {   // JSR    0100
+			c.executeJumpSubroutine();
+			return false;
+		};
+		HANDLERS[5] = c -> {   // AND    0101
+			c.executeAnd();
+			return false;
+		};
+		HANDLERS[6] = c -> {   // LDR    0110
+			c.executeLoadRegister();
+			return false;
+		};
+		HANDLERS[7] = Computer::executeStoreRegister; // STR    0111
+		HANDLERS[8] = Computer::executeReturnFromInterrupt; // RTI    1000
+		HANDLERS[9] = c -> {   // NOT    1001
+			c.executeNot();
+			return false;
+		};
+		HANDLERS[10] = c -> {  // LDI    1010
+			c.executeLoadIndirect();
+			return false;
+		};
+		HANDLERS[11] = Computer::executeStoreIndirect; // STI    1011
+		HANDLERS[12] = c -> {  // JMP    1100
+			c.executeJump();
+			return false;
+		};
+		HANDLERS[14] = c -> {  // LEA    1110
+			c.executeLoadEffectiveAddress();
+			return false;
+		};
+		HANDLERS[15] = Computer::executeTrap; // TRAP   1111
+	}
+
+	@Override
+	public boolean run(final Computer theComputer, final long theBudget) {
+		long executed = 0;
+		try {
+			while (executed < theBudget) {
+				boolean halt = HANDLERS[theComputer.fetch() >>> 12].execute(theComputer);
+				executed++;
+				if (halt) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			theComputer.retire(executed);
+		}
+	}
+}
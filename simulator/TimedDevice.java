@@ -0,0 +1,17 @@
+package simulator;
+
+/**
+ * A TimedDevice needs to know when each character passes through it, as
+ * an instruction count. A Computer given one attaches itself to it, and
+ * before GETC, OUT, PUTS, IN or PUTSP it brings its instruction count up
+ * to date, so getInstructionCount() is exact for the length of the trap.
+ *
+ * @version 1.0
+ */
+interface TimedDevice {
+
+	/**
+	 * @param theComputer the Computer the device belongs to
+	 */
+	void attach(Computer theComputer);
+}
@@ -0,0 +1,204 @@
+package simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The TraceRecorder keeps an instruction trace of a Computer: for each
+ * executed instruction, its PC and IR, the register it wrote and that
+ * register's new value, and the CC afterwards. A program is traced by
+ * executing it with ExecutionEngine.tracing(recorder); other engines do
+ * not record anything, so tracing costs nothing when it is not used.
+ *
+ * Each record is RECORD_SIZE bytes in a ring of a fixed number of
+ * records, preallocated on the heap or memory mapped from a file. Once the
+ * ring is full the oldest records are overwritten, so the trace always
+ * holds the instructions leading up to the latest one. The record count is
+ * kept in the header after every record, so a mapped trace can still be
+ * decoded after the process that wrote it has died.
+ *
+ * Usage: java simulator.TraceRecorder file
+ * prints a mapped trace as text, oldest record first.
+ *
+ * @version 1.0
+ */
+public final class TraceRecorder implements Closeable {
+
+	/** The size of one record: PC, IR, register, CC and value. */
+	final static int RECORD_SIZE = 8;
+
+	/** The header holds MAGIC, the capacity and the number of records written. */
+	private final static int HEADER_SIZE = 16;
+	private final static int MAGIC = 0x4C433354; // "LC3T"
+
+	/** Stored in the register byte of an instruction that writes no register. */
+	private final static int NO_REGISTER = 0xFF;
+
+	private final ByteBuffer myBuffer;
+	private final FileChannel myChannel;
+	private final int myCapacity;
+	private long myCount;
+	/** The offset the next record is written at. */
+	private int myNext;
+
+	/**
+	 * Creates a recorder whose ring is kept on the heap.
+	 * @param theCapacity the number of records kept
+	 */
+	public TraceRecorder(final int theCapacity) {
+		this(ByteBuffer.allocate(size(theCapacity)), null, theCapacity);
+	}
+
+	/**
+	 * @param theBuffer the header and ring
+	 * @param theChannel the file the buffer is mapped from, or null
+	 * @param theCapacity the number of records kept
+	 */
+	private TraceRecorder(final ByteBuffer theBuffer, final FileChannel theChannel,
+			final int theCapacity) {
+		myBuffer = theBuffer;
+		myChannel = theChannel;
+		myCapacity = theCapacity;
+		myNext = HEADER_SIZE;
+		myBuffer.putInt(0, MAGIC);
+		myBuffer.putInt(4, theCapacity);
+		myBuffer.putLong(8, 0);
+	}
+
+	/**
+	 * Creates a recorder whose ring is a memory mapped file, replacing the
+	 * file if it exists.
+	 * @param theFile the trace file
+	 * @param theCapacity the number of records kept
+	 * @return the recorder
+	 * @throws IOException if the file cannot be created
+	 */
+	public static TraceRecorder create(final Path theFile, final int theCapacity) throws IOException {
+		int size = size(theCapacity);
+		FileChannel channel = FileChannel.open(theFile, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			return new TraceRecorder(buffer, channel, theCapacity);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Prints a trace file written by a recorder from create().
+	 * @param theFile the trace file
+	 * @param theOut where to print the records
+	 * @throws IOException if the file cannot be read
+	 */
+	public static void decode(final Path theFile, final PrintStream theOut) throws IOException {
+		try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (channel.size() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+					|| channel.size() != size(buffer.getInt(4))) {
+				throw new IllegalArgumentException("Invalid trace file: " + theFile);
+			}
+			decode(buffer, buffer.getInt(4), buffer.getLong(8), theOut);
+		}
+	}
+
+	/**
+	 * @param theCapacity the number of records
+	 * @return the bytes needed for the header and that many records
+	 */
+	private static int size(final int theCapacity) {
+		if (theCapacity <= 0 || theCapacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+			throw new IllegalArgumentException("Invalid capacity");
+		}
+		return HEADER_SIZE + theCapacity * RECORD_SIZE;
+	}
+
+	/**
+	 * Records one executed instruction.
+	 * @param thePC the address the instruction was fetched from
+	 * @param theIR the instruction
+	 * @param theRegister the register it wrote, or -1 if none
+	 * @param theValue the new value of that register
+	 * @param theCC the CC afterwards as nzp bits
+	 */
+	void record(final int thePC, final int theIR, final int theRegister, final int theValue,
+			final int theCC) {
+		int offset = myNext;
+		myBuffer.putShort(offset, (short) thePC);
+		myBuffer.putShort(offset + 2, (short) theIR);
+		myBuffer.put(offset + 4, (byte) theRegister);
+		myBuffer.put(offset + 5, (byte) theCC);
+		myBuffer.putShort(offset + 6, (short) theValue);
+		myNext = offset + RECORD_SIZE == myBuffer.capacity() ? HEADER_SIZE : offset + RECORD_SIZE;
+		myBuffer.putLong(8, ++myCount);
+	}
+
+	/**
+	 * @return the number of instructions recorded, including any overwritten
+	 */
+	public long getCount() {
+		return myCount;
+	}
+
+	/**
+	 * Prints the records still in the ring, oldest first, one per line.
+	 * @param theOut where to print the records
+	 */
+	public void decode(final PrintStream theOut) {
+		decode(myBuffer, myCapacity, myCount, theOut);
+	}
+
+	/**
+	 * @param theBuffer the header and ring
+	 * @param theCapacity the number of records in the ring
+	 * @param theCount the number of records written
+	 * @param theOut where to print the records
+	 */
+	private static void decode(final ByteBuffer theBuffer, final int theCapacity,
+			final long theCount, final PrintStream theOut) {
+		long first = Math.max(0, theCount - theCapacity);
+		for (long i = first; i < theCount; i++) {
+			int offset = HEADER_SIZE + (int) (i % theCapacity) * RECORD_SIZE;
+			int register = theBuffer.get(offset + 4) & 0xFF;
+			String written = register == NO_REGISTER ? "-"
+					: String.format("R%d=x%04X", register, theBuffer.getShort(offset + 6) & 0xFFFF);
+			theOut.printf("%d: PC=x%04X IR=x%04X %s CC=%s%n", i,
+					theBuffer.getShort(offset) & 0xFFFF, theBuffer.getShort(offset + 2) & 0xFFFF,
+					written, Integer.toBinaryString(8 | theBuffer.get(offset + 5)).substring(1));
+		}
+	}
+
+	/**
+	 * Writes a mapped trace out to its file and closes the file.
+	 * A heap recorder has nothing to close.
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (myChannel != null) {
+			((MappedByteBuffer) myBuffer).force();
+			myChannel.close();
+		}
+	}
+
+	/**
+	 * Prints a trace file as text.
+	 * @param theArgs the trace file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static void main(final String[] theArgs) throws IOException {
+		if (theArgs.length != 1) {
+			System.err.println("Usage: java simulator.TraceRecorder file");
+			System.exit(1);
+		}
+		decode(Paths.get(theArgs[0]), System.out);
+	}
+}
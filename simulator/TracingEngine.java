@@ -0,0 +1,46 @@
+package simulator;
+
+/**
+ * The TracingEngine executes each instruction from the Computer's decoded
+ * instruction cache, as the DecodedEngine does, and records it in a
+ * TraceRecorder after it executes.
+ *
+ * @version 1.2
+ */
+final class TracingEngine implements ExecutionEngine {
+
+	private final TraceRecorder myRecorder;
+
+	/**
+	 * @param theRecorder the recorder to record into
+	 */
+	TracingEngine(final TraceRecorder theRecorder) {
+		myRecorder = theRecorder;
+	}
+
+	@Override
+	public boolean run(final Computer theComputer, final long theBudget) {
+		long executed = 0;
+		try {
+			while (executed < theBudget) {
+				int pc = theComputer.getPCAddress();
+				DecodedInstruction instruction = theComputer.fetchDecoded();
+				boolean halt = instruction.execute(theComputer);
+				executed++;
+				if (halt && theComputer.wasRewound()) {
+					return true; // the trap is recorded when it runs again
+				}
+				int register = instruction.getDestination();
+				myRecorder.record(pc, instruction.getWord(), register,
+						register < 0 ? 0 : theComputer.readRegister(register),
+						theComputer.getConditionBits());
+				if (halt) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			theComputer.retire(executed);
+		}
+	}
+}